@@ -22,12 +22,15 @@ package com.caricah.iotracah.bootstrap.data.messages;
 
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
+import io.netty.buffer.ByteBuf;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -39,6 +42,13 @@ public final class PublishMessage extends IOTMessage {
     public static final int ID_TO_FORCE_GENERATION_ON_SAVE = -5;
     public static final int ID_TO_SHOW_IS_WILL = -11;
 
+    /**
+     * Message id left on a message that could not be saved as every id of its session is in use.
+     */
+    public static final int ID_WHEN_NONE_IS_FREE = 0;
+
+    public static final int MAXIMUM_MESSAGE_ID = 65535;
+
     private String protocolData;
 
     /** */
@@ -65,6 +75,21 @@ public final class PublishMessage extends IOTMessage {
     /** Value for payload. */
     private Object payload;
 
+    /** Value for payloadId. */
+    private long payloadId;
+
+    /** Value for expiresAt. */
+    private long expiresAt;
+
+    /**
+     * Node local reference to the buffer the payload was decoded into.
+     * It is never stored or sent to other nodes, the payload bytes are copied out when needed.
+     */
+    private transient ByteBuf payloadBuffer;
+
+    /** Node local frame shared with the other copies of this message. */
+    private transient SharedFrame sharedFrame;
+
     /** Value for qos. */
     private int qos;
 
@@ -203,6 +228,14 @@ public final class PublishMessage extends IOTMessage {
      * @return Value for payload.
      */
     public Object getPayload() {
+
+        if (Objects.isNull(payload) && Objects.nonNull(payloadBuffer)) {
+
+            byte[] bytes = new byte[payloadBuffer.readableBytes()];
+            payloadBuffer.getBytes(payloadBuffer.readerIndex(), bytes);
+            payload = bytes;
+        }
+
         return payload;
     }
 
@@ -215,6 +248,120 @@ public final class PublishMessage extends IOTMessage {
         this.payload = payload;
     }
 
+    /**
+     * Gets payloadBuffer.
+     *
+     * @return Value for payloadBuffer.
+     */
+    public ByteBuf getPayloadBuffer() {
+        return payloadBuffer;
+    }
+
+    /**
+     * Sets payloadBuffer, the message takes over the reference held on the buffer.
+     *
+     * @param payloadBuffer New value for payloadBuffer.
+     */
+    public void setPayloadBuffer(ByteBuf payloadBuffer) {
+        this.payloadBuffer = payloadBuffer;
+    }
+
+    /**
+     * <code>takePayloadBuffer</code> hands the reference held on the payload buffer
+     * over to the caller who is then responsible for releasing it.
+     *
+     * @return the payload buffer or null if the message holds none.
+     */
+    public ByteBuf takePayloadBuffer() {
+
+        ByteBuf buffer = payloadBuffer;
+        payloadBuffer = null;
+        return buffer;
+    }
+
+    /**
+     * <code>releasePayloadBuffer</code> lets go of the reference held on the payload buffer.
+     * The payload can no longer be read unless it was copied out before.
+     */
+    public void releasePayloadBuffer() {
+
+        ByteBuf buffer = takePayloadBuffer();
+
+        if (Objects.nonNull(buffer)) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * <code>detachPayloadBuffer</code> copies the payload out of its buffer and releases it,
+     * for messages about to leave the node or be handled without the buffer.
+     */
+    public void detachPayloadBuffer() {
+
+        getPayload();
+        releasePayloadBuffer();
+    }
+
+    /**
+     * Gets sharedFrame.
+     *
+     * @return Value for sharedFrame.
+     */
+    public SharedFrame getSharedFrame() {
+        return sharedFrame;
+    }
+
+    /**
+     * Sets sharedFrame.
+     *
+     * @param sharedFrame New value for sharedFrame.
+     */
+    public void setSharedFrame(SharedFrame sharedFrame) {
+        this.sharedFrame = sharedFrame;
+    }
+
+    /**
+     * Gets payloadId, the reference to a payload stored once
+     * for all the copies of a message fanned out to subscribers.
+     *
+     * @return Value for payloadId.
+     */
+    public long getPayloadId() {
+        return payloadId;
+    }
+
+    /**
+     * Sets payloadId.
+     *
+     * @param payloadId New value for payloadId.
+     */
+    public void setPayloadId(long payloadId) {
+        this.payloadId = payloadId;
+    }
+
+    /**
+     * Gets expiresAt, the time in milliseconds after which the message
+     * is no longer delivered. Messages with a value of 0 do not expire.
+     *
+     * @return Value for expiresAt.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Sets expiresAt.
+     *
+     * @param expiresAt New value for expiresAt.
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
     /**
      * Gets qos.
      *
@@ -390,6 +537,12 @@ public final class PublishMessage extends IOTMessage {
         if (payload != null ? !payload.equals(that.payload) : that.payload != null)
             return false;
 
+        if (payloadId != that.payloadId)
+            return false;
+
+        if (expiresAt != that.expiresAt)
+            return false;
+
         if (qos != that.qos)
             return false;
 
@@ -433,6 +586,10 @@ public final class PublishMessage extends IOTMessage {
 
         res = 31 * res + (payload != null ? payload.hashCode() : 0);
 
+        res = 31 * res + (int)(payloadId ^ (payloadId >>> 32));
+
+        res = 31 * res + (int)(expiresAt ^ (expiresAt >>> 32));
+
         res = 31 * res + qos;
 
         res = 31 * res + (isInbound ? 1 : 0);
@@ -463,6 +620,26 @@ public final class PublishMessage extends IOTMessage {
 
     public static PublishMessage from( int messageId, boolean dup, int qos, boolean retain, String topic, ByteBuffer payloadBuffer, boolean inBound) {
 
+        PublishMessage publishMessage = from(messageId, dup, qos, retain, topic, inBound);
+        publishMessage.setPayload(toBytes(payloadBuffer));
+
+        return publishMessage;
+    }
+
+    /**
+     * Creates a message carrying its payload by reference to the buffer it was decoded into.
+     * The message takes over the reference held on the buffer.
+     */
+    public static PublishMessage from( int messageId, boolean dup, int qos, boolean retain, String topic, ByteBuf payloadBuffer, boolean inBound) {
+
+        PublishMessage publishMessage = from(messageId, dup, qos, retain, topic, inBound);
+        publishMessage.setPayloadBuffer(payloadBuffer);
+
+        return publishMessage;
+    }
+
+    private static PublishMessage from( int messageId, boolean dup, int qos, boolean retain, String topic, boolean inBound) {
+
         if (messageId < 1
                 && messageId != ID_TO_FORCE_GENERATION_ON_SAVE
                 && messageId != ID_TO_SHOW_IS_WILL) {
@@ -488,8 +665,6 @@ public final class PublishMessage extends IOTMessage {
         publishMessage.setIsDuplicate(dup);
         publishMessage.setTopic(topic);
         publishMessage.setMessageId(messageId);
-
-        publishMessage.setPayload(toBytes(payloadBuffer));
         publishMessage.setIsInbound(inBound);
 
         return publishMessage;
@@ -497,8 +672,6 @@ public final class PublishMessage extends IOTMessage {
 
     public PublishMessage cloneMessage() {
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap((byte[])getPayload());
-
         int messageId ;
         if(getQos() > 0 ){
            messageId = ID_TO_FORCE_GENERATION_ON_SAVE;
@@ -506,8 +679,18 @@ public final class PublishMessage extends IOTMessage {
             messageId = getMessageId();
         }
 
-        PublishMessage publishMessage = PublishMessage.from(messageId, false, getQos(), false,  getTopic(), byteBuffer, false);
+        PublishMessage publishMessage;
+        if (Objects.nonNull(payloadBuffer) && getQos() == 0) {
+
+            //Every copy holds its own reference to the shared buffer.
+            publishMessage = PublishMessage.from(messageId, false, getQos(), false, getTopic(), payloadBuffer.duplicate().retain(), false);
+        } else {
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap((byte[]) getPayload());
+            publishMessage = PublishMessage.from(messageId, false, getQos(), false, getTopic(), byteBuffer, false);
+        }
         publishMessage.setProtocol(getProtocol());
+        publishMessage.setExpiresAt(getExpiresAt());
         publishMessage.setId(-1);
 
         return publishMessage;
@@ -520,6 +703,7 @@ public final class PublishMessage extends IOTMessage {
         key.setPartitionId(publishMessage.getPartitionId());
         key.setClientId(publishMessage.getSessionId());
         key.setMessageId(publishMessage.getMessageId());
+        key.setIsInbound(publishMessage.getIsInbound());
 
         return key;
     }
@@ -556,6 +740,13 @@ public final class PublishMessage extends IOTMessage {
 
 
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        //The payload buffer stays on this node, only its bytes travel.
+        getPayload();
+        out.defaultWriteObject();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '['
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.bootstrap.data.messages;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <code>SharedFrame</code> is shared by the copies of a message fanned out on one node.
+ * The part of the outbound frame that is the same for every copy is encoded once
+ * by the first server to need it and reused by the rest.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public final class SharedFrame {
+
+    private ByteBuf body;
+
+    private boolean released;
+
+    /**
+     * <code>retainBody</code> obtains the shared part of the frame, encoding it on first use.
+     * The caller owns the reference returned and has to release it.
+     *
+     * @param encoder creates the shared part of the frame
+     * @return the shared part or null once the frame has been released
+     */
+    public synchronized ByteBuf retainBody(Supplier<ByteBuf> encoder) {
+
+        if (released) {
+            return null;
+        }
+
+        if (Objects.isNull(body)) {
+            body = encoder.get();
+        }
+
+        return body.retain();
+    }
+
+    /**
+     * <code>release</code> lets go of the reference held on the shared part of the frame,
+     * it is freed once every copy that uses it has been written out.
+     */
+    public synchronized void release() {
+
+        if (released) {
+            return;
+        }
+
+        released = true;
+
+        if (Objects.nonNull(body)) {
+            body.release();
+            body = null;
+        }
+    }
+}
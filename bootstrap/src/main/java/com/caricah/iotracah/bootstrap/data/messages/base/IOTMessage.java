@@ -39,6 +39,12 @@ public class IOTMessage implements Serializable {
 
     private Protocol protocol;
 
+    /**
+     * Notified once by the worker when it is done with a message
+     * received from a client, it never leaves the node.
+     */
+    private transient Runnable processedCallback;
+
    public String getConnectionId() {
         return connectionId;
     }
@@ -95,6 +101,27 @@ public class IOTMessage implements Serializable {
         this.protocol = protocol;
     }
 
+    public synchronized void setProcessedCallback(Runnable processedCallback) {
+        this.processedCallback = processedCallback;
+    }
+
+    /**
+     * <code>markProcessed</code> lets the server that received this message
+     * know the worker is done with it. Only the first call has an effect.
+     */
+    public void markProcessed() {
+
+        Runnable callback;
+        synchronized (this) {
+            callback = processedCallback;
+            processedCallback = null;
+        }
+
+        if (null != callback) {
+            callback.run();
+        }
+    }
+
     public  <T extends IOTMessage>  void copyTransmissionData( T bossMessage ) {
 
         setSessionId(bossMessage.getSessionId());
@@ -69,6 +69,7 @@ public class CacheConfig {
         keys.add(new CacheTypeFieldMetadata("message_id", Types.INTEGER, "messageId", int.class));
         keys.add(new CacheTypeFieldMetadata("client_id", Types.VARCHAR, "clientId", String.class));
         keys.add(new CacheTypeFieldMetadata("partition_id", Types.VARCHAR, "partitionId", String.class));
+        keys.add(new CacheTypeFieldMetadata("is_inbound", Types.BIT, "isInbound", boolean.class));
         type.setKeyFields(keys);
 
         // Value fields for iot_message.
@@ -80,6 +81,8 @@ public class CacheConfig {
         vals.add(new CacheTypeFieldMetadata("message_id", Types.INTEGER, "messageId", int.class));
         vals.add(new CacheTypeFieldMetadata("topic", Types.VARCHAR, "topic", String.class));
         vals.add(new CacheTypeFieldMetadata("payload", Types.BINARY, "payload", Object.class));
+        vals.add(new CacheTypeFieldMetadata("payload_id", Types.BIGINT, "payloadId", long.class));
+        vals.add(new CacheTypeFieldMetadata("expires_at", Types.BIGINT, "expiresAt", long.class));
         vals.add(new CacheTypeFieldMetadata("qos", Types.INTEGER, "qos", int.class));
         vals.add(new CacheTypeFieldMetadata("is_inbound", Types.BIT, "isInbound", boolean.class));
         vals.add(new CacheTypeFieldMetadata("is_duplicate", Types.BIT, "isDuplicate", boolean.class));
@@ -100,6 +103,8 @@ public class CacheConfig {
         qryFlds.put("messageId", int.class);
         qryFlds.put("topic", String.class);
         qryFlds.put("payload", Object.class);
+        qryFlds.put("payloadId", long.class);
+        qryFlds.put("expiresAt", long.class);
         qryFlds.put("qos", int.class);
         qryFlds.put("isInbound", boolean.class);
         qryFlds.put("isDuplicate", boolean.class);
@@ -117,6 +122,7 @@ public class CacheConfig {
         ascFlds.put("id", long.class);
         ascFlds.put("clientId", String.class);
         ascFlds.put("partitionId", String.class);
+        ascFlds.put("expiresAt", long.class);
 
         type.setAscendingFields(ascFlds);
 
@@ -37,6 +37,9 @@ public class IotMessageKey implements Serializable {
     /** Value for partitionId. */
     private String partitionId;
 
+    /** Value for isInbound. */
+    private boolean isInbound;
+
     /**
      * Gets messageId.
      *
@@ -91,6 +94,25 @@ public class IotMessageKey implements Serializable {
         this.partitionId = partitionId;
     }
 
+    /**
+     * Gets isInbound, the direction of the message. Clients and the server
+     * pick message ids independently so both directions can use the same id.
+     *
+     * @return Value for isInbound.
+     */
+    public boolean getIsInbound() {
+        return isInbound;
+    }
+
+    /**
+     * Sets isInbound.
+     *
+     * @param isInbound New value for isInbound.
+     */
+    public void setIsInbound(boolean isInbound) {
+        this.isInbound = isInbound;
+    }
+
     /** {@inheritDoc} */
     @Override public boolean equals(Object o) {
         if (this == o)
@@ -110,6 +132,9 @@ public class IotMessageKey implements Serializable {
         if (partitionId != null ? !partitionId.equals(that.partitionId) : that.partitionId != null)
             return false;
 
+        if (isInbound != that.isInbound)
+            return false;
+
         return true;
     }
 
@@ -121,6 +146,8 @@ public class IotMessageKey implements Serializable {
 
         res = 31 * res + (partitionId != null ? partitionId.hashCode() : 0);
 
+        res = 31 * res + (isInbound ? 1 : 0);
+
         return res;
     }
 
@@ -129,6 +156,7 @@ public class IotMessageKey implements Serializable {
         return "IotMessageKey [messageId=" + messageId +
             ", clientId=" + clientId +
             ", partitionId=" + partitionId +
+            ", isInbound=" + isInbound +
             "]";
     }
 }
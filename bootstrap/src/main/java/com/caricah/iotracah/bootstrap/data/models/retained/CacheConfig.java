@@ -78,6 +78,8 @@ public class CacheConfig {
         vals.add(new CacheTypeFieldMetadata("qos", Types.INTEGER, "qos", int.class));
         vals.add(new CacheTypeFieldMetadata("partition_id", Types.VARCHAR, "partitionId", String.class));
         vals.add(new CacheTypeFieldMetadata("subscription_filter_id", Types.BIGINT, "subscriptionFilterId", long.class));
+        vals.add(new CacheTypeFieldMetadata("topic", Types.VARCHAR, "topic", String.class));
+        vals.add(new CacheTypeFieldMetadata("expires_at", Types.BIGINT, "expiresAt", long.class));
         type.setValueFields(vals);
 
         // Query fields for iot_message_retained.
@@ -91,6 +93,8 @@ public class CacheConfig {
         qryFlds.put("qos", int.class);
         qryFlds.put("partitionId", String.class);
         qryFlds.put("subscriptionFilterId", long.class);
+        qryFlds.put("topic", String.class);
+        qryFlds.put("expiresAt", long.class);
 
         type.setQueryFields(qryFlds);
 
@@ -100,6 +104,7 @@ public class CacheConfig {
         ascFlds.put("id", long.class);
         ascFlds.put("partitionId", String.class);
         ascFlds.put("subscriptionFilterId", long.class);
+        ascFlds.put("expiresAt", long.class);
 
         type.setAscendingFields(ascFlds);
 
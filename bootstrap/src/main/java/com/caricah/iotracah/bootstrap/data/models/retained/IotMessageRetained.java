@@ -53,6 +53,12 @@ public class IotMessageRetained implements Serializable {
     /** Value for qos. */
     private int qos;
 
+    /** Value for topic. */
+    private String topic;
+
+    /** Value for expiresAt. */
+    private long expiresAt;
+
     /**
      * Gets dateCreated.
      *
@@ -178,6 +184,47 @@ public class IotMessageRetained implements Serializable {
         this.subscriptionFilterId = subscriptionFilterId;
     }
 
+    /**
+     * Gets topic.
+     *
+     * @return Value for topic.
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Sets topic.
+     *
+     * @param topic New value for topic.
+     */
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Gets expiresAt, the time in milliseconds after which the retained
+     * message is no longer delivered. Messages with a value of 0 do not expire.
+     *
+     * @return Value for expiresAt.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Sets expiresAt.
+     *
+     * @param expiresAt New value for expiresAt.
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt > 0 && expiresAt <= now;
+    }
+
     /** {@inheritDoc} */
     @Override public boolean equals(Object o) {
         if (this == o)
@@ -209,6 +256,12 @@ public class IotMessageRetained implements Serializable {
         if (subscriptionFilterId != that.subscriptionFilterId)
             return false;
 
+        if (topic != null ? !topic.equals(that.topic) : that.topic != null)
+            return false;
+
+        if (expiresAt != that.expiresAt)
+            return false;
+
         return true;
     }
 
@@ -228,6 +281,10 @@ public class IotMessageRetained implements Serializable {
 
         res = 31 * res + (int)(subscriptionFilterId ^ (subscriptionFilterId >>> 32));
 
+        res = 31 * res + (topic != null ? topic.hashCode() : 0);
+
+        res = 31 * res + (int)(expiresAt ^ (expiresAt >>> 32));
+
         return res;
     }
 
@@ -239,6 +296,8 @@ public class IotMessageRetained implements Serializable {
             ", id=" + id +
             ", partitionId=" + partitionId +
             ", subscriptionFilterId=" + subscriptionFilterId +
+            ", topic=" + topic +
+            ", expiresAt=" + expiresAt +
             "]";
     }
 }
@@ -79,6 +79,7 @@ public class CacheConfig {
         vals.add(new CacheTypeFieldMetadata("is_final", Types.BIT, "isFinal", boolean.class));
         vals.add(new CacheTypeFieldMetadata("partition_id", Types.VARCHAR, "partitionId", String.class));
         vals.add(new CacheTypeFieldMetadata("parent_id", Types.BIGINT, "parentId", Long.class));
+        vals.add(new CacheTypeFieldMetadata("subscription_count", Types.BIGINT, "subscriptionCount", long.class));
         type.setValueFields(vals);
 
         // Query fields for iot_subscription_filter.
@@ -92,6 +93,7 @@ public class CacheConfig {
         qryFlds.put("isFinal", boolean.class);
         qryFlds.put("partitionId", String.class);
         qryFlds.put("parentId", Long.class);
+        qryFlds.put("subscriptionCount", long.class);
 
         type.setQueryFields(qryFlds);
 
@@ -52,6 +52,9 @@ public class IotSubscriptionFilter implements Serializable {
     /** Value for parentId. */
     private Long parentId;
 
+    /** Value for subscriptionCount. */
+    private long subscriptionCount;
+
     /**
      * Gets dateCreated.
      *
@@ -196,6 +199,24 @@ public class IotSubscriptionFilter implements Serializable {
         this.parentId = parentId;
     }
 
+    /**
+     * Gets subscriptionCount.
+     *
+     * @return Value for subscriptionCount.
+     */
+    public long getSubscriptionCount() {
+        return subscriptionCount;
+    }
+
+    /**
+     * Sets subscriptionCount.
+     *
+     * @param subscriptionCount New value for subscriptionCount.
+     */
+    public void setSubscriptionCount(long subscriptionCount) {
+        this.subscriptionCount = subscriptionCount;
+    }
+
     /** {@inheritDoc} */
     @Override public boolean equals(Object o) {
         if (this == o)
@@ -230,6 +251,9 @@ public class IotSubscriptionFilter implements Serializable {
         if (parentId != null ? !parentId.equals(that.parentId) : that.parentId != null)
             return false;
 
+        if (subscriptionCount != that.subscriptionCount)
+            return false;
+
         return true;
     }
 
@@ -251,6 +275,8 @@ public class IotSubscriptionFilter implements Serializable {
 
         res = 31 * res + (parentId != null ? parentId.hashCode() : 0);
 
+        res = 31 * res + (int)(subscriptionCount ^ (subscriptionCount >>> 32));
+
         return res;
     }
 
@@ -264,6 +290,7 @@ public class IotSubscriptionFilter implements Serializable {
             ", isFinal=" + isFinal +
             ", partitionId=" + partitionId +
             ", parentId=" + parentId +
+            ", subscriptionCount=" + subscriptionCount +
             "]";
     }
 }
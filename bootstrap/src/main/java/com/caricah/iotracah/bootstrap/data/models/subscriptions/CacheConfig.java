@@ -79,6 +79,7 @@ public class CacheConfig {
         vals.add(new CacheTypeFieldMetadata("client_id", Types.VARCHAR, "clientId", String.class));
         vals.add(new CacheTypeFieldMetadata("partition_id", Types.VARCHAR, "partitionId", String.class));
         vals.add(new CacheTypeFieldMetadata("subscription_filter_id", Types.BIGINT, "subscriptionFilterId", long.class));
+        vals.add(new CacheTypeFieldMetadata("share_group", Types.VARCHAR, "shareGroup", String.class));
         type.setValueFields(vals);
 
         // Query fields for iot_subscription.
@@ -92,6 +93,7 @@ public class CacheConfig {
         qryFlds.put("clientId", String.class);
         qryFlds.put("partitionId", String.class);
         qryFlds.put("subscriptionFilterId", long.class);
+        qryFlds.put("shareGroup", String.class);
 
         type.setQueryFields(qryFlds);
 
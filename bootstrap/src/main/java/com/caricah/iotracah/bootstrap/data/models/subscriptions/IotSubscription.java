@@ -52,6 +52,9 @@ public class IotSubscription implements Serializable {
     /** Value for subscriptionFilterId. */
     private long subscriptionFilterId;
 
+    /** Value for shareGroup. */
+    private String shareGroup;
+
     /**
      * Gets dateCreated.
      *
@@ -196,6 +199,24 @@ public class IotSubscription implements Serializable {
         this.subscriptionFilterId = subscriptionFilterId;
     }
 
+    /**
+     * Gets shareGroup, the group this subscription is shared with or null if it is not shared.
+     *
+     * @return Value for shareGroup.
+     */
+    public String getShareGroup() {
+        return shareGroup;
+    }
+
+    /**
+     * Sets shareGroup.
+     *
+     * @param shareGroup New value for shareGroup.
+     */
+    public void setShareGroup(String shareGroup) {
+        this.shareGroup = shareGroup;
+    }
+
     /** {@inheritDoc} */
     @Override public boolean equals(Object o) {
         if (this == o)
@@ -230,6 +251,9 @@ public class IotSubscription implements Serializable {
         if (subscriptionFilterId != that.subscriptionFilterId)
             return false;
 
+        if (shareGroup != null ? !shareGroup.equals(that.shareGroup) : that.shareGroup != null)
+            return false;
+
         return true;
     }
 
@@ -251,6 +275,8 @@ public class IotSubscription implements Serializable {
 
         res = 31 * res + (int)(subscriptionFilterId ^ (subscriptionFilterId >>> 32));
 
+        res = 31 * res + (shareGroup != null ? shareGroup.hashCode() : 0);
+
         return res;
     }
 
@@ -264,6 +290,7 @@ public class IotSubscription implements Serializable {
             ", clientId=" + clientId +
             ", partitionId=" + partitionId +
             ", subscriptionFilterId=" + subscriptionFilterId +
+            ", shareGroup=" + shareGroup +
             "]";
     }
 }
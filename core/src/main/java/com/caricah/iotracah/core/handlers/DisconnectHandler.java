@@ -56,6 +56,10 @@ public class DisconnectHandler extends RequestHandler<DisconnectMessage> {
                           getWorker().publishWill(iotSession);
                     }
 
+                    getWorker().getSessionResetManager().cancel(iotSession);
+
+                    getWorker().getAuthorizationCache().invalidate(iotSession.getSessionId());
+
                     logOutSession(iotSession.getId());
 
                 }, (throwable -> {
@@ -47,10 +47,14 @@ public class PublishAcknowledgeHandler extends RequestHandler<AcknowledgeMessage
 
                     //Handle acknowledging of message.
 
-                    Observable<PublishMessage> messageObservable = getDatastore().getMessage(iotSession,
+                    Observable<PublishMessage> messageObservable = getDatastore().acknowledgeMessage(iotSession,
                             acknowledgeMessage.getMessageId(), false);
 
-                    messageObservable.subscribe(getDatastore()::removeMessage);
+                    messageObservable.subscribe(
+                            publishMessage -> log.debug(" handle : message {} was acknowledged", publishMessage),
+                            throwable -> log.error(" handle : problems acknowledging message", throwable));
+
+                    getMessenger().onMessageAcknowledged(iotSession, acknowledgeMessage.getMessageId());
 
                 }, throwable -> disconnectDueToError(throwable, acknowledgeMessage));
 
@@ -47,10 +47,14 @@ public class PublishCompleteHandler extends RequestHandler<CompleteMessage> {
                 (iotSession) -> {
 
                     //Now deal with removing the message from the database.
-                    Observable<PublishMessage> messageObservable = getDatastore().getMessage(
+                    Observable<PublishMessage> messageObservable = getDatastore().acknowledgeMessage(
                             iotSession, completeMessage.getMessageId(), false);
 
-                    messageObservable.subscribe(getDatastore()::removeMessage);
+                    messageObservable.subscribe(
+                            publishMessage -> log.debug(" handle : message {} was completed", publishMessage),
+                            throwable -> log.error(" handle : problems completing message", throwable));
+
+                    getMessenger().onMessageAcknowledged(iotSession, completeMessage.getMessageId());
 
                 }, throwable ->  disconnectDueToError(throwable, completeMessage));
 
@@ -75,6 +75,7 @@ public class PublishInHandler extends RequestHandler<PublishMessage> {
                 topic.contains(Constant.SYS_PREFIX)
                 ) {
             log.info(" handle : Invalid topic " + publishMessage.getTopic());
+            publishMessage.releasePayloadBuffer();
             throw new ShutdownException(" Invalid topic name");
         }
 
@@ -147,10 +148,14 @@ public class PublishInHandler extends RequestHandler<PublishMessage> {
                         }
 
                     } catch (UnRetriableException | RetriableException e) {
+                        publishMessage.releasePayloadBuffer();
                         disconnectDueToError(e, publishMessage);
                     }
 
-                }, throwable -> disconnectDueToError(throwable, publishMessage)
+                }, throwable -> {
+                    publishMessage.releasePayloadBuffer();
+                    disconnectDueToError(throwable, publishMessage);
+                }
 
         );
 
@@ -49,10 +49,12 @@ public class PublishOutHandler extends RequestHandler<PublishMessage> implements
             switch (publishMessage.getProtocol()) {
 
                 case HTTP:
+                    publishMessage.detachPayloadBuffer();
                     PushHandler httpPushHandler = new PushHandler();
                     httpPushHandler.pushToUrl(publishMessage, this);
                     break;
                 default:
+                    publishMessage.releasePayloadBuffer();
                     log.error(" handle : outbound message {} using none implemented protocal");
             }
         }
@@ -20,7 +20,6 @@
 
 package com.caricah.iotracah.core.handlers;
 
-import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.security.AuthorityRole;
 import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
@@ -30,8 +29,6 @@ import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import rx.Observable;
 
-import java.util.Map;
-
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
  */
@@ -50,28 +47,21 @@ public class PublishReceivedHandler extends RequestHandler<PublishReceivedMessag
 
                 (iotSession) -> {
 
-                    Observable<PublishMessage> messageObservable = getDatastore().getMessage(
+                    //The stored message is marked as released where it is kept.
+                    Observable<PublishMessage> messageObservable = getDatastore().releaseMessage(
                             iotSession, publishReceivedMessage.getMessageId(), false);
 
                     messageObservable.subscribe(publishMessage -> {
 
                         log.debug(" handle : Obtained the message {} to be released.", publishMessage);
 
-                        publishMessage.setIsRelease(true);
-
-
-                        Observable<Map.Entry<Long, IotMessageKey>> messageIdObservable = getDatastore().saveMessage(publishMessage);
-                        messageIdObservable.subscribe(messageIdentity -> {
-
-                            //Generate a PUBREL message.
-
-                            ReleaseMessage releaseMessage = ReleaseMessage.from(messageIdentity.getValue().getMessageId(), false);
-                            releaseMessage.copyTransmissionData(publishReceivedMessage);
-                            pushToServer(releaseMessage);
+                        //Generate a PUBREL message.
 
-                        });
+                        ReleaseMessage releaseMessage = ReleaseMessage.from(publishMessage.getMessageId(), false);
+                        releaseMessage.copyTransmissionData(publishReceivedMessage);
+                        pushToServer(releaseMessage);
 
-                    });
+                    }, throwable -> log.error(" handle : problems releasing message", throwable));
 
                 }, throwable -> disconnectDueToError(throwable, publishReceivedMessage));
     }
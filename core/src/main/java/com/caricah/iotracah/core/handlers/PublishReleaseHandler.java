@@ -20,7 +20,6 @@
 
 package com.caricah.iotracah.core.handlers;
 
-import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.security.AuthorityRole;
 import com.caricah.iotracah.bootstrap.data.messages.CompleteMessage;
@@ -30,8 +29,6 @@ import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import rx.Observable;
 
-import java.util.Map;
-
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
  */
@@ -54,32 +51,29 @@ public class PublishReleaseHandler extends RequestHandler<ReleaseMessage> {
                      */
 
 
-                    Observable<PublishMessage> messageObservable = getDatastore().getMessage(
+                    Observable<PublishMessage> messageObservable = getDatastore().releaseMessage(
                             iotSession, releaseMessage.getMessageId(), true);
 
                     messageObservable.subscribe(publishMessage -> {
 
-                        publishMessage.setIsRelease(true);
-                        Observable<Map.Entry<Long, IotMessageKey>> messageIdObservable = getDatastore().saveMessage(publishMessage);
-
-                        messageIdObservable.subscribe(messageId -> {
-                            try {
+                        try {
 
-                                getMessenger().publish(iotSession.getPartitionId(), publishMessage);
-                                //Initiate a publish complete.
-                                CompleteMessage destroyMessage = CompleteMessage.from(publishMessage.getMessageId());
-                                destroyMessage.copyTransmissionData(publishMessage);
-                                pushToServer(destroyMessage);
+                            getMessenger().publish(iotSession.getPartitionId(), publishMessage);
+                            //Initiate a publish complete.
+                            CompleteMessage destroyMessage = CompleteMessage.from(publishMessage.getMessageId());
+                            destroyMessage.copyTransmissionData(publishMessage);
+                            pushToServer(destroyMessage);
 
 
-                                //Destroy message.
-                                getDatastore().removeMessage(publishMessage);
+                            //Destroy message.
+                            getDatastore().acknowledgeMessage(iotSession, releaseMessage.getMessageId(), true).subscribe(
+                                    removedMessage -> {},
+                                    throwable -> log.error(" releaseInboundMessage : problems removing released message.", throwable));
 
-                            } catch (RetriableException e) {
-                                log.error(" releaseInboundMessage : encountered a problem while publishing.", e);
-                            }
-                        });
-                    });
+                        } catch (RetriableException e) {
+                            log.error(" releaseInboundMessage : encountered a problem while publishing.", e);
+                        }
+                    }, throwable -> log.error(" releaseInboundMessage : problems releasing message.", throwable));
                 }, throwable -> disconnectDueToError(throwable, releaseMessage));
     }
 
@@ -26,7 +26,6 @@ import com.caricah.iotracah.bootstrap.data.models.client.IotClientKey;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.modules.Datastore;
 import com.caricah.iotracah.bootstrap.data.messages.DisconnectMessage;
-import com.caricah.iotracah.bootstrap.security.realm.auth.permission.IOTPermission;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import com.caricah.iotracah.core.worker.state.Messenger;
 import com.caricah.iotracah.core.modules.Worker;
@@ -36,7 +35,6 @@ import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authz.AuthorizationException;
-import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.UnauthenticatedException;
 import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
@@ -45,7 +43,6 @@ import rx.Observable;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -74,14 +71,6 @@ public abstract class RequestHandler<T extends IOTMessage> {
         return getWorker().getMessenger();
     }
 
-    private IOTPermission getPermission(String partition, String username, String clientId, AuthorityRole role, String topic) {
-        String permissionString = new StringJoiner("")
-                .add(role.name())
-                .add(":").add(topic).toString();
-
-        return new IOTPermission(partition, username, clientId, permissionString);
-    }
-
     public Observable<IOTClient> checkPermission(String sessionId, String authKey, AuthorityRole role, String... topicList) {
         return checkPermission(sessionId, authKey, role, Arrays.asList(topicList));
 
@@ -121,14 +110,8 @@ public abstract class RequestHandler<T extends IOTMessage> {
                             }
                         }
 
-                        List<Permission> permissions = topicList
-                                .stream()
-                                .map(topic ->
-                                        getPermission( session.getPartitionId(), session.getUsername(),
-                                                session.getClientIdentification(), role, topic))
-                                .collect(Collectors.toList());
-
-                        subject.checkPermissions(permissions);
+                        //Decisions are cached per session and follow account and role changes.
+                        getWorker().getAuthorizationCache().checkPermissions(session, role, topicList);
                     }
 
                     //Update session last accessed time.
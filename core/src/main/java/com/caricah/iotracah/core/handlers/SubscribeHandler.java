@@ -25,18 +25,21 @@ import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
 import com.caricah.iotracah.bootstrap.data.messages.SubscribeAcknowledgeMessage;
 import com.caricah.iotracah.bootstrap.data.messages.SubscribeMessage;
 import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
-import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilter;
 import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.security.AuthorityRole;
-import com.caricah.iotracah.core.worker.exceptions.DoesNotExistException;
+import com.caricah.iotracah.core.worker.state.SharedSubscription;
 import rx.Observable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -71,7 +74,8 @@ public class SubscribeHandler extends RequestHandler<SubscribeMessage> {
          */
 
         List<String> topics = new ArrayList<>();
-        subscribeMessage.getTopicFilterList().forEach(topic -> topics.add(topic.getKey()));
+        //Shared subscriptions are authorized against the filter they share.
+        subscribeMessage.getTopicFilterList().forEach(topic -> topics.add(SharedSubscription.getTopicFilter(topic.getKey())));
 
         Observable<IOTClient> permissionObservable = checkPermission(subscribeMessage.getSessionId(),
                 subscribeMessage.getAuthKey(), AuthorityRole.SUBSCRIBE, topics);
@@ -113,60 +117,110 @@ public class SubscribeHandler extends RequestHandler<SubscribeMessage> {
                                     for (Map.Entry<String, Integer> entry : subscribeMessage.getTopicFilterList())
                                         if (grantedQos.get(count++) != 0x80) {
 
+                                            //A share group is not sent retained messages as each member joins.
+                                            if (SharedSubscription.isShared(entry.getKey())) {
+                                                continue;
+                                            }
+
                                             log.debug(" handle : checking if topic filter {} has retained messages ", entry );
 
-                                            Observable<IotSubscriptionFilter> subscriptionFilterObservable = getDatastore().getSubscriptionFilterTree(iotSession.getPartitionId(), entry.getKey());
-                                            subscriptionFilterObservable.toBlocking().forEach(
-                                                    subscriptionFilter -> {
+                                            releaseRetainedMessages(iotSession, entry.getKey());
 
-                                                        try {
+                                        }
+                                }
+                            });
+                }, throwable2 -> disconnectDueToError(throwable2, subscribeMessage));
 
-                                                            log.debug(" handle : checking for retained messages for filter {}", subscriptionFilter);
 
-                                                            Observable<PublishMessage> retainedMessageObservable = getDatastore().getRetainedMessage(subscriptionFilter);
-                                                            retainedMessageObservable.subscribe(retainedMessage -> {
+    }
 
-                                                                log.debug(" handle : we got to release a retained message {}. ", retainedMessage);
+    /**
+     * Streams the retained messages matching a new subscription to the client.
+     * Messages are sent in batches paced to the configured delivery rate so that
+     * wide wildcard subscriptions do not flood the client or starve live traffic.
+     *
+     * @param iotSession
+     * @param topicFilter
+     */
+    private void releaseRetainedMessages(IOTClient iotSession, String topicFilter) {
 
-                                                                PublishMessage publishMessage = iotSession.copyTransmissionData(retainedMessage);
+        int batchSize = Math.max(1, getWorker().getRetainedDeliveryBatchSize());
 
-                                                                if (publishMessage.getQos() > 0) {
-                                                                    publishMessage.setIsRelease(false);
-                                                                    //Save the message as we proceed.
-                                                                    publishMessage.setMessageId(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE);
-                                                                    Map.Entry<Long, IotMessageKey> messageIdentity = getDatastore().saveMessage(publishMessage).toBlocking().single();
-                                                                    publishMessage.setMessageId(messageIdentity.getValue().getMessageId());
-                                                                }
+        long batchPauseInMillis = 0;
+        if (getWorker().getRetainedDeliveryRatePerSecond() > 0) {
+            batchPauseInMillis = TimeUnit.SECONDS.toMillis(batchSize) / getWorker().getRetainedDeliveryRatePerSecond();
+        }
 
+        final long pauseInMillis = batchPauseInMillis;
 
-                                                                try {
+        //Matching retained messages are resolved from the retained index and streamed in batches.
+        getDatastore().getRetainedMessages(iotSession.getPartitionId(), topicFilter)
+                .map(iotSession::copyTransmissionData)
+                .buffer(batchSize)
+                .concatMap(retainedBatch -> Observable.timer(pauseInMillis, TimeUnit.MILLISECONDS, getWorker().getScheduler())
+                        .map(tick -> retainedBatch))
+                .subscribe(retainedBatch -> releaseRetainedBatch(iotSession, retainedBatch),
+                        throwable -> log.error(" releaseRetainedMessages : problems getting retained messages", throwable));
+    }
 
-                                                                    getWorker().getHandler(PublishOutHandler.class).handle(publishMessage);
+    /**
+     * Persists the messages in the batch that require acknowledgement with a single
+     * datastore call before pushing the batch out to the client. Messages that do not
+     * fit in the client's delivery window are left pending until there is room.
+     *
+     * @param iotSession
+     * @param retainedBatch
+     */
+    private void releaseRetainedBatch(IOTClient iotSession, List<PublishMessage> retainedBatch) {
 
-                                                                } catch (RetriableException | UnRetriableException e) {
-                                                                    log.error(" handle : problems publishing ", e);
-                                                                }
+        List<PublishMessage> acknowledgedMessages = new ArrayList<>();
 
+        for (PublishMessage publishMessage : retainedBatch) {
+            if (publishMessage.getQos() > 0) {
+                publishMessage.setIsRelease(false);
+                publishMessage.setMessageId(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE);
+                acknowledgedMessages.add(publishMessage);
+            }
+        }
 
-                                                            }, throwable -> {
-                                                                if(throwable instanceof DoesNotExistException) {
-                                                                    //
-                                                                }else{
-                                                                    log.error(" handle: problems getting retained message", throwable);
-                                                                }
-                                                            });
+        Observable<Map.Entry<Long, IotMessageKey>> saveObservable = acknowledgedMessages.isEmpty()
+                ? Observable.empty() : getDatastore().saveMessages(acknowledgedMessages);
 
-                                                        } catch (UnRetriableException e) {
-                                                            log.error("  handle : problems obtaining subscription filter key", e);
-                                                        }
-                                                    }
-                                            );
+        saveObservable.toList().flatMap(messageIdentities -> {
 
-                                        }
-                                }
-                            });
-                }, throwable2 -> disconnectDueToError(throwable2, subscribeMessage));
+            for (int index = 0; index < messageIdentities.size(); index++) {
+                acknowledgedMessages.get(index).setMessageId(messageIdentities.get(index).getValue().getMessageId());
+            }
+
+            //Messages of the batch enter the delivery window one after the other to keep their order.
+            return Observable.from(acknowledgedMessages)
+                    .concatMap(acknowledgedMessage -> getMessenger().admitForDelivery(iotSession, acknowledgedMessage)
+                            .filter(isReleasable -> !isReleasable)
+                            .map(isReleasable -> acknowledgedMessage))
+                    .toList();
+
+        }).subscribe(heldMessageList -> {
+
+            Set<PublishMessage> heldMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+            heldMessages.addAll(heldMessageList);
+
+            for (PublishMessage publishMessage : retainedBatch) {
+
+                if (heldMessages.contains(publishMessage)) {
+                    continue;
+                }
+
+                log.debug(" releaseRetainedBatch : we got to release a retained message {}. ", publishMessage);
+
+                try {
+
+                    getWorker().getHandler(PublishOutHandler.class).handle(publishMessage);
 
+                } catch (RetriableException | UnRetriableException e) {
+                    log.error(" releaseRetainedBatch : problems publishing ", e);
+                }
+            }
 
+        }, throwable -> log.error(" releaseRetainedBatch : problems saving retained messages", throwable));
     }
 }
@@ -28,8 +28,15 @@ import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.security.AuthorityRole;
+import com.caricah.iotracah.core.worker.state.SharedSubscription;
 import rx.Observable;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
  */
@@ -50,25 +57,37 @@ public class UnSubscribeHandler extends RequestHandler<UnSubscribeMessage> {
          * Before unsubscribing we should get the current session and validate it.
          */
 
+        //Shared subscriptions are authorized against the filter they share, as when subscribing.
+        List<String> topics = new ArrayList<>();
+        unSubscribeMessage.getTopicFilterList().forEach(topic -> topics.add(SharedSubscription.getTopicFilter(topic)));
+
         Observable<IOTClient> permittedObservable = checkPermission(unSubscribeMessage.getSessionId(),
-                unSubscribeMessage.getAuthKey(), AuthorityRole.SUBSCRIBE,
-                unSubscribeMessage.getTopicFilterList());
+                unSubscribeMessage.getAuthKey(), AuthorityRole.SUBSCRIBE, topics);
 
         permittedObservable.subscribe(iotSession -> {
 
-            Observable<IotSubscription> subscriptionObservable = getDatastore().getSubscriptions(iotSession);
+            //Each topic filter resolves to its stored filter id and the share group it was subscribed with.
+            Observable<List<Map.Entry<Long, String>>> unSubscribedObservable = Observable.from(unSubscribeMessage.getTopicFilterList())
+                    .filter(topicFilter -> !SharedSubscription.isShared(topicFilter) || SharedSubscription.isValid(topicFilter))
+                    .flatMap(topicFilter -> getDatastore().getSubscriptionFilter(iotSession.getPartitionId(), SharedSubscription.getTopicFilter(topicFilter))
+                            .<Map.Entry<Long, String>>map(subscriptionFilter -> new AbstractMap.SimpleEntry<>(subscriptionFilter.getId(), SharedSubscription.getShareGroup(topicFilter))))
+                    .toList();
 
-            subscriptionObservable.subscribe(
-                    subscription ->
+            unSubscribedObservable.subscribe(unSubscribedFilters ->
 
-                        getMessenger().unSubscribe(subscription)
+                getDatastore().getSubscriptions(iotSession)
+                        .filter(subscription -> isUnSubscribed(subscription, unSubscribedFilters))
+                        .subscribe(
+                                subscription ->
 
-                    ,
-                    throwable ->
-                            log.error(" handle : problems unsubscribing ", throwable)
+                                    getMessenger().unSubscribe(subscription)
 
+                                ,
+                                throwable ->
+                                        log.error(" handle : problems unsubscribing ", throwable)
+                        )
 
-            );
+            , throwable -> log.error(" handle : problems unsubscribing ", throwable));
 
 
             UnSubscribeAcknowledgeMessage unSubscribeAcknowledgeMessage = UnSubscribeAcknowledgeMessage.from(unSubscribeMessage.getMessageId());
@@ -80,5 +99,22 @@ public class UnSubscribeHandler extends RequestHandler<UnSubscribeMessage> {
 
     }
 
+    /**
+     * A shared topic filter only removes the membership of its share group,
+     * while a plain one leaves any share group membership on the same filter in place.
+     */
+    private boolean isUnSubscribed(IotSubscription subscription, List<Map.Entry<Long, String>> unSubscribedFilters) {
+
+        for (Map.Entry<Long, String> unSubscribedFilter : unSubscribedFilters) {
+
+            if (unSubscribedFilter.getKey() == subscription.getSubscriptionFilterId()
+                    && Objects.equals(unSubscribedFilter.getValue(), subscription.getShareGroup())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
 
 }
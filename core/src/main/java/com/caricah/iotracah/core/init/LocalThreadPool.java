@@ -0,0 +1,259 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.init;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>LocalThreadPool</code> is a fixed size pool of named daemon threads
+ * running one tier of work on this node, such as network io, protocol handling,
+ * worker logic or datastore calls.
+ *
+ * The queue of a pool can be bounded, once it is full further tasks are parked
+ * in an overflow and handed back to the queue by the pool threads as room frees up.
+ * The submitting thread never runs the task itself, it may be an ignite or netty
+ * thread that must not block on the work of this tier.
+ *
+ * The queue depth, overflow depth and rejection count are published over JMX as
+ * <code>com.caricah.iotracah:type=ThreadPool,name=&lt;name&gt;</code>.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class LocalThreadPool extends ThreadPoolExecutor implements LocalThreadPoolMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalThreadPool.class);
+
+    private final String name;
+
+    private final int queueSize;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final ConcurrentLinkedDeque<Runnable> overflow = new ConcurrentLinkedDeque<>();
+
+    private final ObjectName objectName;
+
+    /**
+     * @param name      of the tier, used to name the threads.
+     * @param size      number of threads kept by the pool.
+     * @param queueSize maximum number of waiting tasks, zero or less for no limit.
+     */
+    public LocalThreadPool(String name, int size, int queueSize) {
+        super(size, size, 0L, TimeUnit.MILLISECONDS, createQueue(queueSize), new LocalThreadFactory(name));
+
+        this.name = name;
+        this.queueSize = queueSize;
+
+        setRejectedExecutionHandler(new OverflowHandler());
+
+        this.objectName = registerMBean(name);
+    }
+
+    private ObjectName registerMBean(String name) {
+
+        try {
+            ObjectName mbeanName = new ObjectName("com.caricah.iotracah:type=ThreadPool,name=" + ObjectName.quote(name));
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (!mbeanServer.isRegistered(mbeanName)) {
+                mbeanServer.registerMBean(this, mbeanName);
+                return mbeanName;
+            }
+        } catch (JMException e) {
+            log.warn(" registerMBean : could not publish metrics for pool {}", name, e);
+        }
+        return null;
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        drainOverflow();
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+
+        if (null != objectName) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.debug(" terminated : could not remove metrics for pool {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * <code>drainOverflow</code> moves parked tasks back to the queue, oldest first,
+     * for as long as the queue has room. It only hands tasks over, it never runs them.
+     */
+    private void drainOverflow() {
+
+        Runnable parked;
+        while (!isShutdown() && null != (parked = overflow.pollFirst())) {
+            if (!getQueue().offer(parked)) {
+                overflow.offerFirst(parked);
+                return;
+            }
+        }
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int queueSize) {
+        return queueSize > 0 ? new LinkedBlockingQueue<>(queueSize) : new LinkedBlockingQueue<>();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the limit on waiting tasks, zero or less when unbounded.
+     */
+    @Override
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return the number of tasks parked because the queue was full.
+     */
+    @Override
+    public int getOverflowDepth() {
+        return overflow.size();
+    }
+
+    /**
+     * <code>isPoolThread</code> tells whether a thread belongs to this pool,
+     * including threads started to replace ones that died.
+     *
+     * @param thread
+     * @return true if the pool created the thread and it is still running
+     */
+    public boolean isPoolThread(Thread thread) {
+        return ((LocalThreadFactory) getThreadFactory()).isLiveThread(thread);
+    }
+
+    /**
+     * @return the number of tasks that found the queue full and were parked in the overflow.
+     */
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{"
+                + "name=" + getName()
+                + ", size=" + getCorePoolSize()
+                + ", active=" + getActiveCount()
+                + ", queueDepth=" + getQueueDepth()
+                + ", queueSize=" + getQueueSize()
+                + ", overflowDepth=" + getOverflowDepth()
+                + ", completed=" + getCompletedTaskCount()
+                + ", rejected=" + getRejectedCount()
+                + "}";
+    }
+
+    private static final class LocalThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private final Set<Thread> liveThreads = ConcurrentHashMap.newKeySet();
+
+        private LocalThreadFactory(String name) {
+            this.prefix = "iotracah-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread[] createdThread = new Thread[1];
+
+            Thread thread = new Thread(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    liveThreads.remove(createdThread[0]);
+                }
+            }, prefix + threadCount.incrementAndGet());
+
+            createdThread[0] = thread;
+            thread.setDaemon(true);
+            liveThreads.add(thread);
+            return thread;
+        }
+
+        private boolean isLiveThread(Thread thread) {
+            return liveThreads.contains(thread);
+        }
+    }
+
+    private final class OverflowHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+
+            if (executor.isShutdown()) {
+                return;
+            }
+
+            if (rejectedCount.incrementAndGet() == 1) {
+                log.warn(" rejectedExecution : queue of pool {} is full, parking tasks in the overflow", name);
+            }
+
+            overflow.offerLast(runnable);
+
+            //The pool threads may have emptied the queue before the task was parked,
+            // handing over here keeps it from waiting for a task that never comes.
+            drainOverflow();
+        }
+    }
+}
@@ -85,6 +85,36 @@ public abstract class ServersInitializer implements SystemInitializer {
 
     public static final String CORE_CONFIG_ENGINE_CLUSTER_DISCOVERY_ADDRESSES = "core.config.engine.cluster.discovery.addresses";
 
+    public static final String CORE_CONFIG_ENGINE_THREADS_IO_SIZE = "core.config.engine.threads.io.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_IO_SIZE_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors() + 1;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_PROTOCOL_SIZE = "core.config.engine.threads.protocol.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_PROTOCOL_SIZE_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors() + 1;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_WORKER_SIZE = "core.config.engine.threads.worker.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_WORKER_SIZE_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors() * 2;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_WORKER_QUEUE_SIZE = "core.config.engine.threads.worker.queue.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_WORKER_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_DATASTORE_SIZE = "core.config.engine.threads.datastore.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_DATASTORE_SIZE_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors() * 2;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_DATASTORE_QUEUE_SIZE = "core.config.engine.threads.datastore.queue.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_DATASTORE_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_EVENTER_SIZE = "core.config.engine.threads.eventer.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_EVENTER_SIZE_DEFAULT_VALUE = 2;
+
+    public static final String CORE_CONFIG_ENGINE_THREADS_EVENTER_QUEUE_SIZE = "core.config.engine.threads.eventer.queue.size";
+    public static final int CORE_CONFIG_ENGINE_THREADS_EVENTER_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+    /**
+     * Event loops of every server accepting new connections,
+     * these run on the io threads of the server.
+     */
+    private static final int SERVER_ACCEPTOR_THREADS = 2;
+
     private boolean serverEngineEnabled;
 
     private boolean executorClusterSeparated;
@@ -101,6 +131,18 @@ public abstract class ServersInitializer implements SystemInitializer {
 
     private String[] discoveryAddresses;
 
+    private int ioThreads;
+
+    private int protocolThreads;
+
+    private LocalThreadPool workerThreadPool;
+
+    private LocalThreadPool datastoreThreadPool;
+
+    private LocalThreadPool eventerThreadPool;
+
+    private final List<LocalThreadPool> threadPoolList = new ArrayList<>();
+
     private List<Subscription> rxSubscriptionList = new ArrayList<>();
 
     public boolean isServerEngineEnabled() {
@@ -167,6 +209,53 @@ public abstract class ServersInitializer implements SystemInitializer {
         this.discoveryAddresses = discoveryAddresses;
     }
 
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getProtocolThreads() {
+        return protocolThreads;
+    }
+
+    public void setProtocolThreads(int protocolThreads) {
+        this.protocolThreads = protocolThreads;
+    }
+
+    public LocalThreadPool getWorkerThreadPool() {
+        return workerThreadPool;
+    }
+
+    public void setWorkerThreadPool(LocalThreadPool workerThreadPool) {
+        this.workerThreadPool = workerThreadPool;
+    }
+
+    public LocalThreadPool getDatastoreThreadPool() {
+        return datastoreThreadPool;
+    }
+
+    public void setDatastoreThreadPool(LocalThreadPool datastoreThreadPool) {
+        this.datastoreThreadPool = datastoreThreadPool;
+    }
+
+    public LocalThreadPool getEventerThreadPool() {
+        return eventerThreadPool;
+    }
+
+    public void setEventerThreadPool(LocalThreadPool eventerThreadPool) {
+        this.eventerThreadPool = eventerThreadPool;
+    }
+
+    /**
+     * @return every thread pool started on this node, for reading their queue depths.
+     */
+    public List<LocalThreadPool> getThreadPoolList() {
+        return threadPoolList;
+    }
+
     private List<Server> serverList = new ArrayList<>();
 
     public List<Server> getServerList() {
@@ -191,7 +280,15 @@ public abstract class ServersInitializer implements SystemInitializer {
             //Link server observable to .
             subscribeObserverToAnObservable(server, getServerRouter());
 
-            server.setExecutorService(getSystemExcecutor(server));
+            //Netty holds on to a thread for every event loop, so each server gets pools
+            // sized exactly for its acceptor, io and protocol event loops.
+            String serverName = server.getClass().getSimpleName();
+
+            server.setIoThreads(getIoThreads());
+            server.setIoExecutorService(createThreadPool(serverName + "-io", SERVER_ACCEPTOR_THREADS + getIoThreads(), 0));
+
+            server.setProtocolThreads(getProtocolThreads());
+            server.setExecutorService(createThreadPool(serverName + "-protocol", getProtocolThreads(), 0));
 
             //Actually just start our server guy.
             server.initiate();
@@ -271,6 +368,53 @@ public abstract class ServersInitializer implements SystemInitializer {
 
         String[] discoveryAddresses = configuration.getStringArray(CORE_CONFIG_ENGINE_CLUSTER_DISCOVERY_ADDRESSES);
         setDiscoveryAddresses(discoveryAddresses);
+
+        int ioThreads = configuration.getInt(CORE_CONFIG_ENGINE_THREADS_IO_SIZE, CORE_CONFIG_ENGINE_THREADS_IO_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Servers will use {} io threads each", ioThreads);
+        setIoThreads(ioThreads);
+
+        int protocolThreads = configuration.getInt(CORE_CONFIG_ENGINE_THREADS_PROTOCOL_SIZE, CORE_CONFIG_ENGINE_THREADS_PROTOCOL_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Servers will use {} protocol threads each", protocolThreads);
+        setProtocolThreads(protocolThreads);
+
+        if (ioThreads < 1 || protocolThreads < 1) {
+            throw new UnRetriableException(" configure : io and protocol thread counts should be atleast 1");
+        }
+
+        setWorkerThreadPool(createThreadPool(configuration, "worker",
+                CORE_CONFIG_ENGINE_THREADS_WORKER_SIZE, CORE_CONFIG_ENGINE_THREADS_WORKER_SIZE_DEFAULT_VALUE,
+                CORE_CONFIG_ENGINE_THREADS_WORKER_QUEUE_SIZE, CORE_CONFIG_ENGINE_THREADS_WORKER_QUEUE_SIZE_DEFAULT_VALUE));
+
+        setDatastoreThreadPool(createThreadPool(configuration, "datastore",
+                CORE_CONFIG_ENGINE_THREADS_DATASTORE_SIZE, CORE_CONFIG_ENGINE_THREADS_DATASTORE_SIZE_DEFAULT_VALUE,
+                CORE_CONFIG_ENGINE_THREADS_DATASTORE_QUEUE_SIZE, CORE_CONFIG_ENGINE_THREADS_DATASTORE_QUEUE_SIZE_DEFAULT_VALUE));
+
+        setEventerThreadPool(createThreadPool(configuration, "eventer",
+                CORE_CONFIG_ENGINE_THREADS_EVENTER_SIZE, CORE_CONFIG_ENGINE_THREADS_EVENTER_SIZE_DEFAULT_VALUE,
+                CORE_CONFIG_ENGINE_THREADS_EVENTER_QUEUE_SIZE, CORE_CONFIG_ENGINE_THREADS_EVENTER_QUEUE_SIZE_DEFAULT_VALUE));
+    }
+
+    private LocalThreadPool createThreadPool(Configuration configuration, String name,
+                                             String sizeKey, int defaultSize,
+                                             String queueSizeKey, int defaultQueueSize) throws UnRetriableException {
+
+        int size = configuration.getInt(sizeKey, defaultSize);
+        int queueSize = configuration.getInt(queueSizeKey, defaultQueueSize);
+
+        log.debug(" configure : The {} tier is configured with {} threads and a queue of {}", name, size, queueSize);
+
+        if (size < 1) {
+            throw new UnRetriableException(" configure : the " + name + " tier should have atleast 1 thread");
+        }
+
+        return createThreadPool(name, size, queueSize);
+    }
+
+    protected LocalThreadPool createThreadPool(String name, int size, int queueSize) {
+
+        LocalThreadPool threadPool = new LocalThreadPool(name, size, queueSize);
+        getThreadPoolList().add(threadPool);
+        return threadPool;
     }
 
 
@@ -388,9 +532,12 @@ public abstract class ServersInitializer implements SystemInitializer {
 
 
         //The schedular obtained allows for processing of data to be sent to the
-        //correct excecutor groups.
+        //correct excecutor groups, on other nodes only when the cluster is separated by roles.
+
+        ExecutorService executorService = isExecutorClusterSeparated() ?
+                getRemoteExcecutor(observableOnSubscriber) : getSystemExcecutor(observableOnSubscriber);
 
-        Scheduler scheduler = Schedulers.from(getSystemExcecutor(observableOnSubscriber));
+        Scheduler scheduler = Schedulers.from(executorService);
 
         return observable
                     .subscribeOn(scheduler)
@@ -399,37 +546,54 @@ public abstract class ServersInitializer implements SystemInitializer {
     }
 
 
+    /**
+     * <code>getSystemExcecutor</code> obtains the local thread pool
+     * of the tier the handler belongs to.
+     *
+     * @param observableOnSubscriber
+     * @return the local executor for the handler.
+     */
     public ExecutorService getSystemExcecutor(Object observableOnSubscriber) {
 
-        //Note: since ignite expects a runnable that is serializable we will deffer
-        // Work on distributing the load to a cluster separated by functions.
-        // And simply use the io scheduler.
+        if (observableOnSubscriber instanceof Eventer) {
+            return getEventerThreadPool();
+        } else if (observableOnSubscriber instanceof Datastore) {
+            return getDatastoreThreadPool();
+        } else {
+            return getWorkerThreadPool();
+        }
+    }
 
-        ClusterGroup executionGrp;
 
-        if (isExecutorClusterSeparated()) {
+    /**
+     * <code>getRemoteExcecutor</code> obtains an executor dispatching work
+     * to the cluster nodes carrying the role of the handler.
+     * Tasks submitted to it have to be serializable.
+     *
+     * @param observableOnSubscriber
+     * @return the remote executor for the handler.
+     */
+    public ExecutorService getRemoteExcecutor(Object observableOnSubscriber) {
 
-            if (observableOnSubscriber instanceof Server) {
+        ClusterGroup executionGrp;
 
-                // Cluster group for nodes where the attribute 'worker' is defined.
-                executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorServerName());
+        if (observableOnSubscriber instanceof Server) {
 
-            } else if (observableOnSubscriber instanceof Worker || observableOnSubscriber instanceof ServerRouter) {
+            // Cluster group for nodes where the attribute 'worker' is defined.
+            executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorServerName());
 
-                executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorWorkerName());
+        } else if (observableOnSubscriber instanceof Worker || observableOnSubscriber instanceof ServerRouter) {
 
-            } else if (observableOnSubscriber instanceof Eventer) {
+            executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorWorkerName());
 
-                executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorEventerName());
-            } else if( observableOnSubscriber instanceof Datastore) {
+        } else if (observableOnSubscriber instanceof Eventer) {
 
-                executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorDatastoreName());
+            executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorEventerName());
+        } else if( observableOnSubscriber instanceof Datastore) {
 
-            }else{
-                executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorDefaultName());
-            }
-        } else {
+            executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorDatastoreName());
 
+        }else{
             executionGrp = getIgnite().cluster().forAttribute("ROLE", getExecutorDefaultName());
         }
 
@@ -20,7 +20,9 @@
 
 package com.caricah.iotracah.core.init;
 
+import com.caricah.iotracah.core.modules.Server;
 import com.caricah.iotracah.core.modules.Worker;
+import com.caricah.iotracah.core.modules.base.server.ConnectionBacklog;
 import com.caricah.iotracah.core.worker.state.Messenger;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.system.BaseSystemHandler;
@@ -42,8 +44,28 @@ public abstract class WorkersInitializer extends ServersInitializer {
     public static final String CORE_CONFIG_ENGINE_WORKER_IS_ENABLED = "core.config.engine.worker.is.enabled";
     public static final boolean CORE_CONFIG_ENGINE_WORKER_IS_ENABLED_DEFAULT_VALUE = true;
 
+    public static final String CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_HIGH_WATER_MARK = "core.config.engine.backpressure.connection.high.water.mark";
+    public static final int CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_HIGH_WATER_MARK_DEFAULT_VALUE = 100;
+
+    public static final String CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_LOW_WATER_MARK = "core.config.engine.backpressure.connection.low.water.mark";
+    public static final int CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_LOW_WATER_MARK_DEFAULT_VALUE = 50;
+
+    public static final String CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_HIGH_WATER_MARK = "core.config.engine.backpressure.global.high.water.mark";
+    public static final int CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_HIGH_WATER_MARK_DEFAULT_VALUE = 10000;
+
+    public static final String CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_LOW_WATER_MARK = "core.config.engine.backpressure.global.low.water.mark";
+    public static final int CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_LOW_WATER_MARK_DEFAULT_VALUE = 5000;
+
     private boolean workerEngineEnabled;
 
+    private int connectionHighWaterMark;
+
+    private int connectionLowWaterMark;
+
+    private int globalHighWaterMark;
+
+    private int globalLowWaterMark;
+
     private boolean annonymousLoginEnabled;
 
     private String annonymousLoginUsername;
@@ -91,6 +113,38 @@ public abstract class WorkersInitializer extends ServersInitializer {
         return workerList;
     }
 
+    public int getConnectionHighWaterMark() {
+        return connectionHighWaterMark;
+    }
+
+    public void setConnectionHighWaterMark(int connectionHighWaterMark) {
+        this.connectionHighWaterMark = connectionHighWaterMark;
+    }
+
+    public int getConnectionLowWaterMark() {
+        return connectionLowWaterMark;
+    }
+
+    public void setConnectionLowWaterMark(int connectionLowWaterMark) {
+        this.connectionLowWaterMark = connectionLowWaterMark;
+    }
+
+    public int getGlobalHighWaterMark() {
+        return globalHighWaterMark;
+    }
+
+    public void setGlobalHighWaterMark(int globalHighWaterMark) {
+        this.globalHighWaterMark = globalHighWaterMark;
+    }
+
+    public int getGlobalLowWaterMark() {
+        return globalLowWaterMark;
+    }
+
+    public void setGlobalLowWaterMark(int globalLowWaterMark) {
+        this.globalLowWaterMark = globalLowWaterMark;
+    }
+
 
 
 
@@ -138,6 +192,17 @@ public abstract class WorkersInitializer extends ServersInitializer {
             //Actually start our worker guy.
             worker.initiate();
         }
+
+        //Servers only hold back clients when workers on this node report back on their progress.
+        // Messages sent across the cluster lose their processed callback, so a separated cluster never does.
+        if (!getWorkerList().isEmpty() && !isExecutorClusterSeparated()) {
+
+            for (Server server : getServerList()) {
+                server.setConnectionBacklog(new ConnectionBacklog(
+                        getConnectionHighWaterMark(), getConnectionLowWaterMark(),
+                        getGlobalHighWaterMark(), getGlobalLowWaterMark(), server));
+            }
+        }
     }
 
     protected void classifyBaseHandler(BaseSystemHandler baseSystemHandler){
@@ -180,6 +245,24 @@ public abstract class WorkersInitializer extends ServersInitializer {
 
         setWorkerEngineEnabled(configWorkerEnabled);
 
+        int connectionHighWaterMark = configuration.getInt(CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_HIGH_WATER_MARK, CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_HIGH_WATER_MARK_DEFAULT_VALUE);
+        int connectionLowWaterMark = configuration.getInt(CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_LOW_WATER_MARK, CORE_CONFIG_ENGINE_BACKPRESSURE_CONNECTION_LOW_WATER_MARK_DEFAULT_VALUE);
+        log.debug(" configure : Connections are paused at [{}] unprocessed messages and resumed at [{}]", connectionHighWaterMark, connectionLowWaterMark);
+
+        int globalHighWaterMark = configuration.getInt(CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_HIGH_WATER_MARK, CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_HIGH_WATER_MARK_DEFAULT_VALUE);
+        int globalLowWaterMark = configuration.getInt(CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_LOW_WATER_MARK, CORE_CONFIG_ENGINE_BACKPRESSURE_GLOBAL_LOW_WATER_MARK_DEFAULT_VALUE);
+        log.debug(" configure : Servers are overloaded at [{}] unprocessed messages until they drop to [{}]", globalHighWaterMark, globalLowWaterMark);
+
+        if (connectionLowWaterMark < 0 || connectionLowWaterMark >= connectionHighWaterMark
+                || globalLowWaterMark < 0 || globalLowWaterMark >= globalHighWaterMark) {
+            throw new UnRetriableException(" Back pressure low water marks have to be below their high water marks");
+        }
+
+        setConnectionHighWaterMark(connectionHighWaterMark);
+        setConnectionLowWaterMark(connectionLowWaterMark);
+        setGlobalHighWaterMark(globalHighWaterMark);
+        setGlobalLowWaterMark(globalLowWaterMark);
+
 
 
 
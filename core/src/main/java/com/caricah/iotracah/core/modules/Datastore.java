@@ -29,8 +29,11 @@ import com.caricah.iotracah.bootstrap.data.models.subscriptions.IotSubscription;
 import com.caricah.iotracah.bootstrap.security.realm.IOTSecurityDatastore;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.bootstrap.system.BaseSystemHandler;
+import com.caricah.iotracah.core.security.SecurityChangeListener;
 import com.caricah.iotracah.core.worker.exceptions.DoesNotExistException;
 import com.caricah.iotracah.core.worker.state.Constant;
+import com.caricah.iotracah.core.worker.state.DeliveryAdmission;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
 import org.apache.ignite.Ignite;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.session.mgt.DefaultSessionKey;
@@ -40,6 +43,7 @@ import rx.Observable;
 import rx.Subscriber;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -56,6 +60,8 @@ public abstract class Datastore implements IOTSecurityDatastore, Observable.OnSu
 
     List<Eventer> eventerList = new ArrayList<>();
 
+    private final List<SecurityChangeListener> securityChangeListenerList = new CopyOnWriteArrayList<>();
+
     private Ignite ignite;
 
     private ExecutorService executorService;
@@ -100,6 +106,8 @@ public abstract class Datastore implements IOTSecurityDatastore, Observable.OnSu
         );
     }
 
+    public abstract Observable<IOTClient> getSessions(Set<IotClientKey> sessionIds);
+
     public abstract Observable<PublishMessage> getWill(IOTClient client);
     public abstract void saveWill(IOTClient iotSession, PublishMessage publishMessage);
     public abstract void removeWill(IOTClient client);
@@ -108,6 +116,15 @@ public abstract class Datastore implements IOTSecurityDatastore, Observable.OnSu
     public abstract Observable<IotSubscriptionFilter> getOrCreateSubscriptionFilter(String partition, String topic);
     public abstract Observable<IotSubscriptionFilter> getSubscriptionFilterTree(String partitionId, String topic);
 
+    /**
+     * <code>getSubscriptionFilter</code> obtains the stored filter for a topic filter without creating it.
+     *
+     * @param partition
+     * @param topicFilter
+     * @return the filter or nothing if it is not stored
+     */
+    public abstract Observable<IotSubscriptionFilter> getSubscriptionFilter(String partition, String topicFilter);
+
     public abstract void removeSubscriptionFilter(IotSubscriptionFilter subscriptionFilter);
 
 
@@ -121,15 +138,89 @@ public abstract class Datastore implements IOTSecurityDatastore, Observable.OnSu
 
 
     public abstract Observable<PublishMessage> getMessages(IOTClient session);
+
+    /**
+     * <code>getMessages</code> obtains one page of the messages stored for a session.
+     *
+     * @param session
+     * @param afterId only messages with a greater id are read
+     * @param uptoId only messages with this id or a smaller one are read
+     * @param limit the most messages to read
+     * @return the messages ordered by id
+     */
+    public abstract Observable<PublishMessage> getMessages(IOTClient session, long afterId, long uptoId, int limit);
+
+    /**
+     * <code>getLastMessageId</code> obtains the largest id of the messages stored for a session.
+     *
+     * @param session
+     * @return the id or 0 when no message is stored
+     */
+    public abstract Observable<Long> getLastMessageId(IOTClient session);
     public abstract Observable<PublishMessage> getMessage(IOTClient iotClient, long messageId, boolean isInbound) ;
 
+    /**
+     * <code>acknowledgeMessage</code> removes a message the delivery of which is complete.
+     *
+     * @param iotClient
+     * @param messageId
+     * @param isInbound
+     * @return the removed message, nothing if it was not stored.
+     */
+    public abstract Observable<PublishMessage> acknowledgeMessage(IOTClient iotClient, long messageId, boolean isInbound) ;
+
+    /**
+     * <code>releaseMessage</code> marks a qos 2 message as released.
+     *
+     * @param iotClient
+     * @param messageId
+     * @param isInbound
+     * @return the released message, nothing if it was not stored.
+     */
+    public abstract Observable<PublishMessage> releaseMessage(IOTClient iotClient, long messageId, boolean isInbound) ;
+
     public abstract Observable<Map.Entry<Long, IotMessageKey>> saveMessage(PublishMessage publishMessage);
 
+    public abstract Observable<Map.Entry<Long, IotMessageKey>> saveMessages(List<PublishMessage> publishMessages);
+
     public abstract void removeMessage(PublishMessage publishMessage);
 
+    /**
+     * <code>admitMessage</code> places a saved outbound message in the delivery window of its session.
+     * Messages beyond the in flight limit wait in a pending queue bounded by the pending limit,
+     * past which the overflow policy decides which message is discarded.
+     *
+     * @param publishMessage
+     * @param inFlightLimit
+     * @param pendingLimit
+     * @param overflowPolicy
+     * @return where the message was placed
+     */
+    public abstract Observable<DeliveryAdmission> admitMessage(PublishMessage publishMessage, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy);
+
+    /**
+     * <code>promotePendingMessages</code> moves pending messages of a session in flight
+     * while there is room in its window.
+     *
+     * @param client
+     * @param inFlightLimit
+     * @return the promoted messages in the order they were queued
+     */
+    public abstract Observable<PublishMessage> promotePendingMessages(IOTClient client, int inFlightLimit);
+
+    public abstract Observable<Set<Integer>> getPendingMessageIds(IOTClient client);
+
     public abstract Observable<PublishMessage> getRetainedMessage(IotSubscriptionFilter subscriptionFilter) ;
 
-    public abstract void saveRetainedMessage(IotSubscriptionFilter subscriptionFilter, int qos, Object payload);
+    public abstract Observable<PublishMessage> getRetainedMessages(String partitionId, String topicFilter) ;
+
+    /**
+     * @param subscriptionFilter
+     * @param qos
+     * @param payload
+     * @param expiresAt time in milliseconds after which the message is no longer delivered, 0 if it does not expire.
+     */
+    public abstract void saveRetainedMessage(IotSubscriptionFilter subscriptionFilter, int qos, Object payload, long expiresAt);
 
     public abstract void removeRetainedMessage(IotSubscriptionFilter subscriptionFilter);
 
@@ -152,6 +243,22 @@ public abstract class Datastore implements IOTSecurityDatastore, Observable.OnSu
     }
 
 
+    public void addSecurityChangeListener(SecurityChangeListener securityChangeListener) {
+        securityChangeListenerList.add(securityChangeListener);
+    }
+
+    public void removeSecurityChangeListener(SecurityChangeListener securityChangeListener) {
+        securityChangeListenerList.remove(securityChangeListener);
+    }
+
+    protected void notifyAccountChanged(String partitionId, String username) {
+        securityChangeListenerList.forEach(listener -> listener.onAccountChanged(partitionId, username));
+    }
+
+    protected void notifyRoleChanged(String partitionId, String roleName) {
+        securityChangeListenerList.forEach(listener -> listener.onRoleChanged(partitionId, roleName));
+    }
+
     @Override
     public void call(Subscriber<? super IOTMessage> subscriber) {
 
@@ -23,6 +23,7 @@ package com.caricah.iotracah.core.modules;
 import com.caricah.iotracah.bootstrap.data.messages.DisconnectMessage;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import com.caricah.iotracah.core.modules.base.IOTBaseHandler;
+import com.caricah.iotracah.core.modules.base.server.ConnectionBacklog;
 import com.caricah.iotracah.bootstrap.data.messages.base.Protocol;
 import com.caricah.iotracah.bootstrap.system.BaseSystemHandler;
 
@@ -34,7 +35,7 @@ import java.util.concurrent.ExecutorService;
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
  * @version 1.0 8/10/15
  */
-public abstract class Server<T> extends IOTBaseHandler {
+public abstract class Server<T> extends IOTBaseHandler implements ConnectionBacklog.Listener {
 
 
     /**
@@ -43,6 +44,20 @@ public abstract class Server<T> extends IOTBaseHandler {
      */
     private ExecutorService executorService;
 
+    /**
+     * Threads backing the network event loops of the server.
+     */
+    private ExecutorService ioExecutorService;
+
+    private int ioThreads;
+
+    private int protocolThreads;
+
+    /**
+     * Messages handed to the workers and not yet processed.
+     */
+    private ConnectionBacklog connectionBacklog;
+
     public ExecutorService getExecutorService() {
         return executorService;
     }
@@ -51,6 +66,38 @@ public abstract class Server<T> extends IOTBaseHandler {
         this.executorService = executorService;
     }
 
+    public ExecutorService getIoExecutorService() {
+        return ioExecutorService;
+    }
+
+    public void setIoExecutorService(ExecutorService ioExecutorService) {
+        this.ioExecutorService = ioExecutorService;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public ConnectionBacklog getConnectionBacklog() {
+        return connectionBacklog;
+    }
+
+    public void setConnectionBacklog(ConnectionBacklog connectionBacklog) {
+        this.connectionBacklog = connectionBacklog;
+    }
+
+    public int getProtocolThreads() {
+        return protocolThreads;
+    }
+
+    public void setProtocolThreads(int protocolThreads) {
+        this.protocolThreads = protocolThreads;
+    }
+
     /**
      * Declaration by the server implementation if its connections are persistant
      * Or not.
@@ -95,6 +142,23 @@ public abstract class Server<T> extends IOTBaseHandler {
      */
     protected abstract T toServerMessage(IOTMessage internalMessage);
 
+    /**
+     * Implementation stops reading from the connection
+     * until <code>resumeReading</code> is called for it.
+     *
+     * @param connectionId
+     */
+    @Override
+    public abstract void pauseReading(String connectionId);
+
+    /**
+     * Implementation starts reading from a paused connection again.
+     *
+     * @param connectionId
+     */
+    @Override
+    public abstract void resumeReading(String connectionId);
+
 
     /**
      * Implementation expected to be called whenever a message is being pushed to
@@ -131,6 +195,12 @@ public abstract class Server<T> extends IOTBaseHandler {
         ioTMessage.setCluster(getCluster());
         ioTMessage.setProtocol(getProtocal());
 
+        ConnectionBacklog backlog = getConnectionBacklog();
+        if (null != backlog) {
+            backlog.onReceived(connectionId);
+            ioTMessage.setProcessedCallback(() -> backlog.onProcessed(connectionId));
+        }
+
         getSubscriberList().forEach(subscriber -> subscriber.onNext(ioTMessage));
 
     }
@@ -145,6 +215,18 @@ public abstract class Server<T> extends IOTBaseHandler {
     }
 
 
+    /**
+     * <code>onConnectionClosed</code> is notified once a connection is gone.
+     *
+     * @param connectionId
+     */
+    public void onConnectionClosed(String connectionId) {
+
+        if (null != connectionId && null != getConnectionBacklog()) {
+            getConnectionBacklog().onClosed(connectionId);
+        }
+    }
+
     @Override
     public int compareTo(BaseSystemHandler baseSystemHandler) {
 
@@ -23,17 +23,26 @@ package com.caricah.iotracah.core.modules;
 import com.caricah.iotracah.bootstrap.data.messages.DisconnectMessage;
 import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
-import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
 import com.caricah.iotracah.bootstrap.data.models.subscriptions.IotSubscription;
 import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
+import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.bootstrap.system.BaseSystemHandler;
 import com.caricah.iotracah.core.handlers.RequestHandler;
 import com.caricah.iotracah.core.modules.base.IOTBaseHandler;
 import com.caricah.iotracah.core.modules.base.server.ServerRouter;
+import com.caricah.iotracah.core.security.AuthorizationCache;
+import com.caricah.iotracah.core.worker.OrderedDelivery;
+import com.caricah.iotracah.core.worker.StripedExecutor;
 import com.caricah.iotracah.core.worker.exceptions.DoesNotExistException;
+import com.caricah.iotracah.core.worker.state.LeastInFlightSharedSubscriptionPolicy;
 import com.caricah.iotracah.core.worker.state.Messenger;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
+import com.caricah.iotracah.core.worker.state.RoundRobinSharedSubscriptionPolicy;
+import com.caricah.iotracah.core.worker.state.SharedSubscriptionPolicy;
+import com.caricah.iotracah.core.worker.state.StickySharedSubscriptionPolicy;
 import com.caricah.iotracah.core.worker.state.SessionResetManager;
+import org.apache.commons.configuration.Configuration;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteAtomicSequence;
 import org.apache.shiro.session.SessionListener;
@@ -42,7 +51,9 @@ import rx.Scheduler;
 import rx.schedulers.Schedulers;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -63,6 +74,41 @@ public abstract class Worker extends IOTBaseHandler implements SessionListener{
     public static final String CORE_CONFIG_WORKER_CLIENT_KEEP_ALIVE_IN_SECONDS = "core.config.worker.client.keep.alive.in.seconds";
     public static final int CORE_CONFIG_WORKER_CLIENT_KEEP_ALIVE_IN_SECONDS_DEFAULT_VALUE = 65535;
 
+    public static final String CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND = "core.config.worker.retained.delivery.rate.per.second";
+    public static final int CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND_DEFAULT_VALUE = 100;
+
+    public static final String CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE = "core.config.worker.retained.delivery.batch.size";
+    public static final int CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE_DEFAULT_VALUE = 10;
+
+    public static final String CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY = "core.config.worker.shared.subscription.policy";
+    public static final String CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY_DEFAULT_VALUE = RoundRobinSharedSubscriptionPolicy.NAME;
+
+    public static final String CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW = "core.config.worker.session.in.flight.window";
+    public static final int CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW_DEFAULT_VALUE = 100;
+
+    public static final String CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE = "core.config.worker.session.pending.queue.size";
+    public static final int CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE_DEFAULT_VALUE = 1000;
+
+    public static final String CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY = "core.config.worker.session.overflow.policy";
+    public static final String CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY_DEFAULT_VALUE = "drop_oldest";
+
+    public static final String CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE = "core.config.worker.session.replay.page.size";
+    public static final int CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE_DEFAULT_VALUE = 100;
+
+    public static final String CORE_CONFIG_WORKER_MESSAGE_TTL = "core.config.worker.message.ttl";
+    public static final int CORE_CONFIG_WORKER_MESSAGE_TTL_DEFAULT_VALUE = 0;
+
+    public static final String CORE_CONFIG_WORKER_MESSAGE_TTL_PARTITION_PREFIX = "core.config.worker.message.ttl.partition";
+
+    public static final String CORE_CONFIG_WORKER_STRIPE_COUNT = "core.config.worker.stripe.count";
+    public static final int CORE_CONFIG_WORKER_STRIPE_COUNT_DEFAULT_VALUE = Runtime.getRuntime().availableProcessors();
+
+    public static final String CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE = "core.config.worker.stripe.queue.size";
+    public static final int CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE_DEFAULT_VALUE = 1000;
+
+    public static final String CORE_CONFIG_WORKER_AUTHORIZATION_CACHE_SIZE = "core.config.worker.authorization.cache.size";
+    public static final int CORE_CONFIG_WORKER_AUTHORIZATION_CACHE_SIZE_DEFAULT_VALUE = 100;
+
     private Ignite ignite;
 
     public Ignite getIgnite() {
@@ -83,6 +129,36 @@ public abstract class Worker extends IOTBaseHandler implements SessionListener{
 
     private int keepAliveInSeconds;
 
+    private int retainedDeliveryRatePerSecond;
+
+    private int retainedDeliveryBatchSize;
+
+    private SharedSubscriptionPolicy sharedSubscriptionPolicy;
+
+    private int sessionInFlightWindow;
+
+    private int sessionPendingQueueSize;
+
+    private OverflowPolicy sessionOverflowPolicy;
+
+    private int sessionReplayPageSize;
+
+    private int messageTtl;
+
+    private Map<String, Integer> partitionMessageTtls = new HashMap<>();
+
+    private int stripeCount;
+
+    private int stripeQueueSize;
+
+    private StripedExecutor stripedExecutor;
+
+    private OrderedDelivery orderedDelivery;
+
+    private int authorizationCacheSize;
+
+    private AuthorizationCache authorizationCache;
+
     private Datastore datastore;
 
     private Messenger messenger;
@@ -195,6 +271,215 @@ public abstract class Worker extends IOTBaseHandler implements SessionListener{
         this.keepAliveInSeconds = keepAliveInSeconds;
     }
 
+    public int getRetainedDeliveryRatePerSecond() {
+        return retainedDeliveryRatePerSecond;
+    }
+
+    public void setRetainedDeliveryRatePerSecond(int retainedDeliveryRatePerSecond) {
+        this.retainedDeliveryRatePerSecond = retainedDeliveryRatePerSecond;
+    }
+
+    public int getRetainedDeliveryBatchSize() {
+        return retainedDeliveryBatchSize;
+    }
+
+    public void setRetainedDeliveryBatchSize(int retainedDeliveryBatchSize) {
+        this.retainedDeliveryBatchSize = retainedDeliveryBatchSize;
+    }
+
+    public SharedSubscriptionPolicy getSharedSubscriptionPolicy() {
+        return sharedSubscriptionPolicy;
+    }
+
+    public void setSharedSubscriptionPolicy(SharedSubscriptionPolicy sharedSubscriptionPolicy) {
+        this.sharedSubscriptionPolicy = sharedSubscriptionPolicy;
+    }
+
+    public int getSessionInFlightWindow() {
+        return sessionInFlightWindow;
+    }
+
+    public void setSessionInFlightWindow(int sessionInFlightWindow) {
+        this.sessionInFlightWindow = sessionInFlightWindow;
+    }
+
+    public int getSessionPendingQueueSize() {
+        return sessionPendingQueueSize;
+    }
+
+    public void setSessionPendingQueueSize(int sessionPendingQueueSize) {
+        this.sessionPendingQueueSize = sessionPendingQueueSize;
+    }
+
+    public OverflowPolicy getSessionOverflowPolicy() {
+        return sessionOverflowPolicy;
+    }
+
+    public void setSessionOverflowPolicy(OverflowPolicy sessionOverflowPolicy) {
+        this.sessionOverflowPolicy = sessionOverflowPolicy;
+    }
+
+    public int getSessionReplayPageSize() {
+        return sessionReplayPageSize;
+    }
+
+    public void setSessionReplayPageSize(int sessionReplayPageSize) {
+        this.sessionReplayPageSize = sessionReplayPageSize;
+    }
+
+    public int getMessageTtl() {
+        return messageTtl;
+    }
+
+    public void setMessageTtl(int messageTtl) {
+        this.messageTtl = messageTtl;
+    }
+
+    public int getStripeCount() {
+        return stripeCount;
+    }
+
+    public void setStripeCount(int stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+
+    public int getStripeQueueSize() {
+        return stripeQueueSize;
+    }
+
+    public void setStripeQueueSize(int stripeQueueSize) {
+        this.stripeQueueSize = stripeQueueSize;
+    }
+
+    /**
+     * Executes the work of each session in order on one stripe.
+     *
+     * @return the striped executor of this worker.
+     */
+    public StripedExecutor getStripedExecutor() {
+        return stripedExecutor;
+    }
+
+    public void setStripedExecutor(StripedExecutor stripedExecutor) {
+        this.stripedExecutor = stripedExecutor;
+    }
+
+    /**
+     * Releases the deliveries of each publisher's messages in publish order.
+     *
+     * @return the ordered delivery of this worker.
+     */
+    public OrderedDelivery getOrderedDelivery() {
+        return orderedDelivery;
+    }
+
+    public void setOrderedDelivery(OrderedDelivery orderedDelivery) {
+        this.orderedDelivery = orderedDelivery;
+    }
+
+    /**
+     * <code>getStripeKey</code> obtains the key ordering the work done for a message.
+     * Messages received before a session is established are ordered by their connection.
+     *
+     * @param iotMessage
+     * @return the session id or the connection id when the session is not yet known.
+     */
+    public String getStripeKey(IOTMessage iotMessage) {
+        return Objects.isNull(iotMessage.getSessionId()) ? iotMessage.getConnectionId() : iotMessage.getSessionId();
+    }
+
+    public int getAuthorizationCacheSize() {
+        return authorizationCacheSize;
+    }
+
+    public void setAuthorizationCacheSize(int authorizationCacheSize) {
+        this.authorizationCacheSize = authorizationCacheSize;
+    }
+
+    /**
+     * Holds the permissions and recent authorization decisions of every active session.
+     *
+     * @return the authorization cache of this worker.
+     */
+    public AuthorizationCache getAuthorizationCache() {
+        return authorizationCache;
+    }
+
+    public void setAuthorizationCache(AuthorizationCache authorizationCache) {
+        this.authorizationCache = authorizationCache;
+    }
+
+    public Map<String, Integer> getPartitionMessageTtls() {
+        return partitionMessageTtls;
+    }
+
+    public void setPartitionMessageTtls(Map<String, Integer> partitionMessageTtls) {
+        this.partitionMessageTtls = partitionMessageTtls;
+    }
+
+    /**
+     * @param partitionId
+     * @return the seconds messages published in the partition are kept for, 0 if they do not expire.
+     */
+    public int getMessageTtl(String partitionId) {
+        return getPartitionMessageTtls().getOrDefault(partitionId, getMessageTtl());
+    }
+
+    /**
+     * <code>readPartitionMessageTtls</code> obtains the message ttls configured
+     * for individual partitions as <code>core.config.worker.message.ttl.partition.{partition}</code>.
+     *
+     * @param configuration
+     * @return the ttl in seconds of every partition overriding the default.
+     */
+    protected Map<String, Integer> readPartitionMessageTtls(Configuration configuration) {
+
+        Map<String, Integer> messageTtls = new HashMap<>();
+
+        Configuration partitionConfiguration = configuration.subset(CORE_CONFIG_WORKER_MESSAGE_TTL_PARTITION_PREFIX);
+        Iterator<String> partitionIds = partitionConfiguration.getKeys();
+        while (partitionIds.hasNext()) {
+            String partitionId = partitionIds.next();
+            messageTtls.put(partitionId, partitionConfiguration.getInt(partitionId));
+        }
+
+        return messageTtls;
+    }
+
+    /**
+     * @return true if the number of unacknowledged messages sent to a session is capped.
+     */
+    public boolean isSessionInFlightWindowEnabled() {
+        return getSessionInFlightWindow() > 0;
+    }
+
+    /**
+     * <code>createSharedSubscriptionPolicy</code> obtains the policy for choosing the
+     * member of a share group to deliver to. Besides the bundled policy names
+     * the fully qualified name of any other implementation can be configured.
+     *
+     * @param policyName
+     * @return the shared subscription policy
+     * @throws UnRetriableException
+     */
+    protected SharedSubscriptionPolicy createSharedSubscriptionPolicy(String policyName) throws UnRetriableException {
+
+        switch (policyName) {
+            case RoundRobinSharedSubscriptionPolicy.NAME:
+                return new RoundRobinSharedSubscriptionPolicy();
+            case LeastInFlightSharedSubscriptionPolicy.NAME:
+                return new LeastInFlightSharedSubscriptionPolicy();
+            case StickySharedSubscriptionPolicy.NAME:
+                return new StickySharedSubscriptionPolicy();
+            default:
+                try {
+                    return (SharedSubscriptionPolicy) Class.forName(policyName).newInstance();
+                } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+                    throw new UnRetriableException(" Unable to load the shared subscription policy " + policyName, e);
+                }
+        }
+    }
+
 
     public <T extends RequestHandler> T getHandler(Class<T> t){
         return (T) handlers.get(t);
@@ -222,32 +507,35 @@ public abstract class Worker extends IOTBaseHandler implements SessionListener{
 
         //Publish will before handling other
 
-        Observable<PublishMessage> willMessageObservable = getDatastore().getWill(iotClient);
-
-        willMessageObservable.subscribe(
-                willMessage -> {
-
+        Observable<PublishMessage> willMessageObservable = getDatastore().getWill(iotClient)
+                .flatMap(willMessage -> {
 
                     log.debug(" publishWill : -----------------------------------------------------");
                     log.debug(" publishWill : -------  We have a will {} -------", willMessage);
                     log.debug(" publishWill : -----------------------------------------------------");
 
-                   willMessage = iotClient.copyTransmissionData(willMessage);
+                    PublishMessage clientWillMessage = iotClient.copyTransmissionData(willMessage);
 
-                    try {
+                    if (clientWillMessage.getQos() == 0) {
+                        return Observable.just(clientWillMessage);
+                    }
+
+                    clientWillMessage.setIsRelease(false);
+                    //Save the message as we proceed.
+                    clientWillMessage.setMessageId(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE);
+                    return getDatastore().saveMessage(clientWillMessage).map(messageIdentity -> {
+                        clientWillMessage.setMessageId(messageIdentity.getValue().getMessageId());
+                        return clientWillMessage;
+                    });
+                });
 
+        willMessageObservable.subscribe(
+                willMessage -> {
 
-                        if (willMessage.getQos() > 0) {
-                            willMessage.setIsRelease(false);
-                            //Save the message as we proceed.
-                            willMessage.setMessageId(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE);
-                            Map.Entry<Long, IotMessageKey> messageIdentity = getDatastore().saveMessage(willMessage).toBlocking().single();
-                            willMessage.setMessageId(messageIdentity.getValue().getMessageId());
-                        }
+                    try {
 
                         getMessenger().publish(iotClient.getPartitionId(), willMessage);
 
-
                     } catch (RetriableException e) {
                         log.error(" publishWill : experienced issues publishing will.", e);
                     }
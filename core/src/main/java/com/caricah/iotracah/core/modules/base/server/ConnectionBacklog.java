@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.modules.base.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>ConnectionBacklog</code> counts the messages a server has handed to the workers
+ * that are not yet processed, for every connection and for the server as a whole.
+ *
+ * A connection stops being read once its own backlog reaches the connection high water mark,
+ * or while the server is overloaded and the connection holds at least its fair share
+ * of the backlog. Paused connections are read again once their backlog is down
+ * to the connection low water mark and the server is no longer overloaded.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class ConnectionBacklog {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionBacklog.class);
+
+    private final int connectionHighWaterMark;
+
+    private final int connectionLowWaterMark;
+
+    private final int globalHighWaterMark;
+
+    private final int globalLowWaterMark;
+
+    private final Listener listener;
+
+    private final ConcurrentMap<String, Integer> outstandingMessages = new ConcurrentHashMap<>();
+
+    private final Set<String> pausedConnections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger totalOutstanding = new AtomicInteger();
+
+    private final AtomicBoolean overloaded = new AtomicBoolean();
+
+    public ConnectionBacklog(int connectionHighWaterMark, int connectionLowWaterMark,
+                             int globalHighWaterMark, int globalLowWaterMark, Listener listener) {
+        this.connectionHighWaterMark = connectionHighWaterMark;
+        this.connectionLowWaterMark = connectionLowWaterMark;
+        this.globalHighWaterMark = globalHighWaterMark;
+        this.globalLowWaterMark = globalLowWaterMark;
+        this.listener = listener;
+    }
+
+    /**
+     * <code>onReceived</code> counts a message handed to the workers.
+     *
+     * @param connectionId
+     */
+    public void onReceived(String connectionId) {
+
+        int outstanding = outstandingMessages.merge(connectionId, 1, Integer::sum);
+        int total = totalOutstanding.incrementAndGet();
+
+        if (total >= globalHighWaterMark && overloaded.compareAndSet(false, true)) {
+            log.warn(" onReceived : {} messages are waiting for the workers, pausing the busiest connections", total);
+        }
+
+        if (pausedConnections.contains(connectionId)) {
+            return;
+        }
+
+        boolean isBusiest = overloaded.get() && (long) outstanding * outstandingMessages.size() >= total;
+
+        if (outstanding >= connectionHighWaterMark || isBusiest) {
+            pause(connectionId);
+        }
+    }
+
+    /**
+     * <code>onProcessed</code> is notified once the workers are done with a message.
+     *
+     * @param connectionId
+     */
+    public void onProcessed(String connectionId) {
+
+        Integer outstanding = outstandingMessages.computeIfPresent(connectionId, (key, count) -> count > 1 ? count - 1 : null);
+        int total = totalOutstanding.decrementAndGet();
+
+        if (total <= globalLowWaterMark && overloaded.compareAndSet(true, false)) {
+
+            log.info(" onProcessed : backlog is down to {} messages, resuming paused connections", total);
+
+            //Connections paused only for their share of the backlog get no more
+            // notifications once they are drained so they are all looked at here.
+            pausedConnections.forEach(pausedConnectionId -> {
+                if (getOutstanding(pausedConnectionId) <= connectionLowWaterMark) {
+                    resume(pausedConnectionId);
+                }
+            });
+
+        } else if (!overloaded.get() && (null == outstanding || outstanding <= connectionLowWaterMark)
+                && pausedConnections.contains(connectionId)) {
+            resume(connectionId);
+        }
+    }
+
+    /**
+     * <code>onClosed</code> forgets a connection that will not be read anymore.
+     *
+     * @param connectionId
+     */
+    public void onClosed(String connectionId) {
+        pausedConnections.remove(connectionId);
+    }
+
+    public int getOutstanding(String connectionId) {
+        return outstandingMessages.getOrDefault(connectionId, 0);
+    }
+
+    public int getTotalOutstanding() {
+        return totalOutstanding.get();
+    }
+
+    public int getPausedConnectionCount() {
+        return pausedConnections.size();
+    }
+
+    public boolean isOverloaded() {
+        return overloaded.get();
+    }
+
+    private synchronized void pause(String connectionId) {
+
+        if (pausedConnections.add(connectionId)) {
+            log.debug(" pause : connection {} has {} messages waiting, reading is paused", connectionId, getOutstanding(connectionId));
+            listener.pauseReading(connectionId);
+        }
+    }
+
+    private synchronized void resume(String connectionId) {
+
+        if (pausedConnections.remove(connectionId)) {
+            log.debug(" resume : connection {} has drained, reading is resumed", connectionId);
+            listener.resumeReading(connectionId);
+        }
+    }
+
+    /**
+     * <code>Listener</code> starts and stops reading from a connection.
+     */
+    public interface Listener {
+
+        void pauseReading(String connectionId);
+
+        void resumeReading(String connectionId);
+    }
+}
@@ -20,6 +20,7 @@
 
 package com.caricah.iotracah.core.modules.base.server;
 
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import org.apache.ignite.IgniteMessaging;
 import org.apache.ignite.lang.IgniteBiPredicate;
@@ -85,6 +86,18 @@ public class DefaultServerRouter implements ServerRouter, IgniteBiPredicate<UUID
 
 
         log.debug(" route : routing the message to {} in cluster {}", nodeId, cluster );
+
+        if (getCluster().equals(cluster) && getNodeId().equals(nodeId)) {
+
+            //Servers on this node get the message as is.
+            apply(nodeId, message);
+            return;
+        }
+
+        if (message instanceof PublishMessage) {
+            ((PublishMessage) message).detachPayloadBuffer();
+        }
+
         getMessaging().send(getNodeTopic(cluster, nodeId), message );
     }
 
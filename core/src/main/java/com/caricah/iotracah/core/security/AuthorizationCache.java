@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.security;
+
+import com.caricah.iotracah.bootstrap.security.realm.IOTSecurityDatastore;
+import com.caricah.iotracah.bootstrap.security.realm.auth.permission.IOTPermission;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTAccount;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTRole;
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>AuthorizationCache</code> keeps the permissions granted to every active session
+ * resolved from its account and roles, together with the most recent decisions
+ * made for each action and topic. Once a session has published or subscribed to a
+ * topic, later checks for it only cost a map lookup.
+ *
+ * Any account or role change in the cluster makes the permissions of all sessions
+ * stale and they are resolved again on their next check.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class AuthorizationCache implements SecurityChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorizationCache.class);
+
+    private final IOTSecurityDatastore securityDatastore;
+
+    private final int decisionCacheSize;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ConcurrentMap<String, SessionAuthorization> sessionAuthorizations = new ConcurrentHashMap<>();
+
+    public AuthorizationCache(IOTSecurityDatastore securityDatastore, int decisionCacheSize) {
+        this.securityDatastore = securityDatastore;
+        this.decisionCacheSize = decisionCacheSize;
+    }
+
+    public int getDecisionCacheSize() {
+        return decisionCacheSize;
+    }
+
+    public int getSessionCount() {
+        return sessionAuthorizations.size();
+    }
+
+    /**
+     * <code>checkPermissions</code> asserts that a session may perform an action on every topic supplied.
+     *
+     * @param session
+     * @param role      the action being performed
+     * @param topicList
+     * @throws AuthorizationException if any of the topics is not permitted
+     */
+    public void checkPermissions(IOTClient session, AuthorityRole role, List<String> topicList) throws AuthorizationException {
+
+        SessionAuthorization sessionAuthorization = getSessionAuthorization(session);
+
+        for (String topic : topicList) {
+            if (!sessionAuthorization.isPermitted(role, topic)) {
+                throw new UnauthorizedException("Client [" + session.getClientIdentification() + "] is not permitted to " + role + " on [" + topic + "]");
+            }
+        }
+    }
+
+    public boolean isPermitted(IOTClient session, AuthorityRole role, String topic) {
+        return getSessionAuthorization(session).isPermitted(role, topic);
+    }
+
+    /**
+     * <code>invalidate</code> drops everything kept for a session once it ends.
+     *
+     * @param sessionId
+     */
+    public void invalidate(String sessionId) {
+        if (Objects.nonNull(sessionId)) {
+            sessionAuthorizations.remove(sessionId);
+        }
+    }
+
+    @Override
+    public void onAccountChanged(String partitionId, String username) {
+        log.debug(" onAccountChanged : account {} in partition {} changed", username, partitionId);
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void onRoleChanged(String partitionId, String roleName) {
+        log.debug(" onRoleChanged : role {} in partition {} changed", roleName, partitionId);
+        generation.incrementAndGet();
+    }
+
+    private SessionAuthorization getSessionAuthorization(IOTClient session) {
+
+        //Read before resolving so a change made meanwhile leaves the result stale.
+        long currentGeneration = generation.get();
+
+        SessionAuthorization sessionAuthorization = sessionAuthorizations.get(session.getSessionId());
+
+        if (Objects.isNull(sessionAuthorization) || !sessionAuthorization.isCurrent(session, currentGeneration)) {
+
+            sessionAuthorization = new SessionAuthorization(session, currentGeneration, resolvePermissions(session), decisionCacheSize);
+            sessionAuthorizations.put(session.getSessionId(), sessionAuthorization);
+        }
+
+        return sessionAuthorization;
+    }
+
+    /**
+     * <code>resolvePermissions</code> collects the permissions of every role held by the account of a session.
+     *
+     * @param session
+     * @return the permissions granted, empty if the account does not exist.
+     */
+    private List<Permission> resolvePermissions(IOTClient session) {
+
+        List<Permission> permissions = new ArrayList<>();
+
+        IOTAccount account = securityDatastore.getIOTAccount(session.getPartitionId(), session.getUsername());
+
+        if (Objects.isNull(account)) {
+            log.debug(" resolvePermissions : no account found for {}", session.getUsername());
+            return permissions;
+        }
+
+        for (String roleName : account.getRoles()) {
+
+            IOTRole iotRole = securityDatastore.getIOTRole(session.getPartitionId(), roleName);
+            if (Objects.nonNull(iotRole)) {
+                permissions.addAll(iotRole.getPermissions());
+            }
+        }
+
+        return permissions;
+    }
+
+    private static final class SessionAuthorization {
+
+        private final String partitionId;
+
+        private final String username;
+
+        private final String clientId;
+
+        private final long generation;
+
+        private final List<Permission> permissions;
+
+        private final Map<AuthorityRole, Map<String, Boolean>> decisions = new EnumMap<>(AuthorityRole.class);
+
+        private SessionAuthorization(IOTClient session, long generation, List<Permission> permissions, int decisionCacheSize) {
+
+            this.partitionId = session.getPartitionId();
+            this.username = session.getUsername();
+            this.clientId = session.getClientIdentification();
+            this.generation = generation;
+            this.permissions = permissions;
+
+            for (AuthorityRole role : AuthorityRole.values()) {
+                decisions.put(role, new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > decisionCacheSize;
+                    }
+                });
+            }
+        }
+
+        private boolean isCurrent(IOTClient session, long currentGeneration) {
+            return generation == currentGeneration
+                    && Objects.equals(partitionId, session.getPartitionId())
+                    && Objects.equals(username, session.getUsername())
+                    && Objects.equals(clientId, session.getClientIdentification());
+        }
+
+        private boolean isPermitted(AuthorityRole role, String topic) {
+
+            Map<String, Boolean> roleDecisions = decisions.get(role);
+
+            //Lookups reorder the entries so they are guarded too.
+            synchronized (roleDecisions) {
+                Boolean decision = roleDecisions.get(topic);
+                if (Objects.nonNull(decision)) {
+                    return decision;
+                }
+            }
+
+            IOTPermission requestedPermission = new IOTPermission(partitionId, username, clientId, role.name() + ":" + topic);
+
+            boolean permitted = false;
+            for (Permission permission : permissions) {
+                if (permission.implies(requestedPermission)) {
+                    permitted = true;
+                    break;
+                }
+            }
+
+            synchronized (roleDecisions) {
+                roleDecisions.put(topic, permitted);
+            }
+
+            return permitted;
+        }
+    }
+}
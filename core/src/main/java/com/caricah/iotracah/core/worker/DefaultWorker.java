@@ -28,8 +28,10 @@ import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.handlers.*;
 import com.caricah.iotracah.core.modules.Worker;
+import com.caricah.iotracah.core.security.AuthorizationCache;
 import com.caricah.iotracah.core.security.DefaultSecurityHandler;
 import com.caricah.iotracah.core.worker.exceptions.ShutdownException;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
 import com.caricah.iotracah.core.worker.state.SessionResetManager;
 import com.mashape.unirest.http.Unirest;
 import org.apache.commons.configuration.Configuration;
@@ -78,6 +80,80 @@ public class DefaultWorker extends Worker {
         setKeepAliveInSeconds(keepaliveInSeconds);
 
 
+        int retainedDeliveryRatePerSecond = configuration.getInt(CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND, CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND_DEFAULT_VALUE);
+        log.debug(" configure : Retained messages are delivered at a rate of [{}] per second", retainedDeliveryRatePerSecond);
+        setRetainedDeliveryRatePerSecond(retainedDeliveryRatePerSecond);
+
+
+        int retainedDeliveryBatchSize = configuration.getInt(CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE, CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Retained messages are delivered in batches of [{}]", retainedDeliveryBatchSize);
+        setRetainedDeliveryBatchSize(retainedDeliveryBatchSize);
+
+
+        String sharedSubscriptionPolicy = configuration.getString(CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY, CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY_DEFAULT_VALUE);
+        log.debug(" configure : Shared subscriptions are delivered using the policy [{}]", sharedSubscriptionPolicy);
+        setSharedSubscriptionPolicy(createSharedSubscriptionPolicy(sharedSubscriptionPolicy));
+
+
+        int sessionInFlightWindow = configuration.getInt(CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW, CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW_DEFAULT_VALUE);
+        log.debug(" configure : Sessions can have up to [{}] unacknowledged messages", sessionInFlightWindow);
+        setSessionInFlightWindow(sessionInFlightWindow);
+
+
+        int sessionPendingQueueSize = configuration.getInt(CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE, CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Sessions can queue up to [{}] messages beyond their window", sessionPendingQueueSize);
+        setSessionPendingQueueSize(sessionPendingQueueSize);
+
+        //Every message in the window or the queue holds one of the session's message ids.
+        if ((long) sessionInFlightWindow + sessionPendingQueueSize > PublishMessage.MAXIMUM_MESSAGE_ID) {
+            throw new UnRetriableException(" The session in flight window and pending queue size together can not exceed " + PublishMessage.MAXIMUM_MESSAGE_ID);
+        }
+
+
+        String sessionOverflowPolicy = configuration.getString(CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY, CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY_DEFAULT_VALUE);
+        log.debug(" configure : Sessions with a full queue handle new messages using the policy [{}]", sessionOverflowPolicy);
+        try {
+            setSessionOverflowPolicy(OverflowPolicy.fromString(sessionOverflowPolicy));
+        } catch (IllegalArgumentException e) {
+            throw new UnRetriableException(" Unknown session overflow policy " + sessionOverflowPolicy, e);
+        }
+
+
+        int sessionReplayPageSize = configuration.getInt(CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE, CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Stored messages are replayed to returning sessions in pages of [{}]", sessionReplayPageSize);
+        if (sessionReplayPageSize < 1) {
+            throw new UnRetriableException(" The session replay page size has to be at least 1");
+        }
+        setSessionReplayPageSize(sessionReplayPageSize);
+
+        int messageTtl = configuration.getInt(CORE_CONFIG_WORKER_MESSAGE_TTL, CORE_CONFIG_WORKER_MESSAGE_TTL_DEFAULT_VALUE);
+        log.debug(" configure : Messages expire after [{}] seconds unless their partition overrides it", messageTtl);
+        setMessageTtl(messageTtl);
+        setPartitionMessageTtls(readPartitionMessageTtls(configuration));
+
+
+        int stripeCount = configuration.getInt(CORE_CONFIG_WORKER_STRIPE_COUNT, CORE_CONFIG_WORKER_STRIPE_COUNT_DEFAULT_VALUE);
+        log.debug(" configure : Messages are processed in order per session on [{}] stripes", stripeCount);
+        if (stripeCount < 1) {
+            throw new UnRetriableException(" The worker stripe count has to be at least 1");
+        }
+        setStripeCount(stripeCount);
+
+        int stripeQueueSize = configuration.getInt(CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE, CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Each stripe queues up to [{}] messages", stripeQueueSize);
+        if (stripeQueueSize < 1) {
+            throw new UnRetriableException(" The worker stripe queue size has to be at least 1");
+        }
+        setStripeQueueSize(stripeQueueSize);
+
+        int authorizationCacheSize = configuration.getInt(CORE_CONFIG_WORKER_AUTHORIZATION_CACHE_SIZE, CORE_CONFIG_WORKER_AUTHORIZATION_CACHE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Each session remembers [{}] authorization decisions per action", authorizationCacheSize);
+        if (authorizationCacheSize < 1) {
+            throw new UnRetriableException(" The worker authorization cache size has to be at least 1");
+        }
+        setAuthorizationCacheSize(authorizationCacheSize);
+
+
         String defaultPartitionName = configuration.getString(DefaultSecurityHandler.CONFIG_SYSTEM_SECURITY_DEFAULT_PARTITION_NAME, DefaultSecurityHandler.CONFIG_SYSTEM_SECURITY_DEFAULT_PARTITION_NAME_VALUE_DEFAULT);
         setDefaultPartitionName(defaultPartitionName);
 
@@ -92,6 +168,11 @@ public class DefaultWorker extends Worker {
     @Override
     public void initiate() throws UnRetriableException {
 
+        setStripedExecutor(new StripedExecutor(getClass().getSimpleName(), getStripeCount(), getStripeQueueSize()));
+        setOrderedDelivery(new OrderedDelivery(getStripedExecutor()));
+
+        setAuthorizationCache(new AuthorizationCache(getDatastore(), getAuthorizationCacheSize()));
+        getDatastore().addSecurityChangeListener(getAuthorizationCache());
 
         addHandler(new ConnectionHandler());
         addHandler(new DisconnectHandler());
@@ -124,6 +205,15 @@ public class DefaultWorker extends Worker {
      */
     @Override
     public void terminate() {
+
+        if (null != getStripedExecutor()) {
+            getStripedExecutor().shutdown();
+        }
+
+        if (null != getAuthorizationCache()) {
+            getDatastore().removeSecurityChangeListener(getAuthorizationCache());
+        }
+
         //Shutdown unirest.
         try {
             Unirest.shutdown();
@@ -145,6 +235,8 @@ public class DefaultWorker extends Worker {
     @Override
     public void onNext(IOTMessage iotMessage) {
 
+        //Messages of a session are handled in the order they were received.
+        getStripedExecutor().execute(getStripeKey(iotMessage), () -> {
 
             log.debug(" onNext : received {}", iotMessage);
 
@@ -171,9 +263,12 @@ public class DefaultWorker extends Worker {
 
             } catch (Exception e) {
                 log.error(" onNext : Serious error that requires attention ", e);
+            } finally {
+                //Lets the server read more from this client.
+                iotMessage.markProcessed();
             }
 
-
+        });
     }
 
     private void handleReceivedMessage(IOTMessage iotMessage) throws UnRetriableException, RetriableException {
@@ -28,6 +28,7 @@ import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.modules.Worker;
 import com.caricah.iotracah.core.worker.exceptions.ShutdownException;
 import com.caricah.iotracah.core.worker.state.Constant;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
 import com.caricah.iotracah.core.worker.state.SessionResetManager;
 import com.mashape.unirest.http.Unirest;
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
@@ -90,6 +91,73 @@ public class DumbWorker extends Worker {
         log.debug(" configure : Keep alive maximum is configured to be [{}]", keepaliveInSeconds);
         setKeepAliveInSeconds(keepaliveInSeconds);
 
+
+        int retainedDeliveryRatePerSecond = configuration.getInt(CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND, CORE_CONFIG_WORKER_RETAINED_DELIVERY_RATE_PER_SECOND_DEFAULT_VALUE);
+        log.debug(" configure : Retained messages are delivered at a rate of [{}] per second", retainedDeliveryRatePerSecond);
+        setRetainedDeliveryRatePerSecond(retainedDeliveryRatePerSecond);
+
+
+        int retainedDeliveryBatchSize = configuration.getInt(CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE, CORE_CONFIG_WORKER_RETAINED_DELIVERY_BATCH_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Retained messages are delivered in batches of [{}]", retainedDeliveryBatchSize);
+        setRetainedDeliveryBatchSize(retainedDeliveryBatchSize);
+
+
+        String sharedSubscriptionPolicy = configuration.getString(CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY, CORE_CONFIG_WORKER_SHARED_SUBSCRIPTION_POLICY_DEFAULT_VALUE);
+        log.debug(" configure : Shared subscriptions are delivered using the policy [{}]", sharedSubscriptionPolicy);
+        setSharedSubscriptionPolicy(createSharedSubscriptionPolicy(sharedSubscriptionPolicy));
+
+
+        int sessionInFlightWindow = configuration.getInt(CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW, CORE_CONFIG_WORKER_SESSION_IN_FLIGHT_WINDOW_DEFAULT_VALUE);
+        log.debug(" configure : Sessions can have up to [{}] unacknowledged messages", sessionInFlightWindow);
+        setSessionInFlightWindow(sessionInFlightWindow);
+
+
+        int sessionPendingQueueSize = configuration.getInt(CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE, CORE_CONFIG_WORKER_SESSION_PENDING_QUEUE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Sessions can queue up to [{}] messages beyond their window", sessionPendingQueueSize);
+        setSessionPendingQueueSize(sessionPendingQueueSize);
+
+        //Every message in the window or the queue holds one of the session's message ids.
+        if ((long) sessionInFlightWindow + sessionPendingQueueSize > PublishMessage.MAXIMUM_MESSAGE_ID) {
+            throw new UnRetriableException(" The session in flight window and pending queue size together can not exceed " + PublishMessage.MAXIMUM_MESSAGE_ID);
+        }
+
+
+        String sessionOverflowPolicy = configuration.getString(CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY, CORE_CONFIG_WORKER_SESSION_OVERFLOW_POLICY_DEFAULT_VALUE);
+        log.debug(" configure : Sessions with a full queue handle new messages using the policy [{}]", sessionOverflowPolicy);
+        try {
+            setSessionOverflowPolicy(OverflowPolicy.fromString(sessionOverflowPolicy));
+        } catch (IllegalArgumentException e) {
+            throw new UnRetriableException(" Unknown session overflow policy " + sessionOverflowPolicy, e);
+        }
+
+
+        int sessionReplayPageSize = configuration.getInt(CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE, CORE_CONFIG_WORKER_SESSION_REPLAY_PAGE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Stored messages are replayed to returning sessions in pages of [{}]", sessionReplayPageSize);
+        if (sessionReplayPageSize < 1) {
+            throw new UnRetriableException(" The session replay page size has to be at least 1");
+        }
+        setSessionReplayPageSize(sessionReplayPageSize);
+
+        int messageTtl = configuration.getInt(CORE_CONFIG_WORKER_MESSAGE_TTL, CORE_CONFIG_WORKER_MESSAGE_TTL_DEFAULT_VALUE);
+        log.debug(" configure : Messages expire after [{}] seconds unless their partition overrides it", messageTtl);
+        setMessageTtl(messageTtl);
+        setPartitionMessageTtls(readPartitionMessageTtls(configuration));
+
+
+        int stripeCount = configuration.getInt(CORE_CONFIG_WORKER_STRIPE_COUNT, CORE_CONFIG_WORKER_STRIPE_COUNT_DEFAULT_VALUE);
+        log.debug(" configure : Messages are processed in order per session on [{}] stripes", stripeCount);
+        if (stripeCount < 1) {
+            throw new UnRetriableException(" The worker stripe count has to be at least 1");
+        }
+        setStripeCount(stripeCount);
+
+        int stripeQueueSize = configuration.getInt(CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE, CORE_CONFIG_WORKER_STRIPE_QUEUE_SIZE_DEFAULT_VALUE);
+        log.debug(" configure : Each stripe queues up to [{}] messages", stripeQueueSize);
+        if (stripeQueueSize < 1) {
+            throw new UnRetriableException(" The worker stripe queue size has to be at least 1");
+        }
+        setStripeQueueSize(stripeQueueSize);
+
     }
 
     /**
@@ -101,6 +169,8 @@ public class DumbWorker extends Worker {
     @Override
     public void initiate() throws UnRetriableException {
 
+        setStripedExecutor(new StripedExecutor(getClass().getSimpleName(), getStripeCount(), getStripeQueueSize()));
+        setOrderedDelivery(new OrderedDelivery(getStripedExecutor()));
         //Initiate the session reset manager.
         SessionResetManager sessionResetManager = new SessionResetManager();
         sessionResetManager.setWorker(this);
@@ -138,6 +208,11 @@ public class DumbWorker extends Worker {
      */
     @Override
     public void terminate() {
+
+        if (null != getStripedExecutor()) {
+            getStripedExecutor().shutdown();
+        }
+
         //Shutdown unirest.
         try {
             Unirest.shutdown();
@@ -161,7 +236,7 @@ public class DumbWorker extends Worker {
 
 
 
-        getExecutorService().submit(()->{
+        getStripedExecutor().execute(getStripeKey(iotMessage), ()->{
         log.info(" onNext : received {}", iotMessage);
         try {
 
@@ -281,6 +356,8 @@ public class DumbWorker extends Worker {
 
         } catch (Exception e) {
             log.error(" onNext : Serious error that requires attention ", e);
+        } finally {
+            iotMessage.markProcessed();
         }
 
         });
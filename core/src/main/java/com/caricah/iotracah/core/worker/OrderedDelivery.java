@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>OrderedDelivery</code> runs the deliveries of a publisher's messages on the
+ * publisher's stripe in the order the messages were published, even when the
+ * datastore completes the work for a later message first.
+ *
+ * A ticket is opened for each message in publish order, collects the deliveries
+ * of the message as they become ready and is completed once all of them are known.
+ * The deliveries of a ticket only run after those of every earlier ticket.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class OrderedDelivery {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderedDelivery.class);
+
+    private final StripedExecutor stripedExecutor;
+
+    private final ConcurrentMap<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    public OrderedDelivery(StripedExecutor stripedExecutor) {
+        this.stripedExecutor = stripedExecutor;
+    }
+
+    /**
+     * <code>open</code> has to be called in publish order, on the publisher's stripe.
+     *
+     * @param key the stripe key of the publisher
+     * @return the ticket collecting the deliveries of the message
+     */
+    public Ticket open(String key) {
+
+        Ticket[] openedTicket = new Ticket[1];
+
+        sequences.compute(key, (sequenceKey, sequence) -> {
+            Sequence updatedSequence = Objects.isNull(sequence) ? new Sequence() : sequence;
+            openedTicket[0] = new Ticket(key, updatedSequence.nextTicket++);
+            return updatedSequence;
+        });
+
+        return openedTicket[0];
+    }
+
+    /**
+     * <code>complete</code> marks a ticket as having all its deliveries.
+     * They run on the publisher's stripe once every earlier ticket has run.
+     *
+     * @param ticket
+     */
+    public void complete(Ticket ticket) {
+
+        sequences.computeIfPresent(ticket.key, (sequenceKey, sequence) -> {
+            sequence.completedTickets.put(ticket.number, ticket);
+            return sequence;
+        });
+
+        stripedExecutor.execute(ticket.key, () -> release(ticket.key));
+    }
+
+    /**
+     * Runs on the stripe of the key, so releases of one key never overlap.
+     */
+    private void release(String key) {
+
+        List<Ticket> releasedTickets = new ArrayList<>();
+
+        sequences.computeIfPresent(key, (sequenceKey, sequence) -> {
+
+            Ticket ticket;
+            while (Objects.nonNull(ticket = sequence.completedTickets.remove(sequence.nextRelease))) {
+                releasedTickets.add(ticket);
+                sequence.nextRelease++;
+            }
+
+            //Publishers with nothing outstanding do not keep a sequence around.
+            return sequence.nextRelease == sequence.nextTicket ? null : sequence;
+        });
+
+        for (Ticket ticket : releasedTickets) {
+            for (Runnable delivery : ticket.getDeliveries()) {
+                try {
+                    delivery.run();
+                } catch (Exception e) {
+                    log.error(" release : problems running delivery", e);
+                }
+            }
+        }
+    }
+
+    private static final class Sequence {
+
+        private long nextTicket;
+
+        private long nextRelease;
+
+        private final Map<Long, Ticket> completedTickets = new HashMap<>();
+    }
+
+    public static final class Ticket {
+
+        private final String key;
+
+        private final long number;
+
+        private final List<Runnable> deliveries = new ArrayList<>();
+
+        private Ticket(String key, long number) {
+            this.key = key;
+            this.number = number;
+        }
+
+        public synchronized void add(Runnable delivery) {
+            deliveries.add(delivery);
+        }
+
+        private synchronized List<Runnable> getDeliveries() {
+            return new ArrayList<>(deliveries);
+        }
+    }
+}
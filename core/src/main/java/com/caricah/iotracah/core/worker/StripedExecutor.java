@@ -0,0 +1,155 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker;
+
+import com.caricah.iotracah.core.init.LocalThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <code>StripedExecutor</code> runs tasks on a fixed number of single threaded stripes.
+ * Tasks submitted with the same key always run on the same stripe in the order
+ * they were submitted while different keys spread over all the stripes.
+ *
+ * The waiting tasks of a stripe are bounded. Once a stripe is full, threads outside
+ * the stripes wait for room while the stripe threads themselves never wait so
+ * stripes handing work to each other can not deadlock.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class StripedExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(StripedExecutor.class);
+
+    private final LocalThreadPool[] stripes;
+
+    private final Semaphore[] stripePermits;
+
+    /**
+     * @param name        used to name the stripe threads.
+     * @param stripeCount number of stripes, each with its own thread.
+     * @param queueSize   maximum number of tasks waiting on a stripe.
+     */
+    public StripedExecutor(String name, int stripeCount, int queueSize) {
+
+        stripes = new LocalThreadPool[stripeCount];
+        stripePermits = new Semaphore[stripeCount];
+
+        for (int index = 0; index < stripeCount; index++) {
+            stripes[index] = new LocalThreadPool(name + "-stripe-" + index, 1, 0);
+            stripePermits[index] = new Semaphore(queueSize);
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * <code>execute</code> queues the task on the stripe owning the key.
+     *
+     * @param key  identifies the tasks that have to run in order, a null key uses the first stripe.
+     * @param task
+     */
+    public void execute(String key, Runnable task) {
+
+        int index = getStripeIndex(key);
+
+        LocalThreadPool stripe = stripes[index];
+        Semaphore permits = stripePermits[index];
+
+        if (isStripeThread(Thread.currentThread())) {
+            stripe.execute(task);
+            return;
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn(" execute : interrupted while waiting for room on stripe {}", stripe.getName());
+            return;
+        }
+
+        stripe.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Stripe threads are known to their pools, so a thread replacing one that died is recognised too.
+     */
+    private boolean isStripeThread(Thread thread) {
+
+        for (LocalThreadPool stripe : stripes) {
+            if (stripe.isPoolThread(thread)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getStripeIndex(String key) {
+
+        if (Objects.isNull(key)) {
+            return 0;
+        }
+
+        //Spread the hash so keys differing in the high bits do not share a stripe.
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    /**
+     * @return the number of tasks waiting on the most loaded stripe.
+     */
+    public int getMaximumQueueDepth() {
+
+        int maximumQueueDepth = 0;
+        for (LocalThreadPool stripe : stripes) {
+            maximumQueueDepth = Math.max(maximumQueueDepth, stripe.getQueueDepth());
+        }
+        return maximumQueueDepth;
+    }
+
+    /**
+     * @return the stripes, for reading their individual queue depths.
+     */
+    public LocalThreadPool[] getStripes() {
+        return stripes.clone();
+    }
+
+    public void shutdown() {
+
+        for (LocalThreadPool stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+}
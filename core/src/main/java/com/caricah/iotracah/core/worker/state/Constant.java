@@ -29,4 +29,5 @@ public class Constant {
     public static final String PATH_SEPARATOR = "/";
     public static final String MULTI_LEVEL_WILDCARD = "#";
     public static final String SINGLE_LEVEL_WILDCARD = "+";
+    public static final String SHARED_SUBSCRIPTION_PREFIX = "$share";
 }
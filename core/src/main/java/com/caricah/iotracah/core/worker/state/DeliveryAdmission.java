@@ -0,0 +1,46 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+/**
+ * <code>DeliveryAdmission</code> is the place a saved outbound message
+ * is given in the delivery window of its session.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public enum DeliveryAdmission {
+
+    /**
+     * The message can be sent to the client straight away.
+     */
+    IN_FLIGHT,
+
+    /**
+     * The message waits in the pending queue until an in flight message is acknowledged.
+     */
+    PENDING,
+
+    /**
+     * The message was discarded as the session's pending queue is full.
+     */
+    REJECTED
+}
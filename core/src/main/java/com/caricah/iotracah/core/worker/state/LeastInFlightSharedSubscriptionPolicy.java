@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>LeastInFlightSharedSubscriptionPolicy</code> sends each message to the member
+ * of a share group with the fewest messages awaiting acknowledgement, so slow
+ * consumers receive less work.
+ *
+ * In flight messages are counted from the deliveries made by this node only.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class LeastInFlightSharedSubscriptionPolicy implements SharedSubscriptionPolicy {
+
+    public static final String NAME = "least_in_flight";
+
+    private final ConcurrentMap<String, Set<Long>> inFlightMessages = new ConcurrentHashMap<>();
+
+    @Override
+    public IOTClient select(String shareGroupKey, PublishMessage publishMessage, List<IOTClient> members) {
+
+        IOTClient selectedMember = null;
+        int selectedInFlight = Integer.MAX_VALUE;
+
+        for (IOTClient member : members) {
+
+            int inFlight = getInFlight(member);
+            if (inFlight < selectedInFlight) {
+                selectedMember = member;
+                selectedInFlight = inFlight;
+            }
+        }
+
+        return selectedMember;
+    }
+
+    @Override
+    public void onDelivered(IOTClient member, PublishMessage publishMessage) {
+
+        inFlightMessages.compute(member.getSessionId(), (sessionId, messageIds) -> {
+            Set<Long> updatedMessageIds = Objects.isNull(messageIds) ? ConcurrentHashMap.newKeySet() : messageIds;
+            updatedMessageIds.add((long) publishMessage.getMessageId());
+            return updatedMessageIds;
+        });
+    }
+
+    @Override
+    public void onAcknowledged(IOTClient client, long messageId) {
+
+        inFlightMessages.computeIfPresent(client.getSessionId(), (sessionId, messageIds) -> {
+            messageIds.remove(messageId);
+            return messageIds.isEmpty() ? null : messageIds;
+        });
+    }
+
+    private int getInFlight(IOTClient member) {
+
+        Set<Long> messageIds = inFlightMessages.get(member.getSessionId());
+        return Objects.isNull(messageIds) ? 0 : messageIds.size();
+    }
+}
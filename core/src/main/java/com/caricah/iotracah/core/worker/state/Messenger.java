@@ -21,25 +21,41 @@
 package com.caricah.iotracah.core.worker.state;
 
 
+import com.caricah.iotracah.bootstrap.data.messages.DisconnectMessage;
 import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
+import com.caricah.iotracah.bootstrap.data.messages.SharedFrame;
 import com.caricah.iotracah.bootstrap.data.models.client.IotClientKey;
-import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
 import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilter;
 import com.caricah.iotracah.bootstrap.data.models.subscriptions.IotSubscription;
 import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
+import com.caricah.iotracah.core.handlers.DisconnectHandler;
 import com.caricah.iotracah.core.handlers.PublishOutHandler;
 import com.caricah.iotracah.core.modules.Datastore;
 import com.caricah.iotracah.core.modules.Worker;
+import com.caricah.iotracah.core.worker.OrderedDelivery;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
-
+import rx.functions.Action0;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation class that handles subscribing, unsubscribing and publishing of messages
@@ -82,6 +98,20 @@ public class Messenger {
 
                 Map.Entry<String, Integer> topicFilterQos = listIterator.next();
 
+                String shareGroup = SharedSubscription.getShareGroup(topicFilterQos.getKey());
+
+                if (SharedSubscription.isShared(topicFilterQos.getKey()) && Objects.isNull(shareGroup)) {
+
+                    log.warn(" subscribe : invalid shared subscription filter {}", topicFilterQos.getKey());
+
+                    topicFilterQos.setValue(0x80);
+                    observer.onNext(topicFilterQos);
+
+                    if (!listIterator.hasNext()){
+                        observer.onCompleted();
+                    }
+                    continue;
+                }
 
                     /**
                      *
@@ -96,7 +126,7 @@ public class Messenger {
                     Observable<IotSubscriptionFilter> subscriptionFilterObservable
                             = getDatastore().getOrCreateSubscriptionFilter(
                             iotClient.getPartitionId(),
-                            topicFilterQos.getKey());
+                            SharedSubscription.getTopicFilter(topicFilterQos.getKey()));
 
                     subscriptionFilterObservable.subscribe(
                             subscriptionFilter -> {
@@ -115,8 +145,9 @@ public class Messenger {
 
                                             int qos = null == topicFilterQos.getValue() ? 0 : topicFilterQos.getValue();
 
-                                            if(qos > subscription.getQos()) {
+                                            if(qos > subscription.getQos() || !Objects.equals(shareGroup, iotSubscription.getShareGroup())) {
                                                 subscription.setQos(qos);
+                                                subscription.setShareGroup(shareGroup);
                                                 getDatastore().saveSubscription(subscription);
                                             }
 
@@ -171,86 +202,395 @@ public class Messenger {
         // and delete it from our db
         getDatastore().removeSubscription(subscription);
 
-        //TODO: Completely remove the subscriptionFilter if it has no subscribers.
-
+        //The datastore releases the subscription filter's reference which is then
+        // pruned in the background once it has no subscribers or retained messages.
 
     }
 
     public void publish(String partitionId, PublishMessage publishMessage) throws RetriableException {
 
-        getWorker().getExecutorService().submit(()->{
+        //Keep the messages of a publisher in the order they were sent.
+        String stripeKey = getWorker().getStripeKey(publishMessage);
+
+        getWorker().getStripedExecutor().execute(stripeKey, ()->{
            publishMessage.setPartitionId(partitionId);
-            publish(publishMessage);
+
+            //Deliveries follow the order of the tickets whatever order the datastore answers in.
+            OrderedDelivery.Ticket ticket = getWorker().getOrderedDelivery().open(stripeKey);
+            try {
+                publish(publishMessage, ticket);
+            } catch (RetriableException e) {
+                log.error(" publish : problems publishing message", e);
+                getWorker().getOrderedDelivery().complete(ticket);
+            }
         });
     }
 
-    private void publish(PublishMessage publishMessage) throws RetriableException {
+    /**
+     * <code>selectRecipients</code> obtains the sessions to deliver a message to for one subscription filter.
+     * Every session subscribed directly receives the message while each share group
+     * only has one of its members, preferably a connected one, chosen by the configured policy.
+     *
+     * @param subscriptionFilter
+     * @param publishMessage
+     * @param subscriptionList
+     * @param sessionList
+     * @param sharedRecipients collects the session ids of the chosen share group members
+     * @return the recipients of the message
+     */
+    private List<IOTClient> selectRecipients(IotSubscriptionFilter subscriptionFilter, PublishMessage publishMessage,
+                                             List<IotSubscription> subscriptionList, List<IOTClient> sessionList,
+                                             Set<String> sharedRecipients) {
+
+        Map<String, IOTClient> sessions = new HashMap<>();
+        for (IOTClient session : sessionList) {
+            sessions.put(session.getSessionId(), session);
+        }
+
+        List<IOTClient> recipients = new ArrayList<>();
+        Map<String, List<IOTClient>> shareGroupMembers = new TreeMap<>();
+
+        for (IotSubscription subscription : subscriptionList) {
+
+            IOTClient session = sessions.get(subscription.getClientId());
+            if (Objects.isNull(session)) {
+                continue;
+            }
+
+            if (Objects.isNull(subscription.getShareGroup())) {
+                recipients.add(session);
+            } else {
+                shareGroupMembers.computeIfAbsent(subscription.getShareGroup(), shareGroup -> new ArrayList<>()).add(session);
+            }
+        }
+
+        for (Map.Entry<String, List<IOTClient>> shareGroup : shareGroupMembers.entrySet()) {
+
+            List<IOTClient> members = new ArrayList<>();
+            for (IOTClient member : shareGroup.getValue()) {
+                if (member.getIsActive()) {
+                    members.add(member);
+                }
+            }
 
-        log.debug(" publish : new message {} to publish from {} in partition {}", publishMessage, publishMessage.getSessionId(), publishMessage.getPartitionId());
+            //With no member connected the message is kept for one of them to receive later.
+            if (members.isEmpty()) {
+                members = shareGroup.getValue();
+            }
 
-        //Obtain a list of all the subscribed clients who will receive a message.
-        Observable<IotSubscriptionFilter> subscriptionFilterObservable = getDatastore().getMatchingSubscriptionFilter(publishMessage.getPartitionId(), publishMessage.getTopic());
+            members.sort(Comparator.comparing(IOTClient::getSessionId));
 
-        subscriptionFilterObservable.subscribe(
-                subscriptionFilter -> {
+            String shareGroupKey = subscriptionFilter.getPartitionId() + Constant.PATH_SEPARATOR
+                    + subscriptionFilter.getId() + Constant.PATH_SEPARATOR + shareGroup.getKey();
+
+            IOTClient member = getWorker().getSharedSubscriptionPolicy().select(shareGroupKey, publishMessage, members);
+
+            log.debug(" selectRecipients : share group {} delivers message {} to {}", shareGroupKey, publishMessage, member);
+
+            sharedRecipients.add(member.getSessionId());
+            recipients.add(member);
+        }
+
+        return recipients;
+    }
+
+    /**
+     * <code>onMessageAcknowledged</code> notifies the shared subscription policy
+     * that a client completed the delivery of a message and, with the message out of
+     * the client's delivery window, releases the messages waiting for room in it
+     * along with the next page of any replay of stored messages.
+     *
+     * @param iotClient
+     * @param messageId
+     */
+    public void onMessageAcknowledged(IOTClient iotClient, long messageId) {
+        getWorker().getSharedSubscriptionPolicy().onAcknowledged(iotClient, messageId);
+
+        releasePendingMessages(iotClient);
+
+        getWorker().getSessionResetManager().onMessageAcknowledged(iotClient, messageId);
+    }
+
+    /**
+     * <code>admitForDelivery</code> places a saved message in the delivery window of its session.
+     * Once the session has as many unacknowledged messages as the window allows
+     * new messages wait in its pending queue, and a full queue is dealt with
+     * according to the configured overflow policy.
+     *
+     * @param iotSession
+     * @param publishMessage
+     * @return emits true if the message can be sent to the client now
+     */
+    public Observable<Boolean> admitForDelivery(IOTClient iotSession, PublishMessage publishMessage) {
+
+        //A message left without an id was not stored as every id of the session is in use.
+        if (PublishMessage.ID_WHEN_NONE_IS_FREE == publishMessage.getMessageId()) {
+            return Observable.just(onAdmission(iotSession, DeliveryAdmission.REJECTED));
+        }
+
+        if (!getWorker().isSessionInFlightWindowEnabled()) {
+            return Observable.just(true);
+        }
+
+        return getDatastore().admitMessage(publishMessage,
+                getWorker().getSessionInFlightWindow(), getWorker().getSessionPendingQueueSize(),
+                getWorker().getSessionOverflowPolicy())
+                .map(deliveryAdmission -> onAdmission(iotSession, deliveryAdmission))
+                .onErrorReturn(throwable -> {
+                    //The message is saved so the client still gets it rather than lose it.
+                    log.error(" admitForDelivery : problems admitting message", throwable);
+                    return true;
+                });
+    }
+
+    private boolean onAdmission(IOTClient iotSession, DeliveryAdmission deliveryAdmission) {
+
+        if (DeliveryAdmission.REJECTED.equals(deliveryAdmission)
+                && OverflowPolicy.DISCONNECT.equals(getWorker().getSessionOverflowPolicy())
+                && iotSession.getIsActive()) {
+
+            log.warn(" admitForDelivery : disconnecting {} as its pending queue is full", iotSession.getSessionId());
+
+            DisconnectMessage disconnectMessage = DisconnectMessage.from(true);
+            disconnectMessage = iotSession.copyTransmissionData(disconnectMessage);
+
+            try {
+                getWorker().getHandler(DisconnectHandler.class).handle(disconnectMessage);
+            } catch (RetriableException | UnRetriableException e) {
+                log.error(" admitForDelivery : issues disconnecting.", e);
+            }
+        }
+
+        return DeliveryAdmission.IN_FLIGHT.equals(deliveryAdmission);
+    }
+
+    /**
+     * <code>releasePendingMessages</code> sends the client the pending messages
+     * that now fit in its delivery window.
+     *
+     * @param iotClient
+     */
+    public void releasePendingMessages(IOTClient iotClient) {
+
+        if (!getWorker().isSessionInFlightWindowEnabled()) {
+            return;
+        }
+
+        getDatastore().promotePendingMessages(iotClient, getWorker().getSessionInFlightWindow()).subscribe(
+                pendingMessage -> {
 
                     try {
 
-                        Observable<IotSubscription> subscriptionObservable
-                                = getDatastore().getSubscriptions(subscriptionFilter,  publishMessage.getQos());
-                        subscriptionObservable.subscribeOn(getWorker().getScheduler()).distinct().subscribe(
-                                subscription -> {
+                        getWorker().getHandler(PublishOutHandler.class).handle(iotClient.copyTransmissionData(pendingMessage));
 
-                                    IotClientKey clientKey = new IotClientKey();
-                                    clientKey.setSessionId(subscription.getClientId());
-                                    Observable<IOTClient> clientObservable = getDatastore().getSession(clientKey);
+                    } catch (RetriableException | UnRetriableException e) {
+                        log.error(" releasePendingMessages : problems releasing pending messages", e);
+                    }
 
-                                    clientObservable.subscribe(iotSession -> {
+                }, throwable -> log.error(" releasePendingMessages : database problems", throwable));
+    }
 
-                                        try {
-                                            log.debug(" publish : found subscription {} for message {} in partition {}", iotSession, publishMessage, publishMessage.getPartitionId());
+    /**
+     * <code>releaseToRecipients</code> makes a copy of the message for every recipient
+     * and saves the copies requiring acknowledgement with a single datastore call.
+     * Once the datastore completes the save and admits the copies to their delivery
+     * windows, pushing them out is added to the ticket of the message so it runs in
+     * publish order on the publisher's stripe. No thread is held waiting on the datastore.
+     *
+     * @param publishMessage
+     * @param recipients
+     * @param sharedRecipients session ids of the recipients chosen as members of a share group
+     * @param ticket           collecting the deliveries of the message
+     * @return completes once the deliveries are on the ticket
+     */
+    private Observable<Void> releaseToRecipients(PublishMessage publishMessage, List<IOTClient> recipients,
+                                                 Set<String> sharedRecipients, OrderedDelivery.Ticket ticket) {
+
+        List<PublishMessage> recipientMessages = new ArrayList<>(recipients.size());
+        List<PublishMessage> acknowledgedMessages = new ArrayList<>();
+
+        //Copies delivered by servers on this node have the common part of their frame encoded once.
+        SharedFrame sharedFrame = recipients.size() > 1 ? new SharedFrame() : null;
+
+        for (IOTClient iotSession : recipients) {
+
+            PublishMessage clonePublishMessage = iotSession.copyTransmissionData(publishMessage.cloneMessage());
+            clonePublishMessage.setSharedFrame(sharedFrame);
+            recipientMessages.add(clonePublishMessage);
+
+            if (clonePublishMessage.getQos() > MqttQoS.AT_MOST_ONCE.value()) {
+                acknowledgedMessages.add(clonePublishMessage);
+            }
+        }
+
+        if (acknowledgedMessages.isEmpty()) {
+            ticket.add(() -> deliverToRecipients(publishMessage, recipients, recipientMessages, sharedFrame, Collections.emptyMap()));
+            return Observable.empty();
+        }
+
+        //Save all the copies as we proceed.
+        return getDatastore().saveMessages(acknowledgedMessages).toList()
+                .flatMap(messageIdentities -> {
+
+                    log.debug(" releaseToRecipients : saved {} copies of message {}", messageIdentities.size(), publishMessage);
+
+                    for (int index = 0; index < messageIdentities.size(); index++) {
+                        acknowledgedMessages.get(index).setMessageId(messageIdentities.get(index).getValue().getMessageId());
+                    }
 
+                    return admitRecipients(recipients, recipientMessages, sharedRecipients);
+                })
+                .onErrorReturn(throwable -> {
 
-                                            final PublishMessage clonePublishMessage = iotSession.copyTransmissionData(publishMessage.cloneMessage());
+                    log.error(" releaseToRecipients : error details ", throwable);
 
-                                            if (clonePublishMessage.getQos() > MqttQoS.AT_MOST_ONCE.value()) {
+                    //Copies that could not be saved are still sent out.
+                    return Collections.emptyMap();
+                })
+                .flatMap(admissions -> {
+                    ticket.add(() -> deliverToRecipients(publishMessage, recipients, recipientMessages, sharedFrame, admissions));
+                    return Observable.<Void>empty();
+                });
+    }
 
-                                                try {
-                                                    //Save the message as we proceed.
-                                                    Map.Entry<Long, IotMessageKey> messageIdentity = getDatastore().saveMessage(clonePublishMessage).toBlocking().single();
+    /**
+     * <code>admitRecipients</code> places the saved copies in the delivery windows of their recipients.
+     *
+     * @param recipients
+     * @param recipientMessages
+     * @param sharedRecipients
+     * @return whether each copy requiring acknowledgement can be sent now, by its index
+     */
+    private Observable<Map<Integer, Boolean>> admitRecipients(List<IOTClient> recipients, List<PublishMessage> recipientMessages,
+                                                              Set<String> sharedRecipients) {
+
+        return Observable.range(0, recipients.size())
+                .filter(index -> recipientMessages.get(index).getQos() > MqttQoS.AT_MOST_ONCE.value())
+                .flatMap(index -> {
+
+                    IOTClient iotSession = recipients.get(index);
+                    PublishMessage clonePublishMessage = recipientMessages.get(index);
+
+                    if (sharedRecipients.contains(iotSession.getSessionId())) {
+                        getWorker().getSharedSubscriptionPolicy().onDelivered(iotSession, clonePublishMessage);
+                    }
 
-                                                    log.debug(" publish : new generated message id is {}", messageIdentity);
+                    return admitForDelivery(iotSession, clonePublishMessage)
+                            .map(isReleasable -> new AbstractMap.SimpleEntry<>(index, isReleasable));
+                })
+                .toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue);
+    }
 
-                                                    clonePublishMessage.setMessageId(messageIdentity.getValue().getMessageId());
+    private void deliverToRecipients(PublishMessage publishMessage, List<IOTClient> recipients, List<PublishMessage> recipientMessages,
+                                     SharedFrame sharedFrame, Map<Integer, Boolean> admissions) {
 
-                                                } catch (Exception e) {
-                                                    log.error(" publish : error details ", e);
-                                                }
-                                            }
+        for (int index = 0; index < recipients.size(); index++) {
 
+            IOTClient iotSession = recipients.get(index);
+            PublishMessage clonePublishMessage = recipientMessages.get(index);
 
-                                            if (iotSession.getIsActive()) {
-                                                //Actually push out the message.
-                                                //This message should be released to the connected client
+            log.debug(" releaseToRecipients : found subscription {} for message {} in partition {}", iotSession, publishMessage, publishMessage.getPartitionId());
 
-                                                getWorker().getHandler(PublishOutHandler.class).handle(clonePublishMessage);
+            try {
 
-                                            }
-                                        } catch (RetriableException | UnRetriableException e) {
-                                            log.error(" publish : problems releasing stored messages", e);
-                                        }
+                boolean isReleasable = admissions.getOrDefault(index, true);
+
+                if (isReleasable && iotSession.getIsActive()) {
+                    //Actually push out the message.
+                    //This message should be released to the connected client
+
+                    getWorker().getHandler(PublishOutHandler.class).handle(clonePublishMessage);
+
+                } else {
+                    clonePublishMessage.releasePayloadBuffer();
+                }
+            } catch (RetriableException | UnRetriableException e) {
+                clonePublishMessage.releasePayloadBuffer();
+                log.error(" releaseToRecipients : problems releasing stored messages", e);
+            }
+        }
+
+        if (Objects.nonNull(sharedFrame)) {
+            sharedFrame.release();
+        }
+    }
+
+    private void publish(PublishMessage publishMessage, OrderedDelivery.Ticket ticket) throws RetriableException {
 
-                                    });
+        log.debug(" publish : new message {} to publish from {} in partition {}", publishMessage, publishMessage.getSessionId(), publishMessage.getPartitionId());
 
+        //Messages without an expiry of their own take the ttl of their partition.
+        if (publishMessage.getExpiresAt() == 0) {
+            int messageTtl = getWorker().getMessageTtl(publishMessage.getPartitionId());
+            if (messageTtl > 0) {
+                publishMessage.setExpiresAt(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(messageTtl));
+            }
+        }
 
-                                }, throwable -> log.error(" process : database problems", throwable));
+        //Obtain a list of all the subscribed clients who will receive a message.
+        Observable<IotSubscriptionFilter> subscriptionFilterObservable = getDatastore().getMatchingSubscriptionFilter(publishMessage.getPartitionId(), publishMessage.getTopic());
+
+        //Copies share the payload buffer of the published message, if it has one,
+        // so its own reference is only let go once every subscription filter is served.
+        AtomicInteger activeFanOuts = new AtomicInteger(1);
+        Action0 onFanOutCompleted = () -> {
+            if (activeFanOuts.decrementAndGet() == 0) {
+                ticket.add(publishMessage::releasePayloadBuffer);
+                getWorker().getOrderedDelivery().complete(ticket);
+            }
+        };
+
+        subscriptionFilterObservable.subscribe(
+                subscriptionFilter -> {
+
+                    activeFanOuts.incrementAndGet();
+
+                    try {
+
+                        Observable<IotSubscription> subscriptionObservable
+                                = getDatastore().getSubscriptions(subscriptionFilter,  publishMessage.getQos());
+
+                        //Members of a share group that were picked to receive this message.
+                        Set<String> sharedRecipients = ConcurrentHashMap.newKeySet();
+
+                        //Read all the subscribed sessions in bulk rather than one at a time.
+                        Observable<IOTClient> clientObservable = subscriptionObservable
+                                .toList()
+                                .flatMap(subscriptionList -> {
+
+                                    Set<IotClientKey> clientKeys = new HashSet<>();
+                                    for (IotSubscription subscription : subscriptionList) {
+                                        IotClientKey clientKey = new IotClientKey();
+                                        clientKey.setSessionId(subscription.getClientId());
+                                        clientKeys.add(clientKey);
+                                    }
+
+                                    return getDatastore().getSessions(clientKeys)
+                                            .toList()
+                                            .flatMap(sessionList -> Observable.from(
+                                                    selectRecipients(subscriptionFilter, publishMessage, subscriptionList, sessionList, sharedRecipients)));
+                                });
+
+                        //Copies for all the recipients are released together so they can be saved in one go.
+                        clientObservable.toList()
+                                .flatMap(recipients -> releaseToRecipients(publishMessage, recipients, sharedRecipients, ticket))
+                                .subscribeOn(getWorker().getScheduler()).subscribe(
+                                ignored -> {},
+                                throwable -> {
+                                    log.error(" process : database problems", throwable);
+                                    onFanOutCompleted.call();
+                                }, onFanOutCompleted);
 
 
                     } catch (UnRetriableException e) {
                         e.printStackTrace();
+                        onFanOutCompleted.call();
                     }
 
-                }, throwable -> log.error(" publish : database problems", throwable), ()->{
+                }, throwable -> {
+                    log.error(" publish : database problems", throwable);
+                    onFanOutCompleted.call();
+                }, ()->{
 
                     //Store the retained message.
 
@@ -287,7 +627,7 @@ public class Messenger {
                                 if (((byte[]) publishMessage.getPayload()).length > 0) {
 
                                     //Save the retain message.
-                                    getDatastore().saveRetainedMessage(subscriptionFilter, publishMessage.getQos(), publishMessage.getPayload());
+                                    getDatastore().saveRetainedMessage(subscriptionFilter, publishMessage.getQos(), publishMessage.getPayload(), publishMessage.getExpiresAt());
 
                                 } else {
                                     getDatastore().removeRetainedMessage(subscriptionFilter);
@@ -300,6 +640,8 @@ public class Messenger {
 
                     }
 
+                    onFanOutCompleted.call();
+
                 });
 
     }
@@ -0,0 +1,50 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+/**
+ * <code>OverflowPolicy</code> decides what happens to a message published to a session
+ * whose in flight window and pending queue are both full.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The oldest pending message is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new message is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The new message is discarded and the client is disconnected.
+     */
+    DISCONNECT;
+
+    public static OverflowPolicy fromString(String policyName) {
+        return valueOf(policyName.trim().toUpperCase());
+    }
+}
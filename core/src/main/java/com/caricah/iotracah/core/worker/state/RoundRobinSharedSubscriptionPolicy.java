@@ -0,0 +1,52 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>RoundRobinSharedSubscriptionPolicy</code> hands messages to the members
+ * of a share group in turn so that each one receives an equal share.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class RoundRobinSharedSubscriptionPolicy implements SharedSubscriptionPolicy {
+
+    public static final String NAME = "round_robin";
+
+    private final ConcurrentMap<String, AtomicLong> shareGroupCounters = new ConcurrentHashMap<>();
+
+    @Override
+    public IOTClient select(String shareGroupKey, PublishMessage publishMessage, List<IOTClient> members) {
+
+        AtomicLong counter = shareGroupCounters.computeIfAbsent(shareGroupKey, key -> new AtomicLong());
+
+        int index = (int) Math.floorMod(counter.getAndIncrement(), (long) members.size());
+        return members.get(index);
+    }
+}
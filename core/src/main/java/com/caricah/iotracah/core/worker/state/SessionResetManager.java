@@ -32,9 +32,18 @@ import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import io.netty.handler.codec.mqtt.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import rx.Observable;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Stored messages are replayed in pages ordered by id. The next page is only
+ * read once the client has acknowledged enough of the messages already replayed,
+ * so a session returning with a large backlog does not flood its connection.
+ *
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
  * @version 1.0 7/30/15
  */
@@ -46,6 +55,11 @@ public class SessionResetManager {
 
     private Datastore datastore;
 
+    /**
+     * Progress of the replays running on this node, by session id.
+     */
+    private final ConcurrentMap<String, ReplayCursor> replayCursors = new ConcurrentHashMap<>();
+
     public Worker getWorker() {
         return worker;
     }
@@ -66,54 +80,226 @@ public class SessionResetManager {
 
         log.debug(" process : Resetting a session for client {} ", iotClient);
 
+        //A replay already in progress, say when a ping arrives, carries on from where it is.
+        ReplayCursor replayCursor = new ReplayCursor();
+        ReplayCursor currentReplayCursor = replayCursors.putIfAbsent(iotClient.getSessionId(), replayCursor);
+
+        if (Objects.nonNull(currentReplayCursor)) {
+
+            if (currentReplayCursor.hasRoom(getWorker().getSessionReplayPageSize())) {
+                replayPages(iotClient, currentReplayCursor);
+            }
+            return;
+        }
+
+        replayPages(iotClient, replayCursor);
+    }
 
-        Observable<PublishMessage> publishMessageObservable = getDatastore().getMessages(iotClient);
+    /**
+     * <code>onMessageAcknowledged</code> reads the next page of a replay in progress
+     * once the client has acknowledged enough of the replayed messages.
+     *
+     * @param iotClient
+     * @param messageId
+     */
+    public void onMessageAcknowledged(IOTClient iotClient, long messageId) {
+
+        ReplayCursor replayCursor = replayCursors.get(iotClient.getSessionId());
+        if (Objects.isNull(replayCursor)) {
+            return;
+        }
+
+        replayCursor.acknowledge((int) messageId);
+
+        if (replayCursor.hasRoom(getWorker().getSessionReplayPageSize())) {
+            replayPages(iotClient, replayCursor);
+        }
+    }
 
-        publishMessageObservable.subscribe(publishMessage -> {
+    /**
+     * <code>cancel</code> stops the replay to a client that is no longer connected.
+     *
+     * @param iotClient
+     */
+    public void cancel(IOTClient iotClient) {
+        replayCursors.remove(iotClient.getSessionId());
+    }
 
-            publishMessage = iotClient.copyTransmissionData(publishMessage);
-            //Update current session id for message.
+    private void replayPages(IOTClient iotClient, ReplayCursor replayCursor) {
 
-                    if (publishMessage.getIsInbound()) {
+        int pageSize = getWorker().getSessionReplayPageSize();
 
-                        //We need to generate a PUBREC message to acknowledge message received.
-                        if (publishMessage.getQos() == MqttQoS.EXACTLY_ONCE.value()) {
+        while (replayCursor.startFetch()) {
 
+            List<PublishMessage> page;
+            Set<Integer> pendingMessageIds;
 
-                            PublishReceivedMessage publishReceivedMessage = PublishReceivedMessage.from(publishMessage.getMessageId());
-                            publishReceivedMessage = iotClient.copyTransmissionData(publishReceivedMessage);
-                            getWorker().pushToServer(publishReceivedMessage);
+            try {
 
+                //Messages saved after the replay starts are delivered as they arrive, so the replay stops short of them.
+                if (!replayCursor.isBounded()) {
+                    replayCursor.setLastMessageId(getDatastore().getLastMessageId(iotClient).toBlocking().single());
+                }
 
-                        }
+                page = getDatastore().getMessages(iotClient, replayCursor.getLastReplayedId(),
+                        replayCursor.getLastMessageId(), pageSize).toList().toBlocking().single();
 
-                    } else {
+                //Messages still waiting for room in the delivery window are sent as acknowledgements free it up.
+                pendingMessageIds = getDatastore().getPendingMessageIds(iotClient).toBlocking().single();
 
-                        if (publishMessage.getQos() == MqttQoS.EXACTLY_ONCE.value() && publishMessage.getIsRelease()) {
+            } catch (Exception e) {
+                log.error(" replayPages : problems releasing stored messages", e);
+                replayCursor.endFetch();
+                replayCursors.remove(iotClient.getSessionId(), replayCursor);
+                return;
+            }
 
-                            //We need to generate a PUBREL message to allow transmission of qos 2 message.
-                            ReleaseMessage releaseMessage = ReleaseMessage.from(publishMessage.getMessageId(), true);
-                            releaseMessage = iotClient.copyTransmissionData(releaseMessage);
-                            getWorker().pushToServer(releaseMessage);
+            long now = System.currentTimeMillis();
 
+            for (PublishMessage publishMessage : page) {
 
-                        } else {
+                replayCursor.setLastReplayedId(publishMessage.getId());
 
-                            //This message should be released to the client
+                if (publishMessage.getIsInbound() || !pendingMessageIds.contains(publishMessage.getMessageId())) {
+                    replay(iotClient, iotClient.copyTransmissionData(publishMessage), replayCursor, now);
+                }
+            }
 
-                            try {
-                                getWorker().getHandler(PublishOutHandler.class).handle(publishMessage);
-                            } catch (RetriableException | UnRetriableException e) {
-                                log.error(" process : problems releasing stored messages", e);
-                            }
+            if (page.size() < pageSize || replayCursor.getLastReplayedId() >= replayCursor.getLastMessageId()) {
 
-                        }
-                    }
+                log.debug(" replayPages : all stored messages for client {} have been replayed", iotClient);
 
-        });
+                replayCursors.remove(iotClient.getSessionId(), replayCursor);
+                getWorker().getMessenger().releasePendingMessages(iotClient);
+                return;
+            }
 
+            replayCursor.endFetch();
 
+            //Acknowledgements arriving while the page was sent are caught by this check.
+            if (!replayCursor.hasRoom(pageSize)) {
+                return;
+            }
+        }
     }
 
+    private void replay(IOTClient iotClient, PublishMessage publishMessage, ReplayCursor replayCursor, long now) {
+
+        //Update current session id for message.
+
+        if (publishMessage.getIsInbound()) {
+
+            //We need to generate a PUBREC message to acknowledge message received.
+            if (publishMessage.getQos() == MqttQoS.EXACTLY_ONCE.value()) {
+
+
+                PublishReceivedMessage publishReceivedMessage = PublishReceivedMessage.from(publishMessage.getMessageId());
+                publishReceivedMessage = iotClient.copyTransmissionData(publishReceivedMessage);
+                getWorker().pushToServer(publishReceivedMessage);
+
+
+            }
+
+        } else {
+
+            if (publishMessage.getQos() == MqttQoS.EXACTLY_ONCE.value() && publishMessage.getIsRelease()) {
+
+                //We need to generate a PUBREL message to allow transmission of qos 2 message.
+                ReleaseMessage releaseMessage = ReleaseMessage.from(publishMessage.getMessageId(), true);
+                releaseMessage = iotClient.copyTransmissionData(releaseMessage);
+
+                replayCursor.await(publishMessage.getMessageId());
+                getWorker().pushToServer(releaseMessage);
+
+
+            } else if (publishMessage.isExpired(now)) {
+
+                //Stale messages are dropped rather than replayed, freeing their place in the delivery window.
+                log.debug(" replay : message {} for client {} expired before it could be delivered", publishMessage, iotClient);
+                getDatastore().removeMessage(publishMessage);
+
+            } else {
+
+                //This message should be released to the client
+
+                try {
+                    replayCursor.await(publishMessage.getMessageId());
+                    getWorker().getHandler(PublishOutHandler.class).handle(publishMessage);
+                } catch (RetriableException | UnRetriableException e) {
+                    log.error(" replay : problems releasing stored messages", e);
+                }
+
+            }
+        }
+    }
+
+    /**
+     * <code>ReplayCursor</code> tracks how far a replay has gone and which
+     * of the replayed messages the client is yet to acknowledge.
+     */
+    private static final class ReplayCursor {
+
+        private static final long NOT_BOUNDED = -1;
+
+        private final Set<Integer> awaitedMessageIds = ConcurrentHashMap.newKeySet();
+
+        private long lastReplayedId;
+
+        private long lastMessageId = NOT_BOUNDED;
+
+        private boolean fetching;
+
+        long getLastReplayedId() {
+            return lastReplayedId;
+        }
+
+        void setLastReplayedId(long lastReplayedId) {
+            this.lastReplayedId = lastReplayedId;
+        }
+
+        /**
+         * The largest id stored for the session when the replay started.
+         */
+        long getLastMessageId() {
+            return lastMessageId;
+        }
+
+        void setLastMessageId(long lastMessageId) {
+            this.lastMessageId = lastMessageId;
+        }
+
+        boolean isBounded() {
+            return lastMessageId != NOT_BOUNDED;
+        }
+
+        void await(int messageId) {
+            awaitedMessageIds.add(messageId);
+        }
+
+        void acknowledge(int messageId) {
+            awaitedMessageIds.remove(messageId);
+        }
+
+        /**
+         * The next page is read once no more than half a page is awaiting acknowledgement.
+         */
+        boolean hasRoom(int pageSize) {
+            return awaitedMessageIds.size() <= pageSize / 2;
+        }
+
+        synchronized boolean startFetch() {
+
+            if (fetching) {
+                return false;
+            }
+
+            fetching = true;
+            return true;
+        }
+
+        synchronized void endFetch() {
+            fetching = false;
+        }
+    }
 
 }
@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+/**
+ * <code>SharedSubscription</code> reads topic filters of the form
+ * <code>$share/{group}/{filter}</code>. Clients subscribing with the same group
+ * and filter share the subscription and each matching message is delivered
+ * to only one of them.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public final class SharedSubscription {
+
+    private static final String SHARED_SUBSCRIPTION_PATH_PREFIX = Constant.SHARED_SUBSCRIPTION_PREFIX + Constant.PATH_SEPARATOR;
+
+    private SharedSubscription() {
+    }
+
+    public static boolean isShared(String topicFilter) {
+        return topicFilter.startsWith(SHARED_SUBSCRIPTION_PATH_PREFIX);
+    }
+
+    /**
+     * A share group is a single non empty level without wildcards
+     * followed by a non empty topic filter.
+     *
+     * @param topicFilter
+     * @return true if the shared topic filter can be subscribed to.
+     */
+    public static boolean isValid(String topicFilter) {
+
+        int separatorIndex = topicFilter.indexOf(Constant.PATH_SEPARATOR, SHARED_SUBSCRIPTION_PATH_PREFIX.length());
+
+        if (separatorIndex <= SHARED_SUBSCRIPTION_PATH_PREFIX.length() || separatorIndex == topicFilter.length() - 1) {
+            return false;
+        }
+
+        String shareGroup = topicFilter.substring(SHARED_SUBSCRIPTION_PATH_PREFIX.length(), separatorIndex);
+
+        return !shareGroup.contains(Constant.SINGLE_LEVEL_WILDCARD) && !shareGroup.contains(Constant.MULTI_LEVEL_WILDCARD);
+    }
+
+    /**
+     * @param topicFilter
+     * @return the share group of the topic filter or null if it is not shared.
+     */
+    public static String getShareGroup(String topicFilter) {
+
+        if (!isShared(topicFilter) || !isValid(topicFilter)) {
+            return null;
+        }
+
+        int separatorIndex = topicFilter.indexOf(Constant.PATH_SEPARATOR, SHARED_SUBSCRIPTION_PATH_PREFIX.length());
+        return topicFilter.substring(SHARED_SUBSCRIPTION_PATH_PREFIX.length(), separatorIndex);
+    }
+
+    /**
+     * @param topicFilter
+     * @return the filter that is matched against topics once the share group is removed.
+     */
+    public static String getTopicFilter(String topicFilter) {
+
+        if (!isShared(topicFilter) || !isValid(topicFilter)) {
+            return topicFilter;
+        }
+
+        int separatorIndex = topicFilter.indexOf(Constant.PATH_SEPARATOR, SHARED_SUBSCRIPTION_PATH_PREFIX.length());
+        return topicFilter.substring(separatorIndex + 1);
+    }
+}
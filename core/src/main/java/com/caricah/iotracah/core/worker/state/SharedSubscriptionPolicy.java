@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.core.worker.state;
+
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
+import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
+
+import java.util.List;
+
+/**
+ * <code>SharedSubscriptionPolicy</code> picks the one member of a share group
+ * that receives a published message.
+ *
+ * Implementations are configured on the worker by name or by class name and
+ * have to be safe for use by many publishing threads at once.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public interface SharedSubscriptionPolicy {
+
+    /**
+     * <code>select</code> obtains the member to deliver the message to.
+     *
+     * @param shareGroupKey identifies the share group within its partition and subscription filter
+     * @param publishMessage the message being published
+     * @param members the group members ordered by session id, never empty
+     * @return the chosen member
+     */
+    IOTClient select(String shareGroupKey, PublishMessage publishMessage, List<IOTClient> members);
+
+    /**
+     * <code>onDelivered</code> is notified once a message requiring acknowledgement
+     * has been assigned to a member.
+     *
+     * @param member
+     * @param publishMessage the copy of the message sent to the member
+     */
+    default void onDelivered(IOTClient member, PublishMessage publishMessage) {
+    }
+
+    /**
+     * <code>onAcknowledged</code> is notified when a client completes the delivery of a message.
+     *
+     * @param client
+     * @param messageId
+     */
+    default void onAcknowledged(IOTClient client, long messageId) {
+    }
+}
@@ -37,12 +37,19 @@ import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.bootstrap.security.realm.state.IOTRole;
 import com.caricah.iotracah.core.modules.Datastore;
 import com.caricah.iotracah.core.worker.exceptions.DoesNotExistException;
+import com.caricah.iotracah.core.worker.state.DeliveryAdmission;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
 import com.caricah.iotracah.datastore.IotDataSource;
+import com.caricah.iotracah.datastore.ignitecache.internal.DeliveryWindow;
+import com.caricah.iotracah.datastore.ignitecache.internal.DeliveryWindows;
+import com.caricah.iotracah.datastore.ignitecache.internal.IdGenerationService;
+import com.caricah.iotracah.datastore.ignitecache.internal.TopicDictionary;
 import com.caricah.iotracah.datastore.ignitecache.internal.impl.*;
 import org.apache.commons.configuration.Configuration;
 import org.apache.shiro.session.Session;
 import org.apache.shiro.session.UnknownSessionException;
 import rx.Observable;
+import rx.Scheduler;
 
 import javax.naming.NamingException;
 import java.io.Serializable;
@@ -52,6 +59,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -69,6 +77,12 @@ public class IgniteDatastore extends Datastore {
     public static final String CONFIG_IGNITECACHE_PERSITENCE_DB_USERNAME_VALUE_DEFAULT = "iotracah";
     public static final String CONFIG_IGNITECACHE_PERSITENCE_DB_PASSWORD = "config.ignitecache.persistence.db.password";
     public static final String CONFIG_IGNITECACHE_PERSITENCE_DB_PASSWORD_VALUE_DEFAULT = "!0tr@c@h";
+    public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_COMPACTION_INTERVAL = "config.ignitecache.subscription.filter.compaction.interval";
+    public static final long CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_COMPACTION_INTERVAL_VALUE_DEFAULT = 300;
+    public static final String CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_INTERVAL = "config.ignitecache.message.expiry.sweep.interval";
+    public static final long CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_INTERVAL_VALUE_DEFAULT = 60;
+    public static final String CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_BATCH_SIZE = "config.ignitecache.message.expiry.sweep.batch.size";
+    public static final int CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_BATCH_SIZE_VALUE_DEFAULT = 1000;
 
 
 
@@ -88,9 +102,25 @@ public class IgniteDatastore extends Datastore {
 
     private final PartitionHandler partitionHandler = new PartitionHandler();
 
+    private final TopicDictionary topicDictionary = new TopicDictionary();
+
+    private final DeliveryWindows deliveryWindows = new DeliveryWindows();
+
+    private final IdGenerationService idGenerationService = new IdGenerationService();
+
 
     private boolean persistanceEnabled;
 
+    private long subscriptionFilterCompactionInterval;
+
+    private Scheduler.Worker subscriptionFilterCompactionWorker;
+
+    private long messageExpirySweepInterval;
+
+    private int messageExpirySweepBatchSize;
+
+    private Scheduler.Worker messageExpirySweepWorker;
+
     public boolean isPersistanceEnabled() {
         return persistanceEnabled;
     }
@@ -99,6 +129,30 @@ public class IgniteDatastore extends Datastore {
         this.persistanceEnabled = persistanceEnabled;
     }
 
+    public long getSubscriptionFilterCompactionInterval() {
+        return subscriptionFilterCompactionInterval;
+    }
+
+    public void setSubscriptionFilterCompactionInterval(long subscriptionFilterCompactionInterval) {
+        this.subscriptionFilterCompactionInterval = subscriptionFilterCompactionInterval;
+    }
+
+    public long getMessageExpirySweepInterval() {
+        return messageExpirySweepInterval;
+    }
+
+    public void setMessageExpirySweepInterval(long messageExpirySweepInterval) {
+        this.messageExpirySweepInterval = messageExpirySweepInterval;
+    }
+
+    public int getMessageExpirySweepBatchSize() {
+        return messageExpirySweepBatchSize;
+    }
+
+    public void setMessageExpirySweepBatchSize(int messageExpirySweepBatchSize) {
+        this.messageExpirySweepBatchSize = messageExpirySweepBatchSize;
+    }
+
     /**
      * <code>configure</code> allows the base system to configure itself by getting
      * all the settings it requires and storing them internally. The plugin is only expected to
@@ -123,6 +177,24 @@ public class IgniteDatastore extends Datastore {
             boolean persistanceIsEnabled = configuration.getBoolean(CONFIG_IGNITECACHE_PERSITENCE_ENABLED, CONFIG_IGNITECACHE_PERSITENCE_ENABLED_VALUE_DEFAULT);
             setPersistanceEnabled(persistanceIsEnabled);
 
+            long compactionInterval = configuration.getLong(CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_COMPACTION_INTERVAL, CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_COMPACTION_INTERVAL_VALUE_DEFAULT);
+            setSubscriptionFilterCompactionInterval(compactionInterval);
+
+            long expirySweepInterval = configuration.getLong(CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_INTERVAL, CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_INTERVAL_VALUE_DEFAULT);
+            setMessageExpirySweepInterval(expirySweepInterval);
+
+            int expirySweepBatchSize = configuration.getInt(CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_BATCH_SIZE, CONFIG_IGNITECACHE_MESSAGE_EXPIRY_SWEEP_BATCH_SIZE_VALUE_DEFAULT);
+            if (expirySweepBatchSize < 1) {
+                throw new UnRetriableException(" The message expiry sweep batch size has to be at least 1");
+            }
+            setMessageExpirySweepBatchSize(expirySweepBatchSize);
+
+            idGenerationService.configure(configuration);
+
+            topicDictionary.configure(configuration);
+
+            deliveryWindows.configure(configuration);
+
             partitionHandler.configure(configuration);
 
             subscriptionFilterHandler.configure(configuration);
@@ -153,38 +225,68 @@ public class IgniteDatastore extends Datastore {
     @Override
     public void initiate() throws UnRetriableException {
 
+        idGenerationService.initiate();
+
+        deliveryWindows.initiate(getIgnite());
+
         partitionHandler.setPersistanceEnabled(isPersistanceEnabled());
+        partitionHandler.setIdGenerationService(idGenerationService);
         partitionHandler.initiate(IotPartition.class, getIgnite());
         partitionHandler.setExecutorService(getExecutorService());
 
         subscriptionFilterHandler.setPersistanceEnabled(isPersistanceEnabled());
+        subscriptionFilterHandler.setIdGenerationService(idGenerationService);
         subscriptionFilterHandler.initiate(IotSubscriptionFilter.class, getIgnite());
         subscriptionFilterHandler.setExecutorService(getExecutorService());
 
         retainedMessageHandler.setPersistanceEnabled(isPersistanceEnabled());
+        retainedMessageHandler.setIdGenerationService(idGenerationService);
         retainedMessageHandler.initiate(IotMessageRetained.class, getIgnite());
         retainedMessageHandler.setExecutorService(getExecutorService());
 
         subscriptionHandler.setPersistanceEnabled(isPersistanceEnabled());
+        subscriptionHandler.setIdGenerationService(idGenerationService);
         subscriptionHandler.initiate(IotSubscription.class, getIgnite());
         subscriptionHandler.setExecutorService(getExecutorService());
 
         messageHandler.setPersistanceEnabled(isPersistanceEnabled());
+        messageHandler.setIdGenerationService(idGenerationService);
         messageHandler.initiate(PublishMessage.class, getIgnite());
         messageHandler.setExecutorService(getExecutorService());
 
         accountHandler.setPersistanceEnabled(isPersistanceEnabled());
+        accountHandler.setIdGenerationService(idGenerationService);
         accountHandler.initiate(IOTAccount.class, getIgnite());
         accountHandler.setExecutorService(getExecutorService());
 
         roleHandler.setPersistanceEnabled(isPersistanceEnabled());
+        roleHandler.setIdGenerationService(idGenerationService);
         roleHandler.initiate(IOTRole.class, getIgnite());
         roleHandler.setExecutorService(getExecutorService());
 
+        //Authorization decisions cached by workers follow account and role changes.
+        accountHandler.listenForChanges(account -> notifyAccountChanged(account.getPartitionId(), account.getUsername()));
+        roleHandler.listenForChanges(role -> notifyRoleChanged(role.getPartitionId(), role.getName()));
+
         clientHandler.setPersistanceEnabled(isPersistanceEnabled());
+        clientHandler.setIdGenerationService(idGenerationService);
         clientHandler.initiate(IOTClient.class, getIgnite());
         clientHandler.setExecutorService(getExecutorService());
 
+        if (getSubscriptionFilterCompactionInterval() > 0) {
+
+            subscriptionFilterCompactionWorker = subscriptionFilterHandler.getScheduler().createWorker();
+            subscriptionFilterCompactionWorker.schedulePeriodically(this::compactSubscriptionFilters,
+                    getSubscriptionFilterCompactionInterval(), getSubscriptionFilterCompactionInterval(), TimeUnit.SECONDS);
+        }
+
+        if (getMessageExpirySweepInterval() > 0) {
+
+            messageExpirySweepWorker = messageHandler.getScheduler().createWorker();
+            messageExpirySweepWorker.schedulePeriodically(this::sweepExpiredMessages,
+                    getMessageExpirySweepInterval(), getMessageExpirySweepInterval(), TimeUnit.SECONDS);
+        }
+
     }
 
     /**
@@ -194,9 +296,31 @@ public class IgniteDatastore extends Datastore {
     @Override
     public void terminate() {
 
+        if (Objects.nonNull(subscriptionFilterCompactionWorker)) {
+            subscriptionFilterCompactionWorker.unsubscribe();
+        }
+
+        if (Objects.nonNull(messageExpirySweepWorker)) {
+            messageExpirySweepWorker.unsubscribe();
+        }
+
+        subscriptionFilterHandler.terminate();
+
+        subscriptionHandler.terminate();
+
+        accountHandler.terminate();
+
+        roleHandler.terminate();
+
+        idGenerationService.terminate();
     }
 
 
+    @Override
+    public Observable<IOTClient> getSessions(Set<IotClientKey> sessionIds) {
+        return clientHandler.getBySet(sessionIds);
+    }
+
     @Override
     public Observable<PublishMessage> getWill(IOTClient client) {
 
@@ -252,41 +376,24 @@ public class IgniteDatastore extends Datastore {
 
     @Override
     public Observable<IotSubscriptionFilter> getMatchingSubscriptionFilter(String partition, String topic) {
-        return subscriptionFilterHandler.matchTopicFilterTree(partition, getTopicNavigationRoute(topic));
+        return subscriptionFilterHandler.matchTopicFilterTree(partition, topicDictionary.lookup(topic));
     }
 
+    /**
+     * Topics are broken down once per node through the topic dictionary.
+     *
+     * @param topicFilter
+     * @return the shared levels of the topic
+     */
     @Override
-    public Observable<IotSubscriptionFilter> getOrCreateSubscriptionFilter(String partition, String topic) {
-
-        return Observable.create(observer -> {
-
-            List<String> topicNavigationRoute = getTopicNavigationRoute(topic);
-
-
-            IotSubscriptionFilterKey filterKey = subscriptionFilterHandler.keyFromList(partition, topicNavigationRoute);
-
-
-            Observable<IotSubscriptionFilter> filterObservable = subscriptionFilterHandler
-                    .getByKeyWithDefault(filterKey, null);
-
-            filterObservable.subscribe(
-
-                    subscriptionFilter -> {
-
-                        if (Objects.isNull(subscriptionFilter)) {
-
-                            subscriptionFilterHandler.createTree(
-                                    partition, topicNavigationRoute).single()
-                                    .subscribe(observer::onNext, observer::onError, observer::onCompleted);
-                        } else {
-                            observer.onNext(subscriptionFilter);
-                        }
-
-                    }, observer::onError, observer::onCompleted);
-
-        });
+    public List<String> getTopicNavigationRoute(String topicFilter) {
+        return topicDictionary.lookup(topicFilter).getRoute();
+    }
 
+    @Override
+    public Observable<IotSubscriptionFilter> getOrCreateSubscriptionFilter(String partition, String topic) {
 
+        return subscriptionFilterHandler.createTree(partition, getTopicNavigationRoute(topic));
     }
 
     @Override
@@ -295,6 +402,15 @@ public class IgniteDatastore extends Datastore {
       return  subscriptionFilterHandler.getTopicFilterTree(partitionId, getTopicNavigationRoute(topicName) );
     }
 
+    @Override
+    public Observable<IotSubscriptionFilter> getSubscriptionFilter(String partition, String topicFilter) {
+
+        IotSubscriptionFilterKey subscriptionFilterKey = subscriptionFilterHandler.keyFromList(partition, getTopicNavigationRoute(topicFilter));
+
+        return subscriptionFilterHandler.getByKeyWithDefault(subscriptionFilterKey, null)
+                .filter(Objects::nonNull);
+    }
+
 
     @Override
     public void removeSubscriptionFilter(IotSubscriptionFilter subscriptionFilter) {
@@ -314,9 +430,7 @@ public class IgniteDatastore extends Datastore {
     @Override
     public Observable<IotSubscription> getSubscriptions(IotSubscriptionFilter subscriptionFilter, int qos) {
 
-        String query = "partitionId = ? and subscriptionFilterId = ? and qos >= ?";
-        Object[] params = {subscriptionFilter.getPartitionId(), subscriptionFilter.getId(), qos};
-        return subscriptionHandler.getByQuery(IotSubscription.class, query, params);
+        return subscriptionHandler.getSubscriptions(subscriptionFilter, qos);
 
     }
 
@@ -332,7 +446,7 @@ public class IgniteDatastore extends Datastore {
 
                 if(throwable instanceof DoesNotExistException){
 
-                    subscription.setId(subscriptionHandler.getIdSequence().incrementAndGet());
+                    subscription.setId(subscriptionHandler.getIdGenerator().next());
                     observable.onNext(subscription);
                     observable.onCompleted();
 
@@ -349,14 +463,112 @@ public class IgniteDatastore extends Datastore {
 
     @Override
     public void saveSubscription(IotSubscription subscription) {
-        subscriptionHandler.save(subscription);
+
+        if (subscriptionHandler.saveSubscription(subscription)) {
+            subscriptionFilterHandler.updateSubscriptionCount(subscription.getSubscriptionFilterId(), 1);
+        }
     }
 
     @Override
     public void removeSubscription(IotSubscription subscription) {
-        subscriptionHandler.remove(subscription);
+
+        if (subscriptionHandler.removeSubscription(subscription)) {
+            subscriptionFilterHandler.updateSubscriptionCount(subscription.getSubscriptionFilterId(), -1);
+        }
     }
 
+    /**
+     * <code>compactSubscriptionFilters</code> removes the subscription filters left
+     * without subscribers. Filters still holding a retained message are kept
+     * so that future subscribers can receive it.
+     */
+    private void compactSubscriptionFilters() {
+
+        try {
+
+            int removedFilters = subscriptionFilterHandler.compact(
+                    retainedMessageHandler::hasRetainedMessage,
+                    TimeUnit.SECONDS.toMillis(getSubscriptionFilterCompactionInterval()));
+
+            log.debug(" compactSubscriptionFilters : removed {} unused subscription filters", removedFilters);
+
+        } catch (Exception e) {
+            log.error(" compactSubscriptionFilters : problems compacting subscription filters", e);
+        }
+    }
+
+    /**
+     * <code>sweepExpiredMessages</code> removes stored and retained messages whose
+     * expiry has passed. The expiry field is indexed so every query only reads
+     * the expired entries, a batch at a time.
+     *
+     * Batches are read from the entries held on this node in (expiresAt, id) order and
+     * the next batch starts after the last row read, so backup copies in a batch never
+     * end the sweep early. Only the entries this node is the primary owner of are removed.
+     */
+    private void sweepExpiredMessages() {
+
+        String query = "expiresAt > 0 and expiresAt <= ?"
+                + " and (expiresAt > ? or (expiresAt = ? and id > ?))"
+                + " ORDER BY expiresAt, id LIMIT ?";
+
+        try {
+
+            long now = System.currentTimeMillis();
+            int removedMessages = 0;
+
+            long lastExpiresAt = 0;
+            long lastId = 0;
+
+            List<PublishMessage> expiredMessages;
+            do {
+
+                Object[] params = {now, lastExpiresAt, lastExpiresAt, lastId, getMessageExpirySweepBatchSize()};
+                expiredMessages = messageHandler.getLocalByQuery(PublishMessage.class, query, params).toList().toBlocking().single();
+
+                for (PublishMessage expiredMessage : expiredMessages) {
+
+                    lastExpiresAt = expiredMessage.getExpiresAt();
+                    lastId = expiredMessage.getId();
+
+                    //Removal also frees the delivery window, message id and payload held by each message.
+                    if (messageHandler.isLocalPrimary(expiredMessage) && removeMessageIfPresent(expiredMessage)) {
+                        removedMessages++;
+                    }
+                }
+
+            } while (expiredMessages.size() >= getMessageExpirySweepBatchSize());
+
+            int removedRetainedMessages = 0;
+
+            lastExpiresAt = 0;
+            lastId = 0;
+
+            List<IotMessageRetained> expiredRetainedMessages;
+            do {
+
+                Object[] params = {now, lastExpiresAt, lastExpiresAt, lastId, getMessageExpirySweepBatchSize()};
+                expiredRetainedMessages = retainedMessageHandler.getLocalByQuery(IotMessageRetained.class, query, params).toList().toBlocking().single();
+
+                for (IotMessageRetained expiredRetainedMessage : expiredRetainedMessages) {
+
+                    lastExpiresAt = expiredRetainedMessage.getExpiresAt();
+                    lastId = expiredRetainedMessage.getId();
+
+                    if (retainedMessageHandler.isLocalPrimary(expiredRetainedMessage)
+                            && retainedMessageHandler.removeIfPresent(expiredRetainedMessage)) {
+                        removedRetainedMessages++;
+                    }
+                }
+
+            } while (expiredRetainedMessages.size() >= getMessageExpirySweepBatchSize());
+
+            log.debug(" sweepExpiredMessages : removed {} messages and {} retained messages", removedMessages, removedRetainedMessages);
+
+        } catch (Exception e) {
+            log.error(" sweepExpiredMessages : problems removing expired messages", e);
+        }
+    }
 
     @Override
     public Observable<PublishMessage> getMessages(IOTClient iotClient) {
@@ -368,14 +580,89 @@ public class IgniteDatastore extends Datastore {
     }
 
     @Override
-    public Observable<PublishMessage> getMessage(IOTClient iotClient, long messageId, boolean isInbound) {
+    public Observable<PublishMessage> getMessages(IOTClient iotClient, long afterId, long uptoId, int limit) {
 
-        String query = "clientId = ? and messageId = ? and isInbound = ?";
-        Object[] params = {iotClient.getSessionId(), messageId, isInbound};
+        String query = "clientId = ? and id > ? and id <= ? ORDER BY id LIMIT ?";
+        Object[] params = {iotClient.getSessionId(), afterId, uptoId, limit};
 
         return messageHandler.getByQuery(PublishMessage.class, query, params);
     }
 
+    @Override
+    public Observable<Long> getLastMessageId(IOTClient iotClient) {
+
+        String query = "SELECT MAX(id) FROM PublishMessage WHERE clientId = ?";
+        Object[] params = {iotClient.getSessionId()};
+
+        return messageHandler.getByQueryAsValue(Long.class, query, params)
+                .map(lastMessageId -> Objects.isNull(lastMessageId) ? 0L : lastMessageId)
+                .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public Observable<PublishMessage> getMessage(IOTClient iotClient, long messageId, boolean isInbound) {
+
+        return messageHandler.getByKey(createMessageKey(iotClient, messageId, isInbound));
+    }
+
+    @Override
+    public Observable<PublishMessage> acknowledgeMessage(IOTClient iotClient, long messageId, boolean isInbound) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                PublishMessage publishMessage = messageHandler.getAndRemove(createMessageKey(iotClient, messageId, isInbound));
+
+                if (Objects.nonNull(publishMessage)) {
+
+                    if (!isInbound) {
+                        removeFromDeliveryWindow(publishMessage);
+                    }
+
+                    observer.onNext(publishMessage);
+                }
+
+                observer.onCompleted();
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public Observable<PublishMessage> releaseMessage(IOTClient iotClient, long messageId, boolean isInbound) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                PublishMessage publishMessage = messageHandler.markReleased(createMessageKey(iotClient, messageId, isInbound));
+
+                if (Objects.nonNull(publishMessage)) {
+                    observer.onNext(publishMessage);
+                }
+
+                observer.onCompleted();
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
+    }
+
+    private IotMessageKey createMessageKey(IOTClient iotClient, long messageId, boolean isInbound) {
+
+        IotMessageKey messageKey = new IotMessageKey();
+        messageKey.setPartitionId(iotClient.getPartitionId());
+        messageKey.setClientId(iotClient.getSessionId());
+        messageKey.setMessageId((int) messageId);
+        messageKey.setIsInbound(isInbound);
+
+        return messageKey;
+    }
+
     @Override
     public Observable<Map.Entry<Long, IotMessageKey>> saveMessage(PublishMessage publishMessage) {
 
@@ -383,35 +670,179 @@ public class IgniteDatastore extends Datastore {
 
     }
 
+    @Override
+    public Observable<Map.Entry<Long, IotMessageKey>> saveMessages(List<PublishMessage> publishMessages) {
+
+        return messageHandler.saveAllWithIdCheck(publishMessages);
+    }
+
     @Override
     public void removeMessage(PublishMessage publishMessage) {
-        messageHandler.remove(publishMessage);
+        removeMessageIfPresent(publishMessage);
+    }
+
+    /**
+     * <code>removeMessageIfPresent</code> removes a message and frees its place in the
+     * delivery window only when this call is the one that removed it.
+     *
+     * @param publishMessage
+     * @return true if the message was removed.
+     */
+    private boolean removeMessageIfPresent(PublishMessage publishMessage) {
+
+        if (!messageHandler.removeIfPresent(publishMessage)) {
+            return false;
+        }
+
+        if (!publishMessage.getIsInbound()) {
+            removeFromDeliveryWindow(publishMessage);
+        }
+        return true;
+    }
+
+    private void removeFromDeliveryWindow(PublishMessage publishMessage) {
+
+        try {
+            deliveryWindows.remove(publishMessage.getSessionId(), publishMessage.getMessageId());
+        } catch (Exception e) {
+            log.error(" removeFromDeliveryWindow : problems removing message from its delivery window", e);
+        }
     }
 
     @Override
-    public Observable<PublishMessage> getRetainedMessage(IotSubscriptionFilter subscriptionFilter) {
+    public Observable<DeliveryAdmission> admitMessage(PublishMessage publishMessage, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy) {
+
+        return Observable.<Map.Entry<DeliveryAdmission, Integer>>create(observer -> {
+
+            try {
+
+                deliveryWindows.admitAsync(publishMessage.getSessionId(), publishMessage.getMessageId(),
+                        inFlightLimit, pendingLimit, overflowPolicy).listen(admissionFuture -> {
+                    try {
+                        observer.onNext(admissionFuture.get());
+                        observer.onCompleted();
+                    } catch (Exception e) {
+                        observer.onError(e);
+                    }
+                });
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+
+        }).observeOn(messageHandler.getScheduler()).map(admission -> {
+
+            if (admission.getValue() != DeliveryWindow.NO_MESSAGE_ID) {
+
+                log.info(" admitMessage : delivery window of {} is full, message {} is discarded", publishMessage.getSessionId(), admission.getValue());
+
+                IotMessageKey droppedMessageKey = new IotMessageKey();
+                droppedMessageKey.setPartitionId(publishMessage.getPartitionId());
+                droppedMessageKey.setClientId(publishMessage.getSessionId());
+                droppedMessageKey.setMessageId(admission.getValue());
+                droppedMessageKey.setIsInbound(false);
+
+                messageHandler.getAndRemove(droppedMessageKey);
+            }
+
+            return admission.getKey();
+        });
+    }
+
+    @Override
+    public Observable<PublishMessage> promotePendingMessages(IOTClient client, int inFlightLimit) {
 
         return Observable.create(observer -> {
-            Observable<IotMessageRetained> subscriptionFilterRetainedMessageObservable = retainedMessageHandler.getRetainedMessagesByFilter(subscriptionFilter);
 
-            subscriptionFilterRetainedMessageObservable.subscribe(
+            try {
 
-                    iotMessageRetained -> {
+                List<Integer> promotedMessageIds = deliveryWindows.promote(client.getSessionId(), inFlightLimit);
 
-                        ByteBuffer byteBuffer = ByteBuffer.wrap((byte[]) iotMessageRetained.getPayload());
+                List<IotMessageKey> promotedMessageKeys = new ArrayList<>(promotedMessageIds.size());
+                for (Integer messageId : promotedMessageIds) {
 
-                        PublishMessage publishMessage = PublishMessage.from(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE, false, iotMessageRetained.getQos(), false, subscriptionFilter.getName(), byteBuffer, false);
+                    IotMessageKey messageKey = new IotMessageKey();
+                    messageKey.setPartitionId(client.getPartitionId());
+                    messageKey.setClientId(client.getSessionId());
+                    messageKey.setMessageId(messageId);
+                    messageKey.setIsInbound(false);
+                    promotedMessageKeys.add(messageKey);
+                }
+
+                Map<IotMessageKey, PublishMessage> promotedMessages = messageHandler.getAll(new HashSet<>(promotedMessageKeys));
 
+                for (IotMessageKey messageKey : promotedMessageKeys) {
+
+                    PublishMessage publishMessage = promotedMessages.get(messageKey);
+                    if (Objects.nonNull(publishMessage)) {
                         observer.onNext(publishMessage);
+                    }
+                }
+
+                observer.onCompleted();
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Set<Integer>> getPendingMessageIds(IOTClient client) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                observer.onNext(deliveryWindows.getPendingMessageIds(client.getSessionId()));
+                observer.onCompleted();
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public Observable<PublishMessage> getRetainedMessage(IotSubscriptionFilter subscriptionFilter) {
+
+        return Observable.create(observer -> {
+            Observable<IotMessageRetained> subscriptionFilterRetainedMessageObservable = retainedMessageHandler.getRetainedMessagesByFilter(subscriptionFilter);
 
-                    }, observer::onError, observer::onCompleted);
+            subscriptionFilterRetainedMessageObservable
+                    .filter(iotMessageRetained -> !iotMessageRetained.isExpired(System.currentTimeMillis()))
+                    .subscribe(
+
+                    iotMessageRetained -> observer.onNext(toPublishMessage(subscriptionFilter.getName(), iotMessageRetained))
+
+                    , observer::onError, observer::onCompleted);
 
 
         });
     }
 
     @Override
-    public void saveRetainedMessage(IotSubscriptionFilter subscriptionFilter, int qos, Object payload) {
+    public Observable<PublishMessage> getRetainedMessages(String partitionId, String topicFilter) {
+
+        long now = System.currentTimeMillis();
+
+        return retainedMessageHandler.getRetainedMessages(partitionId, getTopicNavigationRoute(topicFilter))
+                .filter(iotMessageRetained -> !iotMessageRetained.isExpired(now))
+                .map(iotMessageRetained -> toPublishMessage(iotMessageRetained.getTopic(), iotMessageRetained));
+    }
+
+    private PublishMessage toPublishMessage(String topic, IotMessageRetained iotMessageRetained) {
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap((byte[]) iotMessageRetained.getPayload());
+
+        //Messages sent as a result of a new subscription must have the retain flag set [MQTT-3.3.1-8].
+        PublishMessage publishMessage = PublishMessage.from(PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE, false, iotMessageRetained.getQos(), true, topic, byteBuffer, false);
+        publishMessage.setExpiresAt(iotMessageRetained.getExpiresAt());
+        return publishMessage;
+    }
+
+    @Override
+    public void saveRetainedMessage(IotSubscriptionFilter subscriptionFilter, int qos, Object payload, long expiresAt) {
 
 
         Observable<IotMessageRetained> subscriptionFilterRetainedMessageObservable = retainedMessageHandler.getRetainedMessagesByFilter(subscriptionFilter);
@@ -422,6 +853,8 @@ public class IgniteDatastore extends Datastore {
 
                     iotMessageRetained.setQos(qos);
                     iotMessageRetained.setPayload(payload);
+                    iotMessageRetained.setTopic(subscriptionFilter.getName());
+                    iotMessageRetained.setExpiresAt(expiresAt);
                     retainedMessageHandler.save(iotMessageRetained);
 
 
@@ -437,7 +870,9 @@ public class IgniteDatastore extends Datastore {
                         iotMessageRetained.setSubscriptionFilterId(subscriptionFilter.getId());
                         iotMessageRetained.setQos(qos);
                         iotMessageRetained.setPayload(payload);
-                        iotMessageRetained.setId(retainedMessageHandler.getIdSequence().incrementAndGet());
+                        iotMessageRetained.setTopic(subscriptionFilter.getName());
+                        iotMessageRetained.setExpiresAt(expiresAt);
+                        iotMessageRetained.setId(retainedMessageHandler.getIdGenerator().next());
                         retainedMessageHandler.save(iotMessageRetained);
                     }
                 }
@@ -466,7 +901,7 @@ public class IgniteDatastore extends Datastore {
         userKey.setPartitionId(partition);
         userKey.setUsername(username);
 
-        return accountHandler.getByKeyWithDefault(userKey, null).toBlocking().single();
+        return accountHandler.getNow(userKey);
     }
 
     @Override
@@ -483,7 +918,7 @@ public class IgniteDatastore extends Datastore {
         roleKey.setPartitionId(partition);
         roleKey.setName(rolename);
 
-        return roleHandler.getByKeyWithDefault(roleKey, null).toBlocking().single();
+        return roleHandler.getNow(roleKey);
     }
 
     @Override
@@ -504,7 +939,7 @@ public class IgniteDatastore extends Datastore {
     @Override
     public Session readSession(Serializable clientId) throws UnknownSessionException {
 
-        return clientHandler.getByKeyWithDefault((IotClientKey) clientId, null).toBlocking().single();
+        return clientHandler.getNow((IotClientKey) clientId);
 
     }
 
@@ -26,18 +26,22 @@ import com.caricah.iotracah.bootstrap.security.realm.state.IOTClient;
 import com.caricah.iotracah.core.worker.exceptions.DoesNotExistException;
 import org.apache.commons.configuration.Configuration;
 import org.apache.ignite.Ignite;
-import org.apache.ignite.IgniteAtomicSequence;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.cache.CacheAtomicityMode;
 import org.apache.ignite.cache.CacheMemoryMode;
 import org.apache.ignite.cache.CacheMode;
 import org.apache.ignite.cache.CacheWriteSynchronizationMode;
+import org.apache.ignite.cache.affinity.Affinity;
 import org.apache.ignite.cache.eviction.lru.LruEvictionPolicy;
+import org.apache.ignite.cache.query.ContinuousQuery;
 import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
 import org.apache.ignite.cache.query.SqlFieldsQuery;
 import org.apache.ignite.cache.query.SqlQuery;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
+import org.apache.ignite.cluster.ClusterNode;
 import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.lang.IgniteFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
@@ -45,6 +49,8 @@ import rx.Scheduler;
 import rx.schedulers.Schedulers;
 
 import javax.cache.Cache.Entry;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -52,11 +58,16 @@ import javax.sql.DataSource;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -69,7 +80,13 @@ public abstract class AbstractHandler<K, T> implements Serializable {
     private String cacheName;
     private IgniteCache<K, T> datastoreCache;
 
-    private IgniteAtomicSequence idSequence;
+    private transient Affinity<K> affinity;
+
+    private transient ClusterNode localNode;
+
+    private transient IdGenerationService idGenerationService;
+
+    private transient IdGenerator idGenerator;
 
     private Scheduler scheduler;
 
@@ -79,6 +96,8 @@ public abstract class AbstractHandler<K, T> implements Serializable {
 
     private boolean persistanceEnabled;
 
+    private transient QueryCursor<Entry<K, T>> continuousQueryCursor;
+
 
     public String getCacheName() {
         return cacheName;
@@ -106,12 +125,36 @@ public abstract class AbstractHandler<K, T> implements Serializable {
         this.datastoreCache = datastoreCache;
     }
 
-    public IgniteAtomicSequence getIdSequence() {
-        return idSequence;
+    public Affinity<K> getAffinity() {
+        return affinity;
+    }
+
+    public void setAffinity(Affinity<K> affinity) {
+        this.affinity = affinity;
+    }
+
+    public ClusterNode getLocalNode() {
+        return localNode;
+    }
+
+    public void setLocalNode(ClusterNode localNode) {
+        this.localNode = localNode;
+    }
+
+    public IdGenerationService getIdGenerationService() {
+        return idGenerationService;
+    }
+
+    public void setIdGenerationService(IdGenerationService idGenerationService) {
+        this.idGenerationService = idGenerationService;
     }
 
-    public void setIdSequence(IgniteAtomicSequence idSequence) {
-        this.idSequence = idSequence;
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public void setIdGenerator(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
     }
 
     public Scheduler getScheduler() {
@@ -157,6 +200,10 @@ else
 
             setDatastoreCache(clientIgniteCache);
 
+            setAffinity(ignite.affinity(getCacheName()));
+
+            setLocalNode(ignite.cluster().localNode());
+
             classType = t;
 
             String nameOfSequence = getCacheName() + "-sequence";
@@ -194,93 +241,214 @@ else
 
     protected abstract CacheConfiguration<K,T> getCacheConfiguration(boolean persistanceEnabled, DataSource ds);
 
+    /**
+     * <code>listenForUpdates</code> allows a handler to maintain a node local view of its cache.
+     * All the existing entries are first passed to the onSaved consumer after which
+     * every entry saved or removed anywhere in the cluster is propagated to this node.
+     *
+     * @param onSaved   callback for new or updated entries
+     * @param onRemoved callback for removed or expired entries
+     */
+    protected void listenForUpdates(Consumer<T> onSaved, Consumer<T> onRemoved) {
+        listenForUpdates(onSaved, onRemoved, true);
+    }
+
+    /**
+     * <code>listenForUpdates</code> propagates every entry saved or removed anywhere
+     * in the cluster to this node.
+     *
+     * @param onSaved         callback for new or updated entries
+     * @param onRemoved       callback for removed or expired entries
+     * @param includeExisting true if the existing entries are first passed to the onSaved consumer
+     */
+    protected void listenForUpdates(Consumer<T> onSaved, Consumer<T> onRemoved, boolean includeExisting) {
+
+        ContinuousQuery<K, T> continuousQuery = new ContinuousQuery<>();
+        if (includeExisting) {
+            continuousQuery.setInitialQuery(new ScanQuery<>());
+        }
+        continuousQuery.setLocalListener(events -> {
+
+            for (CacheEntryEvent<? extends K, ? extends T> event : events) {
+
+                if (EventType.REMOVED.equals(event.getEventType()) || EventType.EXPIRED.equals(event.getEventType())) {
+
+                    T item = Objects.nonNull(event.getOldValue()) ? event.getOldValue() : event.getValue();
+                    if (Objects.nonNull(item)) {
+                        onRemoved.accept(item);
+                    }
+
+                } else if (Objects.nonNull(event.getValue())) {
+                    onSaved.accept(event.getValue());
+                }
+            }
+        });
+
+        continuousQueryCursor = getDatastoreCache().query(continuousQuery);
+
+        if (includeExisting) {
+            for (Entry<K, T> entry : continuousQueryCursor) {
+                onSaved.accept(entry.getValue());
+            }
+        }
+
+        log.debug(" listenForUpdates : local view is now in sync with cache {}", getCacheName());
+    }
+
+    public void terminate() {
+
+        if (Objects.nonNull(continuousQueryCursor)) {
+            continuousQueryCursor.close();
+        }
+    }
+
     public void initializeSequence(String nameOfSequence, Ignite ignite) {
 
         long currentTime = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
-        IgniteAtomicSequence idSequence = ignite.atomicSequence(nameOfSequence, currentTime, true);
-        setIdSequence(idSequence);
+        setIdGenerator(getIdGenerationService().create(ignite, nameOfSequence, currentTime));
     }
 
-    public Observable<T> getByKey(K key) {
+    /**
+     * <code>async</code> runs an operation on the asynchronous view of a cache
+     * and emits its result once Ignite completes it, no thread waits in between.
+     * The operation is only dispatched when the observable is subscribed to and
+     * the result is emitted on the handler's scheduler.
+     *
+     * @param cache     to run the operation on
+     * @param operation invoking exactly one cache method on the asynchronous cache supplied
+     * @return the result of the operation
+     */
+    protected <KC, VC, R> Observable<R> async(IgniteCache<KC, VC> cache, Consumer<IgniteCache<KC, VC>> operation) {
 
-        return Observable.create(observer -> {
+        return Observable.<R>create(observer -> {
 
+            try {
 
-                try {
-                    // do work on separate thread
-                    T actualResult = getDatastoreCache().get(key);
+                IgniteCache<KC, VC> asyncCache = cache.withAsync();
+                operation.accept(asyncCache);
 
-                    if (Objects.nonNull(actualResult)) {
-                        observer.onNext(actualResult);
+                IgniteFuture<R> future = asyncCache.future();
+                future.listen(completedFuture -> {
+                    try {
+                        observer.onNext(completedFuture.get());
                         observer.onCompleted();
-                    } else {
-                        observer.onError(new DoesNotExistException(String.format("%s with key [%s] does not exist.", classType, key)));
+                    } catch (Exception e) {
+                        observer.onError(e);
                     }
+                });
 
-                } catch (Exception e) {
-                    observer.onError(e);
-                }
+            } catch (Exception e) {
+                observer.onError(e);
+            }
 
-        });
+        }).observeOn(getScheduler());
+    }
 
+    protected <R> Observable<R> async(Consumer<IgniteCache<K, T>> operation) {
+        return async(getDatastoreCache(), operation);
     }
 
+    public Observable<T> getByKey(K key) {
 
-    public Observable<T> getBySet(Set<K> keys) {
+        return this.<T>async(cache -> cache.get(key)).flatMap(actualResult -> {
 
-        return Observable.create(observer -> {
+            if (Objects.nonNull(actualResult)) {
+                return Observable.just(actualResult);
+            } else {
+                return Observable.<T>error(new DoesNotExistException(String.format("%s with key [%s] does not exist.", classType, key)));
+            }
+        });
 
+    }
 
-                try {
 
-                    keys.forEach(
+    public Observable<T> getBySet(Set<K> keys) {
 
-                            key -> {
+        return getAllAsync(keys).flatMapIterable(Map::values);
 
-                                T item = getDatastoreCache().get(key);
+    }
 
-                                    if (Objects.nonNull(item))
-                                        observer.onNext(item);
+    /**
+     * <code>getAllAsync</code> reads a set of keys in bulk like <code>getAll</code>
+     * without waiting on the nodes owning them.
+     *
+     * @param keys to obtain
+     * @return map of the keys found to their values, missing keys are omitted.
+     */
+    public Observable<Map<K, T>> getAllAsync(Set<K> keys) {
 
+        return Observable.defer(() -> {
 
-                            }
-                    );
+            if (keys.isEmpty()) {
+                return Observable.<Map<K, T>>just(new HashMap<>());
+            }
 
+            Map<ClusterNode, Collection<K>> keysByNode = getAffinity().mapKeysToNodes(keys);
 
-                    observer.onCompleted();
+            return Observable.from(keysByNode.values())
+                    .flatMap(nodeKeys -> this.<Map<K, T>>async(cache -> cache.getAll(new HashSet<>(nodeKeys))))
+                    .<Map<K, T>>reduce(new HashMap<>(), (results, nodeResults) -> {
+                        results.putAll(nodeResults);
+                        return results;
+                    });
+        });
+    }
 
-                } catch (Exception e) {
-                    observer.onError(e);
-                }
+    /**
+     * <code>getAll</code> reads a set of keys in bulk.
+     * The keys are grouped by the node that is primary for them and a single
+     * asynchronous getAll is dispatched to each of those nodes in parallel,
+     * so the cost is one round trip per owning node instead of one per key.
+     *
+     * @param keys to obtain
+     * @return map of the keys found to their values, missing keys are omitted.
+     */
+    public Map<K, T> getAll(Set<K> keys) {
+
+        Map<K, T> results = new HashMap<>();
+
+        if (keys.isEmpty()) {
+            return results;
+        }
 
-            });
+        Map<ClusterNode, Collection<K>> keysByNode = getAffinity().mapKeysToNodes(keys);
 
+        if (keysByNode.size() < 2) {
+            results.putAll(getDatastoreCache().getAll(keys));
+            return results;
+        }
 
-    }
+        IgniteCache<K, T> asyncCache = getDatastoreCache().withAsync();
 
+        List<IgniteFuture<Map<K, T>>> futures = new ArrayList<>(keysByNode.size());
 
-    public Observable<T> getByKeyWithDefault(K key, T defaultValue) {
+        for (Collection<K> nodeKeys : keysByNode.values()) {
+            asyncCache.getAll(new HashSet<>(nodeKeys));
+            futures.add(asyncCache.future());
+        }
 
-        return Observable.create(observer -> {
+        for (IgniteFuture<Map<K, T>> future : futures) {
+            results.putAll(future.get());
+        }
 
+        return results;
+    }
 
-                try {
-                    // do work on separate thread
-
-                    T value = getDatastoreCache().get(key);
-                    // callback with value only if not null
-                    if (null != value) {
-                        observer.onNext(value);
-                    } else {
-                        observer.onNext(defaultValue);
-                    }
-                    observer.onCompleted();
 
-                } catch (Exception e) {
-                    observer.onError(e);
-                }
+    /**
+     * <code>getNow</code> reads a value on the calling thread. It is only meant for
+     * callers that have to answer synchronously such as the security realm.
+     *
+     * @param key
+     * @return the value or null if there is none.
+     */
+    public T getNow(K key) {
+        return getDatastoreCache().get(key);
+    }
 
-        });
+    public Observable<T> getByKeyWithDefault(K key, T defaultValue) {
+
+        return this.<T>async(cache -> cache.get(key)).map(value -> null != value ? value : defaultValue);
 
     }
 
@@ -312,6 +480,51 @@ else
 
     }
 
+    /**
+     * <code>getLocalByQuery</code> runs a query against the entries held on this node.
+     * Backup copies are returned too, so a page comes back as large as the query asked for
+     * and callers paging through the results see every row. Work meant to be done once
+     * per entry is limited with <code>isLocalPrimary</code>.
+     *
+     * @param t
+     * @param query
+     * @param params
+     * @return the matching entries held on this node
+     */
+    public Observable<T> getLocalByQuery(Class<T> t, String query, Object[] params) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                SqlQuery<K, T> sql = new SqlQuery<>(t, query);
+                sql.setArgs(params);
+                sql.setLocal(true);
+
+                try (QueryCursor<Entry<K, T>> queryResult = getDatastoreCache().query(sql)) {
+
+                    for (Entry<K, T> entry : queryResult) {
+                        observer.onNext(entry.getValue());
+                    }
+                }
+
+                observer.onCompleted();
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+
+        });
+
+    }
+
+    /**
+     * @param item
+     * @return true if this node is the primary owner of the item.
+     */
+    public boolean isLocalPrimary(T item) {
+        return getAffinity().isPrimary(getLocalNode(), keyFromModel(item));
+    }
+
     public <L extends Serializable> Observable<L> getByQueryAsValue(Class<L> l, String query, Object[] params) {
 
         return Observable.create(observer -> {
@@ -363,12 +576,24 @@ else
         removeByKey(keyFromModel(item));
     }
 
-    protected void removeByKey(K item) {
+    /**
+     * <code>removeIfPresent</code> removes an item and reports whether this call removed it,
+     * so callers racing on the same item can tell which one actually did.
+     *
+     * @param item
+     * @return true if an entry was removed.
+     */
+    public boolean removeIfPresent(T item) {
+        return removeByKey(keyFromModel(item));
+    }
+
+    protected boolean removeByKey(K item) {
 
         try {
-            getDatastoreCache().remove(item);
+            return getDatastoreCache().remove(item);
         } catch (Exception e) {
             log.error(" remove : problem while removing item ", e);
+            return false;
         }
 
     }
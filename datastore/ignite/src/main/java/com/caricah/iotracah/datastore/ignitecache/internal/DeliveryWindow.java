@@ -0,0 +1,150 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.core.worker.state.DeliveryAdmission;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <code>DeliveryWindow</code> holds the ids of the outbound messages of a session
+ * that have been sent and await acknowledgement together with the queue of
+ * messages waiting for room in the window.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class DeliveryWindow implements Serializable {
+
+    private static final long serialVersionUID = 0L;
+
+    public static final int NO_MESSAGE_ID = 0;
+
+    private final Set<Integer> inFlightMessageIds = new LinkedHashSet<>();
+
+    private final Deque<Integer> pendingMessageIds = new ArrayDeque<>();
+
+    private transient int droppedMessageId = NO_MESSAGE_ID;
+
+    /**
+     * <code>admit</code> places a message in the window, queueing it behind
+     * any message already pending so that delivery order is kept.
+     *
+     * @param messageId
+     * @param inFlightLimit
+     * @param pendingLimit
+     * @param overflowPolicy
+     * @return where the message was placed, see {@link #getDroppedMessageId()} for any message discarded
+     */
+    public DeliveryAdmission admit(int messageId, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy) {
+
+        droppedMessageId = NO_MESSAGE_ID;
+
+        if (inFlightMessageIds.contains(messageId)) {
+            return DeliveryAdmission.IN_FLIGHT;
+        }
+
+        if (pendingMessageIds.contains(messageId)) {
+            return DeliveryAdmission.PENDING;
+        }
+
+        if (inFlightMessageIds.size() < inFlightLimit && pendingMessageIds.isEmpty()) {
+            inFlightMessageIds.add(messageId);
+            return DeliveryAdmission.IN_FLIGHT;
+        }
+
+        if (pendingMessageIds.size() < pendingLimit) {
+            pendingMessageIds.addLast(messageId);
+            return DeliveryAdmission.PENDING;
+        }
+
+        if (OverflowPolicy.DROP_OLDEST.equals(overflowPolicy) && !pendingMessageIds.isEmpty()) {
+            droppedMessageId = pendingMessageIds.pollFirst();
+            pendingMessageIds.addLast(messageId);
+            return DeliveryAdmission.PENDING;
+        }
+
+        droppedMessageId = messageId;
+        return DeliveryAdmission.REJECTED;
+    }
+
+    /**
+     * @return the id of the message discarded by the last admission or {@link #NO_MESSAGE_ID}.
+     */
+    public int getDroppedMessageId() {
+        return droppedMessageId;
+    }
+
+    /**
+     * <code>remove</code> takes a message out of the window once it is acknowledged or deleted.
+     *
+     * @param messageId
+     */
+    public void remove(int messageId) {
+
+        if (!inFlightMessageIds.remove(messageId)) {
+            pendingMessageIds.remove(messageId);
+        }
+    }
+
+    /**
+     * <code>promote</code> moves pending messages in flight while the window has room.
+     *
+     * @param inFlightLimit
+     * @return ids of the promoted messages in queue order
+     */
+    public List<Integer> promote(int inFlightLimit) {
+
+        List<Integer> promotedMessageIds = new ArrayList<>();
+
+        while (inFlightMessageIds.size() < inFlightLimit && !pendingMessageIds.isEmpty()) {
+
+            Integer messageId = pendingMessageIds.pollFirst();
+            inFlightMessageIds.add(messageId);
+            promotedMessageIds.add(messageId);
+        }
+
+        return promotedMessageIds;
+    }
+
+    public Set<Integer> getPendingMessageIds() {
+        return new LinkedHashSet<>(pendingMessageIds);
+    }
+
+    public boolean isEmpty() {
+        return inFlightMessageIds.isEmpty() && pendingMessageIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '['
+                + "inFlight=" + inFlightMessageIds.size() + ","
+                + "pending=" + pendingMessageIds.size() + ","
+                + ']';
+    }
+}
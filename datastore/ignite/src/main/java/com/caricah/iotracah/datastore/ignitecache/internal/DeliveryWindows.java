@@ -0,0 +1,219 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.core.worker.state.DeliveryAdmission;
+import com.caricah.iotracah.core.worker.state.OverflowPolicy;
+import org.apache.commons.configuration.Configuration;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.lang.IgniteFuture;
+
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <code>DeliveryWindows</code> keeps the {@link DeliveryWindow} of every session in the cluster.
+ * Windows are only changed through entry processors run on the node owning them
+ * so that publishers and acknowledgements arriving on different nodes see one window.
+ * A window left with nothing in flight or pending is removed.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class DeliveryWindows {
+
+    public static final String CONFIG_IGNITECACHE_DELIVERY_WINDOW_CACHE_NAME = "config.ignitecache.delivery.window.cache.name";
+    public static final String CONFIG_IGNITECACHE_DELIVERY_WINDOW_CACHE_NAME_VALUE_DEFAULT = "iotracah_delivery_window_cache";
+
+    private String cacheName;
+
+    private IgniteCache<String, DeliveryWindow> deliveryWindowCache;
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public void setCacheName(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    public void configure(Configuration configuration) {
+
+        String cacheName = configuration.getString(CONFIG_IGNITECACHE_DELIVERY_WINDOW_CACHE_NAME, CONFIG_IGNITECACHE_DELIVERY_WINDOW_CACHE_NAME_VALUE_DEFAULT);
+        setCacheName(cacheName);
+    }
+
+    public void initiate(Ignite ignite) {
+
+        CacheConfiguration<String, DeliveryWindow> cacheConfiguration = new CacheConfiguration<>(getCacheName());
+        cacheConfiguration.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+        cacheConfiguration.setCacheMode(CacheMode.PARTITIONED);
+
+        deliveryWindowCache = ignite.getOrCreateCache(cacheConfiguration);
+    }
+
+    /**
+     * @param sessionId
+     * @param messageId
+     * @param inFlightLimit
+     * @param pendingLimit
+     * @param overflowPolicy
+     * @return the admission of the message paired with the id of any message discarded to make it
+     */
+    public Map.Entry<DeliveryAdmission, Integer> admit(String sessionId, int messageId, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy) {
+        return deliveryWindowCache.invoke(sessionId, new AdmitProcessor(messageId, inFlightLimit, pendingLimit, overflowPolicy));
+    }
+
+    /**
+     * <code>admitAsync</code> admits a message like <code>admit</code> without
+     * waiting on the node owning the window.
+     *
+     * @return the future admission of the message paired with the id of any message discarded to make it
+     */
+    public IgniteFuture<Map.Entry<DeliveryAdmission, Integer>> admitAsync(String sessionId, int messageId, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy) {
+
+        IgniteCache<String, DeliveryWindow> asyncCache = deliveryWindowCache.withAsync();
+        asyncCache.invoke(sessionId, new AdmitProcessor(messageId, inFlightLimit, pendingLimit, overflowPolicy));
+        return asyncCache.future();
+    }
+
+    public void remove(String sessionId, int messageId) {
+        deliveryWindowCache.invoke(sessionId, new RemoveProcessor(messageId));
+    }
+
+    public List<Integer> promote(String sessionId, int inFlightLimit) {
+        return deliveryWindowCache.invoke(sessionId, new PromoteProcessor(inFlightLimit));
+    }
+
+    public Set<Integer> getPendingMessageIds(String sessionId) {
+
+        DeliveryWindow deliveryWindow = deliveryWindowCache.get(sessionId);
+        return Objects.isNull(deliveryWindow) ? Collections.emptySet() : deliveryWindow.getPendingMessageIds();
+    }
+
+    private static final class AdmitProcessor
+            implements EntryProcessor<String, DeliveryWindow, Map.Entry<DeliveryAdmission, Integer>>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int messageId;
+
+        private final int inFlightLimit;
+
+        private final int pendingLimit;
+
+        private final OverflowPolicy overflowPolicy;
+
+        private AdmitProcessor(int messageId, int inFlightLimit, int pendingLimit, OverflowPolicy overflowPolicy) {
+            this.messageId = messageId;
+            this.inFlightLimit = inFlightLimit;
+            this.pendingLimit = pendingLimit;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public Map.Entry<DeliveryAdmission, Integer> process(MutableEntry<String, DeliveryWindow> entry, Object... arguments) {
+
+            DeliveryWindow deliveryWindow = entry.exists() ? entry.getValue() : new DeliveryWindow();
+
+            DeliveryAdmission deliveryAdmission = deliveryWindow.admit(messageId, inFlightLimit, pendingLimit, overflowPolicy);
+
+            if (deliveryWindow.isEmpty()) {
+                entry.remove();
+            } else {
+                entry.setValue(deliveryWindow);
+            }
+
+            return new AbstractMap.SimpleEntry<>(deliveryAdmission, deliveryWindow.getDroppedMessageId());
+        }
+    }
+
+    private static final class RemoveProcessor
+            implements EntryProcessor<String, DeliveryWindow, Void>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int messageId;
+
+        private RemoveProcessor(int messageId) {
+            this.messageId = messageId;
+        }
+
+        @Override
+        public Void process(MutableEntry<String, DeliveryWindow> entry, Object... arguments) {
+
+            if (!entry.exists()) {
+                return null;
+            }
+
+            DeliveryWindow deliveryWindow = entry.getValue();
+            deliveryWindow.remove(messageId);
+
+            if (deliveryWindow.isEmpty()) {
+                entry.remove();
+            } else {
+                entry.setValue(deliveryWindow);
+            }
+
+            return null;
+        }
+    }
+
+    private static final class PromoteProcessor
+            implements EntryProcessor<String, DeliveryWindow, List<Integer>>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int inFlightLimit;
+
+        private PromoteProcessor(int inFlightLimit) {
+            this.inFlightLimit = inFlightLimit;
+        }
+
+        @Override
+        public List<Integer> process(MutableEntry<String, DeliveryWindow> entry, Object... arguments) {
+
+            if (!entry.exists()) {
+                return Collections.emptyList();
+            }
+
+            DeliveryWindow deliveryWindow = entry.getValue();
+            List<Integer> promotedMessageIds = deliveryWindow.promote(inFlightLimit);
+
+            if (!promotedMessageIds.isEmpty()) {
+                entry.setValue(deliveryWindow);
+            }
+
+            return promotedMessageIds;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteAtomicSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <code>IdGenerationService</code> creates the {@link IdGenerator} of every
+ * datastore sequence and leases their id blocks on a thread of its own,
+ * away from the threads serving requests.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class IdGenerationService {
+
+    public static final String CONFIG_IGNITECACHE_ID_BLOCK_SIZE = "config.ignitecache.id.block.size";
+    public static final int CONFIG_IGNITECACHE_ID_BLOCK_SIZE_VALUE_DEFAULT = 10000;
+
+    public static final String CONFIG_IGNITECACHE_ID_BLOCK_REFILL_PERCENTAGE = "config.ignitecache.id.block.refill.percentage";
+    public static final int CONFIG_IGNITECACHE_ID_BLOCK_REFILL_PERCENTAGE_VALUE_DEFAULT = 25;
+
+    private static final Logger log = LoggerFactory.getLogger(IdGenerationService.class);
+
+    private final ConcurrentMap<String, IdGenerator> idGenerators = new ConcurrentHashMap<>();
+
+    private int blockSize;
+
+    private int refillPercentage;
+
+    private ExecutorService refillExecutor;
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getRefillPercentage() {
+        return refillPercentage;
+    }
+
+    public void setRefillPercentage(int refillPercentage) {
+        this.refillPercentage = refillPercentage;
+    }
+
+    public void configure(Configuration configuration) {
+
+        int blockSize = configuration.getInt(CONFIG_IGNITECACHE_ID_BLOCK_SIZE, CONFIG_IGNITECACHE_ID_BLOCK_SIZE_VALUE_DEFAULT);
+        setBlockSize(Math.max(1, blockSize));
+
+        int refillPercentage = configuration.getInt(CONFIG_IGNITECACHE_ID_BLOCK_REFILL_PERCENTAGE, CONFIG_IGNITECACHE_ID_BLOCK_REFILL_PERCENTAGE_VALUE_DEFAULT);
+        setRefillPercentage(Math.min(100, Math.max(0, refillPercentage)));
+    }
+
+    public void initiate() {
+
+        refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "iotracah-id-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <code>create</code> obtains the generator for a sequence, creating the
+     * sequence with the initial value if it does not exist in the cluster yet.
+     *
+     * @param ignite
+     * @param nameOfSequence
+     * @param initialValue
+     * @return the id generator of the sequence
+     */
+    public IdGenerator create(Ignite ignite, String nameOfSequence, long initialValue) {
+
+        return idGenerators.computeIfAbsent(nameOfSequence, name -> {
+
+            IgniteAtomicSequence idSequence = ignite.atomicSequence(name, initialValue, true);
+
+            int refillThreshold = (int) ((long) getBlockSize() * getRefillPercentage() / 100);
+
+            return new IdGenerator(name, idSequence, getBlockSize(), refillThreshold, refillExecutor);
+        });
+    }
+
+    /**
+     * <code>createOrdered</code> obtains a generator whose ids follow the order
+     * they are handed out in across the cluster, for entities read back in id order.
+     * Every call reaches the cluster as no block is leased.
+     *
+     * @param ignite
+     * @param nameOfSequence
+     * @param initialValue
+     * @return the ordered id generator of the sequence
+     */
+    public IdGenerator createOrdered(Ignite ignite, String nameOfSequence, long initialValue) {
+
+        return idGenerators.computeIfAbsent(nameOfSequence,
+                name -> new IdGenerator(name, ignite.atomicLong(name, initialValue, true)));
+    }
+
+    /**
+     * @return the generators created so far, for their refill metrics.
+     */
+    public Collection<IdGenerator> getIdGenerators() {
+        return Collections.unmodifiableCollection(idGenerators.values());
+    }
+
+    public void terminate() {
+
+        for (IdGenerator idGenerator : idGenerators.values()) {
+            log.info(" terminate : {}", idGenerator);
+        }
+
+        if (Objects.nonNull(refillExecutor)) {
+            refillExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import org.apache.ignite.IgniteAtomicLong;
+import org.apache.ignite.IgniteAtomicSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <code>IdGenerator</code> hands out ids of one entity type from blocks leased
+ * off a cluster wide sequence. Ids are claimed from the current block without
+ * locking and the next block is leased in the background once the current one
+ * runs low, so the cluster is only reached once per block.
+ *
+ * Ids are unique across the cluster, though nodes working from different
+ * blocks at the same time do not hand them out in a single increasing order.
+ * Entities whose ids have to follow the order they were created in use an
+ * ordered generator, which reserves every range straight off a cluster wide
+ * atomic long instead of leasing blocks.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class IdGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGenerator.class);
+
+    private final String name;
+
+    private final IgniteAtomicSequence sequence;
+
+    private final IgniteAtomicLong orderedSequence;
+
+    private final int blockSize;
+
+    private final int refillThreshold;
+
+    private final Executor refillExecutor;
+
+    private final AtomicReference<IdBlock> currentBlock = new AtomicReference<>();
+
+    private final AtomicReference<IdBlock> nextBlock = new AtomicReference<>();
+
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+
+    private final AtomicLong leasedBlocks = new AtomicLong();
+
+    private final AtomicLong backgroundRefills = new AtomicLong();
+
+    private final AtomicLong blockingRefills = new AtomicLong();
+
+    private final AtomicLong failedRefills = new AtomicLong();
+
+    private volatile long lastLeaseDurationNanos;
+
+    public IdGenerator(String name, IgniteAtomicSequence sequence, int blockSize, int refillThreshold, Executor refillExecutor) {
+        this.name = name;
+        this.sequence = sequence;
+        this.orderedSequence = null;
+        this.blockSize = blockSize;
+        this.refillThreshold = refillThreshold;
+        this.refillExecutor = refillExecutor;
+
+        currentBlock.set(lease(blockSize));
+    }
+
+    /**
+     * Creates an ordered generator, every id handed out is larger than
+     * those handed out before it anywhere in the cluster.
+     *
+     * @param name
+     * @param orderedSequence
+     */
+    public IdGenerator(String name, IgniteAtomicLong orderedSequence) {
+        this.name = name;
+        this.sequence = null;
+        this.orderedSequence = orderedSequence;
+        this.blockSize = 0;
+        this.refillThreshold = 0;
+        this.refillExecutor = null;
+    }
+
+    public boolean isOrdered() {
+        return Objects.nonNull(orderedSequence);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the next id.
+     */
+    public long next() {
+        return next(1);
+    }
+
+    /**
+     * <code>next</code> claims a contiguous range of ids.
+     *
+     * @param count how many ids are needed
+     * @return the first id of the range
+     */
+    public long next(int count) {
+
+        if (isOrdered()) {
+            return lease(count).getStart();
+        }
+
+        //Ranges larger than a block are leased on their own.
+        if (count > blockSize) {
+            blockingRefills.incrementAndGet();
+            return lease(count).getStart();
+        }
+
+        while (true) {
+
+            IdBlock block = currentBlock.get();
+
+            long firstId = block.claim(count);
+            if (firstId != IdBlock.EXHAUSTED) {
+
+                if (block.remaining() <= refillThreshold) {
+                    scheduleRefill();
+                }
+
+                return firstId;
+            }
+
+            switchBlock(block);
+        }
+    }
+
+    private void switchBlock(IdBlock exhaustedBlock) {
+
+        IdBlock replacementBlock = nextBlock.getAndSet(null);
+
+        if (Objects.isNull(replacementBlock)) {
+
+            //The background refill did not keep up so this caller waits for the lease.
+            blockingRefills.incrementAndGet();
+            replacementBlock = lease(blockSize);
+        }
+
+        if (!currentBlock.compareAndSet(exhaustedBlock, replacementBlock)) {
+
+            //Another caller moved on first, the block is kept for the next switch.
+            nextBlock.compareAndSet(null, replacementBlock);
+        }
+    }
+
+    private void scheduleRefill() {
+
+        if (Objects.nonNull(nextBlock.get()) || !refillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+
+            refillExecutor.execute(() -> {
+
+                try {
+
+                    if (Objects.isNull(nextBlock.get())) {
+                        nextBlock.compareAndSet(null, lease(blockSize));
+                        backgroundRefills.incrementAndGet();
+                    }
+
+                } catch (Exception e) {
+                    failedRefills.incrementAndGet();
+                    log.error(" scheduleRefill : problems leasing ids for {}", name, e);
+                } finally {
+                    refillScheduled.set(false);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            refillScheduled.set(false);
+            log.warn(" scheduleRefill : ids for {} will be leased when needed", name);
+        }
+    }
+
+    private IdBlock lease(int size) {
+
+        long startTime = System.nanoTime();
+
+        long firstId = (isOrdered() ? orderedSequence.getAndAdd(size) : sequence.getAndAdd(size)) + 1;
+
+        lastLeaseDurationNanos = System.nanoTime() - startTime;
+        leasedBlocks.incrementAndGet();
+
+        log.debug(" lease : leased ids [{}, {}] for {} in {} ms", firstId, firstId + size - 1, name,
+                TimeUnit.NANOSECONDS.toMillis(lastLeaseDurationNanos));
+
+        return new IdBlock(firstId, firstId + size - 1);
+    }
+
+    /**
+     * @return how many blocks have been leased from the cluster.
+     */
+    public long getLeasedBlocks() {
+        return leasedBlocks.get();
+    }
+
+    /**
+     * @return how many blocks were leased in the background before they were needed.
+     */
+    public long getBackgroundRefills() {
+        return backgroundRefills.get();
+    }
+
+    /**
+     * @return how many times a caller had to wait for a block to be leased.
+     */
+    public long getBlockingRefills() {
+        return blockingRefills.get();
+    }
+
+    /**
+     * @return how many background leases failed.
+     */
+    public long getFailedRefills() {
+        return failedRefills.get();
+    }
+
+    /**
+     * @return how long the most recent lease took in milliseconds.
+     */
+    public long getLastLeaseDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLeaseDurationNanos);
+    }
+
+    /**
+     * @return ids left in the current block.
+     */
+    public long getRemaining() {
+
+        IdBlock block = currentBlock.get();
+        return Objects.isNull(block) ? 0 : Math.max(0, block.remaining());
+    }
+
+    @Override
+    public String toString() {
+        return "IdGenerator [name=" + name +
+                ", ordered=" + isOrdered() +
+                ", leasedBlocks=" + getLeasedBlocks() +
+                ", backgroundRefills=" + getBackgroundRefills() +
+                ", blockingRefills=" + getBlockingRefills() +
+                ", failedRefills=" + getFailedRefills() +
+                ", lastLeaseDuration=" + getLastLeaseDuration() +
+                ", remaining=" + getRemaining() +
+                "]";
+    }
+
+    /**
+     * A range of ids owned by this node.
+     */
+    private static final class IdBlock {
+
+        private static final long EXHAUSTED = -1;
+
+        private final long start;
+
+        private final long end;
+
+        private final AtomicLong nextId;
+
+        private IdBlock(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.nextId = new AtomicLong(start);
+        }
+
+        private long getStart() {
+            return start;
+        }
+
+        private long claim(int count) {
+
+            long firstId = nextId.getAndAdd(count);
+            return firstId + count - 1 <= end ? firstId : EXHAUSTED;
+        }
+
+        private long remaining() {
+            return end - nextId.get() + 1;
+        }
+    }
+}
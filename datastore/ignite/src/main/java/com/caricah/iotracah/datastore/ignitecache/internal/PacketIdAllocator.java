@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * <code>PacketIdAllocator</code> hands out the 16 bit packet identifiers of a session.
+ * Identifiers in use are tracked in a bitmap and allocation continues from the last
+ * identifier handed out, wrapping round to 1, so a released identifier is only
+ * reused once the rest of the identifier space has been cycled through.
+ * An identifier in use is never handed out again until it is released.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class PacketIdAllocator implements Serializable {
+
+    private static final long serialVersionUID = 0L;
+
+    public static final int MINIMUM_PACKET_ID = 1;
+
+    public static final int MAXIMUM_PACKET_ID = PublishMessage.MAXIMUM_MESSAGE_ID;
+
+    public static final int NO_PACKET_ID = PublishMessage.ID_WHEN_NONE_IS_FREE;
+
+    private final BitSet packetIdsInUse = new BitSet(MAXIMUM_PACKET_ID + 1);
+
+    private int lastPacketId;
+
+    /**
+     * <code>allocate</code> obtains the next free packet identifier.
+     *
+     * @return packet identifier between 1 and 65535 or <code>NO_PACKET_ID</code> when every identifier is in use
+     */
+    public int allocate() {
+
+        int packetId = packetIdsInUse.nextClearBit(lastPacketId + 1);
+
+        if (packetId > MAXIMUM_PACKET_ID) {
+            packetId = packetIdsInUse.nextClearBit(MINIMUM_PACKET_ID);
+        }
+
+        if (packetId > MAXIMUM_PACKET_ID) {
+            return NO_PACKET_ID;
+        }
+
+        packetIdsInUse.set(packetId);
+        lastPacketId = packetId;
+
+        return packetId;
+    }
+
+    /**
+     * <code>release</code> frees a packet identifier once its message is acknowledged or dropped.
+     *
+     * @param packetId
+     */
+    public void release(int packetId) {
+
+        if (packetId >= MINIMUM_PACKET_ID && packetId <= MAXIMUM_PACKET_ID) {
+            packetIdsInUse.clear(packetId);
+        }
+    }
+
+    public int getPacketIdsInUse() {
+        return packetIdsInUse.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return packetIdsInUse.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '['
+                + "lastPacketId=" + lastPacketId + ","
+                + "packetIdsInUse=" + getPacketIdsInUse() + ","
+                + ']';
+    }
+}
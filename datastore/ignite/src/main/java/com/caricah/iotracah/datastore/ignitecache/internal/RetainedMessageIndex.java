@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.bootstrap.data.models.retained.IotMessageRetainedKey;
+import com.caricah.iotracah.core.worker.state.Constant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>RetainedMessageIndex</code> is the node local index of the topics
+ * holding retained messages in every partition. Each topic level is a node in the
+ * trie and nodes with a retained message hold the key to read it from the cache.
+ *
+ * A subscription filter, wildcards included, is resolved with one traversal
+ * that only visits the branches able to match it.
+ *
+ * Reads are lock free, mutations are serialized as they are rare compared to lookups.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class RetainedMessageIndex {
+
+    private static final String SYSTEM_TOPIC_PREFIX = "$";
+
+    private final ConcurrentMap<String, Node> partitionRoots = new ConcurrentHashMap<>();
+
+    /**
+     * Adds or replaces the reference to the message retained on a topic.
+     *
+     * @param partitionId
+     * @param topic
+     * @param retainedKey
+     */
+    public synchronized void put(String partitionId, String topic, IotMessageRetainedKey retainedKey) {
+
+        Node node = partitionRoots.computeIfAbsent(partitionId, partition -> new Node());
+
+        for (String level : topic.split(Constant.PATH_SEPARATOR)) {
+            node = node.children.computeIfAbsent(level, name -> new Node());
+        }
+
+        node.retainedKey = retainedKey;
+    }
+
+    /**
+     * Removes the reference to the message retained on a topic
+     * and prunes any branch that is left without retained messages.
+     *
+     * @param partitionId
+     * @param topic
+     */
+    public synchronized void remove(String partitionId, String topic) {
+
+        Node root = partitionRoots.get(partitionId);
+        if (Objects.isNull(root)) {
+            return;
+        }
+
+        String[] levels = topic.split(Constant.PATH_SEPARATOR);
+        List<Node> visitedNodes = new ArrayList<>(levels.length);
+
+        Node node = root;
+        for (String level : levels) {
+            visitedNodes.add(node);
+            node = node.children.get(level);
+            if (Objects.isNull(node)) {
+                return;
+            }
+        }
+
+        node.retainedKey = null;
+
+        //Prune from the leaf upwards.
+        for (int index = levels.length - 1; index >= 0 && node.isEmpty(); index--) {
+            Node parent = visitedNodes.get(index);
+            parent.children.remove(levels[index]);
+            node = parent;
+        }
+
+        if (root.isEmpty()) {
+            partitionRoots.remove(partitionId, root);
+        }
+    }
+
+    /**
+     * Obtains the keys of all the retained messages in the partition whose topics
+     * match the supplied subscription filter.
+     *
+     * @param partitionId
+     * @param topicFilterRoute the subscription filter broken down into its levels
+     * @return list of retained message keys
+     */
+    public List<IotMessageRetainedKey> match(String partitionId, List<String> topicFilterRoute) {
+
+        List<IotMessageRetainedKey> retainedKeys = new ArrayList<>();
+
+        Node root = partitionRoots.get(partitionId);
+        if (Objects.nonNull(root)) {
+            match(root, topicFilterRoute, 0, retainedKeys);
+        }
+
+        return retainedKeys;
+    }
+
+    private void match(Node node, List<String> topicFilterRoute, int index, List<IotMessageRetainedKey> retainedKeys) {
+
+        if (index == topicFilterRoute.size()) {
+
+            IotMessageRetainedKey retainedKey = node.retainedKey;
+            if (Objects.nonNull(retainedKey)) {
+                retainedKeys.add(retainedKey);
+            }
+            return;
+        }
+
+        String level = topicFilterRoute.get(index);
+
+        if (Constant.MULTI_LEVEL_WILDCARD.equals(level)) {
+
+            //A multi level wildcard matches its parent and any number of child levels.
+            collectAll(node, index == 0, retainedKeys);
+
+        } else if (Constant.SINGLE_LEVEL_WILDCARD.equals(level)) {
+
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+
+                if (index == 0 && child.getKey().startsWith(SYSTEM_TOPIC_PREFIX)) {
+                    continue;
+                }
+
+                match(child.getValue(), topicFilterRoute, index + 1, retainedKeys);
+            }
+
+        } else {
+
+            Node literalChild = node.children.get(level);
+            if (Objects.nonNull(literalChild)) {
+                match(literalChild, topicFilterRoute, index + 1, retainedKeys);
+            }
+        }
+    }
+
+    private void collectAll(Node node, boolean skipSystemTopics, List<IotMessageRetainedKey> retainedKeys) {
+
+        IotMessageRetainedKey retainedKey = node.retainedKey;
+        if (Objects.nonNull(retainedKey)) {
+            retainedKeys.add(retainedKey);
+        }
+
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+
+            //Wildcards at the first level do not match topics reserved for the server.
+            if (skipSystemTopics && child.getKey().startsWith(SYSTEM_TOPIC_PREFIX)) {
+                continue;
+            }
+
+            collectAll(child.getValue(), false, retainedKeys);
+        }
+    }
+
+    private static final class Node {
+
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+
+        private volatile IotMessageRetainedKey retainedKey;
+
+        private boolean isEmpty() {
+            return Objects.isNull(retainedKey) && children.isEmpty();
+        }
+    }
+}
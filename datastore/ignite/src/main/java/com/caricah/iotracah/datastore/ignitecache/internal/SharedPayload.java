@@ -0,0 +1,67 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import java.io.Serializable;
+
+/**
+ * <code>SharedPayload</code> holds the payload of a message fanned out to many
+ * subscribers. The payload is stored once and every stored copy of the message
+ * refers to it, the reference count dropping as each copy is acknowledged.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class SharedPayload implements Serializable {
+
+    private static final long serialVersionUID = 0L;
+
+    private final Object payload;
+
+    private int references;
+
+    public SharedPayload(Object payload, int references) {
+        this.payload = payload;
+        this.references = references;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public int getReferences() {
+        return references;
+    }
+
+    /**
+     * <code>release</code> drops one reference to the payload.
+     *
+     * @return true if no stored message refers to the payload any more.
+     */
+    public boolean release() {
+
+        if (references > 0) {
+            references--;
+        }
+
+        return references == 0;
+    }
+}
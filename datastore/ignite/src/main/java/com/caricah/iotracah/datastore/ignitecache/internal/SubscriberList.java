@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <code>SubscriberList</code> is an immutable and compact list of the
+ * clients subscribed to a single subscription filter together with the qos
+ * each one subscribed with and the share group, if any, it belongs to.
+ *
+ * Updates produce a new list so readers can iterate without any locking.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public final class SubscriberList {
+
+    public static final SubscriberList EMPTY = new SubscriberList(new String[0], new int[0], new String[0]);
+
+    private final String[] clientIds;
+
+    private final int[] qosLevels;
+
+    private final String[] shareGroups;
+
+    private SubscriberList(String[] clientIds, int[] qosLevels, String[] shareGroups) {
+        this.clientIds = clientIds;
+        this.qosLevels = qosLevels;
+        this.shareGroups = shareGroups;
+    }
+
+    public int size() {
+        return clientIds.length;
+    }
+
+    public boolean isEmpty() {
+        return clientIds.length == 0;
+    }
+
+    public String getClientId(int index) {
+        return clientIds[index];
+    }
+
+    public int getQos(int index) {
+        return qosLevels[index];
+    }
+
+    /**
+     * @param index
+     * @return the share group of the subscriber or null if its subscription is not shared.
+     */
+    public String getShareGroup(int index) {
+        return shareGroups[index];
+    }
+
+    private int indexOf(String clientId) {
+
+        for (int index = 0; index < clientIds.length; index++) {
+            if (clientIds[index].equals(clientId)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Obtains a list with the client added or its qos and share group updated.
+     *
+     * @param clientId
+     * @param qos
+     * @param shareGroup
+     * @return updated list
+     */
+    public SubscriberList with(String clientId, int qos, String shareGroup) {
+
+        int index = indexOf(clientId);
+
+        if (index >= 0) {
+
+            if (qosLevels[index] == qos && Objects.equals(shareGroups[index], shareGroup)) {
+                return this;
+            }
+
+            int[] updatedQosLevels = Arrays.copyOf(qosLevels, qosLevels.length);
+            String[] updatedShareGroups = Arrays.copyOf(shareGroups, shareGroups.length);
+            updatedQosLevels[index] = qos;
+            updatedShareGroups[index] = shareGroup;
+            return new SubscriberList(clientIds, updatedQosLevels, updatedShareGroups);
+        }
+
+        String[] updatedClientIds = Arrays.copyOf(clientIds, clientIds.length + 1);
+        int[] updatedQosLevels = Arrays.copyOf(qosLevels, qosLevels.length + 1);
+        String[] updatedShareGroups = Arrays.copyOf(shareGroups, shareGroups.length + 1);
+        updatedClientIds[clientIds.length] = clientId;
+        updatedQosLevels[qosLevels.length] = qos;
+        updatedShareGroups[shareGroups.length] = shareGroup;
+
+        return new SubscriberList(updatedClientIds, updatedQosLevels, updatedShareGroups);
+    }
+
+    /**
+     * Obtains a list without the supplied client.
+     *
+     * @param clientId
+     * @return updated list
+     */
+    public SubscriberList without(String clientId) {
+
+        int index = indexOf(clientId);
+
+        if (index < 0) {
+            return this;
+        }
+
+        if (clientIds.length == 1) {
+            return EMPTY;
+        }
+
+        String[] updatedClientIds = new String[clientIds.length - 1];
+        int[] updatedQosLevels = new int[qosLevels.length - 1];
+        String[] updatedShareGroups = new String[shareGroups.length - 1];
+
+        System.arraycopy(clientIds, 0, updatedClientIds, 0, index);
+        System.arraycopy(clientIds, index + 1, updatedClientIds, index, clientIds.length - index - 1);
+        System.arraycopy(qosLevels, 0, updatedQosLevels, 0, index);
+        System.arraycopy(qosLevels, index + 1, updatedQosLevels, index, qosLevels.length - index - 1);
+        System.arraycopy(shareGroups, 0, updatedShareGroups, 0, index);
+        System.arraycopy(shareGroups, index + 1, updatedShareGroups, index, shareGroups.length - index - 1);
+
+        return new SubscriberList(updatedClientIds, updatedQosLevels, updatedShareGroups);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '['
+                + "size=" + size() + ","
+                + ']';
+    }
+}
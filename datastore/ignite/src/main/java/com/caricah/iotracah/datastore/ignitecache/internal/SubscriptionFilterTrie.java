@@ -0,0 +1,386 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilter;
+import com.caricah.iotracah.core.worker.state.Constant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>SubscriptionFilterTrie</code> is the node local view of all the subscription
+ * filters in every partition. Each level of a topic filter is a node in the trie
+ * with literal, single level wildcard and multi level wildcard children.
+ *
+ * Matching a topic walks only the branches that can match it,
+ * so the cost is bounded by the topic depth and the number of matching
+ * wildcard branches rather than by all the possible wildcard permutations.
+ *
+ * Match results are remembered per partition by topic id. A change to a filter only
+ * drops the remembered results of the topics that filter matches.
+ *
+ * Reads are lock free, mutations are serialized as they are rare compared to matches.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class SubscriptionFilterTrie {
+
+    private final ConcurrentMap<String, Node> partitionRoots = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, PartitionMatches> partitionMatches = new ConcurrentHashMap<>();
+
+    private int maximumCachedMatches;
+
+    public int getMaximumCachedMatches() {
+        return maximumCachedMatches;
+    }
+
+    public void setMaximumCachedMatches(int maximumCachedMatches) {
+        this.maximumCachedMatches = maximumCachedMatches;
+    }
+
+    /**
+     * Adds or replaces the subscription filter at the path described by its name.
+     *
+     * @param subscriptionFilter
+     */
+    public synchronized void put(IotSubscriptionFilter subscriptionFilter) {
+
+        Node node = partitionRoots.computeIfAbsent(subscriptionFilter.getPartitionId(), partition -> new Node());
+
+        for (String level : toLevels(subscriptionFilter.getName())) {
+            node = node.getOrCreateChild(level);
+        }
+
+        node.filter = subscriptionFilter;
+
+        invalidateMatches(subscriptionFilter);
+    }
+
+    /**
+     * Removes the subscription filter at the path described by its name
+     * and prunes any branch that is left without filters.
+     *
+     * @param subscriptionFilter
+     */
+    public synchronized void remove(IotSubscriptionFilter subscriptionFilter) {
+
+        Node root = partitionRoots.get(subscriptionFilter.getPartitionId());
+        if (Objects.isNull(root)) {
+            return;
+        }
+
+        List<Node> visitedNodes = new ArrayList<>();
+        List<String> levels = toLevels(subscriptionFilter.getName());
+
+        Node node = root;
+        for (String level : levels) {
+            visitedNodes.add(node);
+            node = node.getChild(level);
+            if (Objects.isNull(node)) {
+                return;
+            }
+        }
+
+        node.filter = null;
+
+        //Prune from the leaf upwards.
+        for (int index = levels.size() - 1; index >= 0 && node.isEmpty(); index--) {
+            Node parent = visitedNodes.get(index);
+            parent.removeChild(levels.get(index));
+            node = parent;
+        }
+
+        if (root.isEmpty()) {
+            partitionRoots.remove(subscriptionFilter.getPartitionId(), root);
+        }
+
+        invalidateMatches(subscriptionFilter);
+    }
+
+    /**
+     * Drops the remembered results of the topics the changed filter matches,
+     * the results of every other topic are unaffected by the change.
+     */
+    private void invalidateMatches(IotSubscriptionFilter subscriptionFilter) {
+
+        PartitionMatches cachedMatches = partitionMatches.get(subscriptionFilter.getPartitionId());
+        if (Objects.isNull(cachedMatches)) {
+            return;
+        }
+
+        cachedMatches.version++;
+
+        List<String> filterLevels = toLevels(subscriptionFilter.getName());
+        cachedMatches.matches.values().removeIf(cachedMatch -> isMatch(filterLevels, cachedMatch.topic.getRoute()));
+    }
+
+    private static boolean isMatch(List<String> filterLevels, List<String> topicNavigationRoute) {
+
+        for (int index = 0; index < filterLevels.size(); index++) {
+
+            String level = filterLevels.get(index);
+
+            //A multi level wildcard matches its parent and any number of child levels.
+            if (Constant.MULTI_LEVEL_WILDCARD.equals(level)) {
+                return true;
+            }
+
+            if (index == topicNavigationRoute.size()) {
+                return false;
+            }
+
+            if (!Constant.SINGLE_LEVEL_WILDCARD.equals(level) && !level.equals(topicNavigationRoute.get(index))) {
+                return false;
+            }
+        }
+
+        return filterLevels.size() == topicNavigationRoute.size();
+    }
+
+    /**
+     * Obtains all the subscription filters in the partition that match the supplied topic.
+     *
+     * @param partitionId
+     * @param topic the topic as found in the topic dictionary
+     * @return list of matching filters
+     */
+    public List<IotSubscriptionFilter> match(String partitionId, Topic topic) {
+
+        if (!topic.hasId()) {
+            return Collections.unmodifiableList(match(partitionId, topic.getRoute()));
+        }
+
+        PartitionMatches cachedMatches = partitionMatches.computeIfAbsent(partitionId, partition -> new PartitionMatches());
+
+        CachedMatch cachedMatch = cachedMatches.matches.get(topic.getId());
+        if (Objects.nonNull(cachedMatch)) {
+            return cachedMatch.filters;
+        }
+
+        //Read before matching so a change made meanwhile is noticed.
+        long version = cachedMatches.version;
+
+        List<IotSubscriptionFilter> matchingFilters = Collections.unmodifiableList(match(partitionId, topic.getRoute()));
+
+        if (cachedMatches.matches.size() < getMaximumCachedMatches()) {
+
+            cachedMatch = new CachedMatch(topic, matchingFilters);
+            cachedMatches.matches.put(topic.getId(), cachedMatch);
+
+            //The invalidation may have run before the put, so a late result is not kept as current.
+            if (version != cachedMatches.version) {
+                cachedMatches.matches.remove(topic.getId(), cachedMatch);
+            }
+        }
+
+        return matchingFilters;
+    }
+
+    /**
+     * Obtains all the subscription filters in the partition that match the supplied topic
+     * without consulting or updating the remembered results.
+     *
+     * @param partitionId
+     * @param topicNavigationRoute the topic broken down into its levels
+     * @return list of matching filters
+     */
+    public List<IotSubscriptionFilter> match(String partitionId, List<String> topicNavigationRoute) {
+
+        List<IotSubscriptionFilter> matchingFilters = new ArrayList<>();
+
+        Node root = partitionRoots.get(partitionId);
+        if (Objects.nonNull(root)) {
+            match(root, topicNavigationRoute, 0, matchingFilters);
+        }
+
+        return matchingFilters;
+    }
+
+    private void match(Node node, List<String> topicNavigationRoute, int index, List<IotSubscriptionFilter> matchingFilters) {
+
+        //A multi level wildcard matches its parent and any number of child levels.
+        Node multiLevelChild = node.multiLevelChild;
+        if (Objects.nonNull(multiLevelChild) && Objects.nonNull(multiLevelChild.filter)) {
+            matchingFilters.add(multiLevelChild.filter);
+        }
+
+        if (index == topicNavigationRoute.size()) {
+
+            IotSubscriptionFilter filter = node.filter;
+            if (Objects.nonNull(filter)) {
+                matchingFilters.add(filter);
+            }
+            return;
+        }
+
+        Node literalChild = node.literalChildren.get(topicNavigationRoute.get(index));
+        if (Objects.nonNull(literalChild)) {
+            match(literalChild, topicNavigationRoute, index + 1, matchingFilters);
+        }
+
+        Node singleLevelChild = node.singleLevelChild;
+        if (Objects.nonNull(singleLevelChild)) {
+            match(singleLevelChild, topicNavigationRoute, index + 1, matchingFilters);
+        }
+    }
+
+    /**
+     * Obtains the filters in every partition that have no child filters below them.
+     * These are the only candidates that can be pruned without orphaning a subtree.
+     *
+     * @return list of leaf filters
+     */
+    public List<IotSubscriptionFilter> getLeafFilters() {
+
+        List<IotSubscriptionFilter> leafFilters = new ArrayList<>();
+
+        for (Node root : partitionRoots.values()) {
+            collectLeafFilters(root, leafFilters);
+        }
+
+        return leafFilters;
+    }
+
+    private void collectLeafFilters(Node node, List<IotSubscriptionFilter> leafFilters) {
+
+        boolean hasChildren = false;
+
+        for (Node literalChild : node.literalChildren.values()) {
+            hasChildren = true;
+            collectLeafFilters(literalChild, leafFilters);
+        }
+
+        Node singleLevelChild = node.singleLevelChild;
+        if (Objects.nonNull(singleLevelChild)) {
+            hasChildren = true;
+            collectLeafFilters(singleLevelChild, leafFilters);
+        }
+
+        Node multiLevelChild = node.multiLevelChild;
+        if (Objects.nonNull(multiLevelChild)) {
+            hasChildren = true;
+            collectLeafFilters(multiLevelChild, leafFilters);
+        }
+
+        IotSubscriptionFilter filter = node.filter;
+        if (!hasChildren && Objects.nonNull(filter)) {
+            leafFilters.add(filter);
+        }
+    }
+
+    private List<String> toLevels(String topicFilter) {
+
+        List<String> levels = new ArrayList<>();
+        for (String level : topicFilter.split(Constant.PATH_SEPARATOR)) {
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    /**
+     * The remembered results of a partition and how many filter changes they have seen.
+     */
+    private static final class PartitionMatches {
+
+        private final ConcurrentMap<Long, CachedMatch> matches = new ConcurrentHashMap<>();
+
+        private volatile long version;
+    }
+
+    private static final class CachedMatch {
+
+        private final Topic topic;
+
+        private final List<IotSubscriptionFilter> filters;
+
+        private CachedMatch(Topic topic, List<IotSubscriptionFilter> filters) {
+            this.topic = topic;
+            this.filters = filters;
+        }
+    }
+
+    private static final class Node {
+
+        private final ConcurrentMap<String, Node> literalChildren = new ConcurrentHashMap<>();
+
+        private volatile Node singleLevelChild;
+
+        private volatile Node multiLevelChild;
+
+        private volatile IotSubscriptionFilter filter;
+
+        private Node getChild(String level) {
+
+            if (Constant.SINGLE_LEVEL_WILDCARD.equals(level)) {
+                return singleLevelChild;
+            } else if (Constant.MULTI_LEVEL_WILDCARD.equals(level)) {
+                return multiLevelChild;
+            } else {
+                return literalChildren.get(level);
+            }
+        }
+
+        private Node getOrCreateChild(String level) {
+
+            Node child = getChild(level);
+            if (Objects.nonNull(child)) {
+                return child;
+            }
+
+            child = new Node();
+
+            if (Constant.SINGLE_LEVEL_WILDCARD.equals(level)) {
+                singleLevelChild = child;
+            } else if (Constant.MULTI_LEVEL_WILDCARD.equals(level)) {
+                multiLevelChild = child;
+            } else {
+                literalChildren.put(level, child);
+            }
+
+            return child;
+        }
+
+        private void removeChild(String level) {
+
+            if (Constant.SINGLE_LEVEL_WILDCARD.equals(level)) {
+                singleLevelChild = null;
+            } else if (Constant.MULTI_LEVEL_WILDCARD.equals(level)) {
+                multiLevelChild = null;
+            } else {
+                literalChildren.remove(level);
+            }
+        }
+
+        private boolean isEmpty() {
+            return Objects.isNull(filter)
+                    && Objects.isNull(singleLevelChild)
+                    && Objects.isNull(multiLevelChild)
+                    && literalChildren.isEmpty();
+        }
+    }
+}
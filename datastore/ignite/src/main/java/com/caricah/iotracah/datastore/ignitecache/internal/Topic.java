@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>Topic</code> is an entry of the {@link TopicDictionary}, a topic or topic filter
+ * with its numeric id and its levels already broken down.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public final class Topic {
+
+    /**
+     * Id of a topic the dictionary had no room to keep.
+     */
+    public static final long NO_ID = 0L;
+
+    private final long id;
+
+    private final String name;
+
+    private final List<String> route;
+
+    public Topic(long id, String name, String[] levels) {
+        this.id = id;
+        this.name = name;
+        this.route = Collections.unmodifiableList(Arrays.asList(levels));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the topic is kept by the dictionary and its id can key lookups.
+     */
+    public boolean hasId() {
+        return id != NO_ID;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the levels of this topic, shared by every user of the topic.
+     */
+    public List<String> getRoute() {
+        return route;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '['
+                + "id=" + id + ","
+                + "name=" + name + ","
+                + ']';
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.datastore.ignitecache.internal;
+
+import com.caricah.iotracah.core.worker.state.Constant;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>TopicDictionary</code> assigns every topic and topic filter string seen on this
+ * node a numeric id and keeps it together with its levels, so that hot topics are only
+ * broken down once and local lookups keyed by topic can use the id instead of the string.
+ *
+ * Ids come from a node local counter and are never taken back, an entry keeps its id for
+ * as long as the node runs. Once the configured size is reached further topics are still
+ * broken down but are not kept and carry no id, so lookups keyed by id skip them.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+public class TopicDictionary {
+
+    public static final String CONFIG_IGNITECACHE_TOPIC_DICTIONARY_SIZE = "config.ignitecache.topic.dictionary.size";
+    public static final int CONFIG_IGNITECACHE_TOPIC_DICTIONARY_SIZE_VALUE_DEFAULT = 100000;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Topic> localTopics = new ConcurrentHashMap<>();
+
+    private final AtomicLong topicIdSequence = new AtomicLong();
+
+    private int dictionarySize;
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    public void setDictionarySize(int dictionarySize) {
+        this.dictionarySize = dictionarySize;
+    }
+
+    public void configure(Configuration configuration) {
+
+        int dictionarySize = configuration.getInt(CONFIG_IGNITECACHE_TOPIC_DICTIONARY_SIZE, CONFIG_IGNITECACHE_TOPIC_DICTIONARY_SIZE_VALUE_DEFAULT);
+        setDictionarySize(dictionarySize);
+    }
+
+    /**
+     * <code>lookup</code> obtains the dictionary entry for a topic or topic filter,
+     * assigning it a new id the first time it is seen on this node.
+     *
+     * @param name
+     * @return the topic entry
+     */
+    public Topic lookup(String name) {
+
+        Topic topic = localTopics.get(name);
+
+        if (Objects.nonNull(topic)) {
+            return topic;
+        }
+
+        if (localTopics.size() >= getDictionarySize()) {
+            return new Topic(Topic.NO_ID, name, name.split(Constant.PATH_SEPARATOR));
+        }
+
+        return localTopics.computeIfAbsent(name,
+                key -> new Topic(topicIdSequence.incrementAndGet(), key, key.split(Constant.PATH_SEPARATOR)));
+    }
+}
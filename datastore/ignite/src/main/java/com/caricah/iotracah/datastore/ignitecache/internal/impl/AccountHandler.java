@@ -29,6 +29,7 @@ import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
 
 import javax.sql.DataSource;
+import java.util.function.Consumer;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -79,10 +80,20 @@ public class AccountHandler extends AbstractHandler<IotAccountKey, IOTAccount> {
 
         if(item.getId() == 0){
 
-            item.setId(getIdSequence().incrementAndGet());
+            item.setId(getIdGenerator().next());
         }
 
 
         super.save(item);
     }
+
+    /**
+     * <code>listenForChanges</code> notifies this node of every account
+     * saved or removed anywhere in the cluster.
+     *
+     * @param onChanged callback for the changed account
+     */
+    public void listenForChanges(Consumer<IOTAccount> onChanged) {
+        listenForUpdates(onChanged, onChanged, false);
+    }
 }
@@ -23,20 +23,34 @@ package com.caricah.iotracah.datastore.ignitecache.internal.impl;
 import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
 import com.caricah.iotracah.bootstrap.data.models.messages.CacheConfig;
 import com.caricah.iotracah.bootstrap.data.models.messages.IotMessageKey;
-import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
+import com.caricah.iotracah.bootstrap.exceptions.RetriableException;
 import com.caricah.iotracah.datastore.ignitecache.internal.AbstractHandler;
+import com.caricah.iotracah.datastore.ignitecache.internal.PacketIdAllocator;
+import com.caricah.iotracah.datastore.ignitecache.internal.SharedPayload;
 import org.apache.commons.configuration.Configuration;
 import org.apache.ignite.Ignite;
-import org.apache.ignite.IgniteAtomicSequence;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
 import rx.Observable;
 
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
 import javax.sql.DataSource;
 import java.io.Serializable;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -47,11 +61,71 @@ public class MessageHandler extends AbstractHandler<IotMessageKey, PublishMessag
     public static final String CONFIG_IGNITECACHE_MESSAGE_CACHE_NAME = "config.ignitecache.message.cache.name";
     public static final String CONFIG_IGNITECACHE_MESSAGE_CACHE_NAME_VALUE_DEFAULT = "iotracah_message_cache";
 
+    public static final String CONFIG_IGNITECACHE_PACKET_ID_CACHE_NAME = "config.ignitecache.packet.id.cache.name";
+    public static final String CONFIG_IGNITECACHE_PACKET_ID_CACHE_NAME_VALUE_DEFAULT = "iotracah_packet_id_cache";
+
+    public static final String CONFIG_IGNITECACHE_PAYLOAD_CACHE_NAME = "config.ignitecache.payload.cache.name";
+    public static final String CONFIG_IGNITECACHE_PAYLOAD_CACHE_NAME_VALUE_DEFAULT = "iotracah_payload_cache";
+
+    private String packetIdCacheName;
+
+    private String payloadCacheName;
+
+    /**
+     * Packet identifier allocators of every session and direction.
+     */
+    private transient IgniteCache<String, PacketIdAllocator> packetIdCache;
+
+    /**
+     * Payloads shared by the copies of a message fanned out to many subscribers.
+     */
+    private transient IgniteCache<Long, SharedPayload> payloadCache;
+
+    public String getPacketIdCacheName() {
+        return packetIdCacheName;
+    }
+
+    public void setPacketIdCacheName(String packetIdCacheName) {
+        this.packetIdCacheName = packetIdCacheName;
+    }
+
+    public String getPayloadCacheName() {
+        return payloadCacheName;
+    }
+
+    public void setPayloadCacheName(String payloadCacheName) {
+        this.payloadCacheName = payloadCacheName;
+    }
+
     @Override
     public void configure(Configuration configuration) {
 
         String cacheName = configuration.getString(CONFIG_IGNITECACHE_MESSAGE_CACHE_NAME, CONFIG_IGNITECACHE_MESSAGE_CACHE_NAME_VALUE_DEFAULT);
         setCacheName(cacheName);
+
+        String packetIdCacheName = configuration.getString(CONFIG_IGNITECACHE_PACKET_ID_CACHE_NAME, CONFIG_IGNITECACHE_PACKET_ID_CACHE_NAME_VALUE_DEFAULT);
+        setPacketIdCacheName(packetIdCacheName);
+
+        String payloadCacheName = configuration.getString(CONFIG_IGNITECACHE_PAYLOAD_CACHE_NAME, CONFIG_IGNITECACHE_PAYLOAD_CACHE_NAME_VALUE_DEFAULT);
+        setPayloadCacheName(payloadCacheName);
+    }
+
+    @Override
+    public void initiate(Class<PublishMessage> t, Ignite ignite) {
+
+        super.initiate(t, ignite);
+
+        CacheConfiguration<String, PacketIdAllocator> cacheConfiguration = new CacheConfiguration<>(getPacketIdCacheName());
+        cacheConfiguration.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+        cacheConfiguration.setCacheMode(CacheMode.PARTITIONED);
+
+        packetIdCache = ignite.getOrCreateCache(cacheConfiguration);
+
+        CacheConfiguration<Long, SharedPayload> payloadCacheConfiguration = new CacheConfiguration<>(getPayloadCacheName());
+        payloadCacheConfiguration.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+        payloadCacheConfiguration.setCacheMode(CacheMode.PARTITIONED);
+
+        payloadCache = ignite.getOrCreateCache(payloadCacheConfiguration);
     }
 
     @Override
@@ -77,6 +151,7 @@ public class MessageHandler extends AbstractHandler<IotMessageKey, PublishMessag
         messageKey.setPartitionId(model.getPartitionId());
         messageKey.setClientId(model.getClientId());
         messageKey.setMessageId(model.getMessageId());
+        messageKey.setIsInbound(model.getIsInbound());
 
         return messageKey;
     }
@@ -92,72 +167,507 @@ public class MessageHandler extends AbstractHandler<IotMessageKey, PublishMessag
             currentMax = 0l;
         }
 
-        IgniteAtomicSequence idSequence = ignite.atomicSequence(nameOfSequence, currentMax, true);
-        setIdSequence(idSequence);
+        //Sessions replay their messages in id order, so ids are never leased in blocks.
+        setIdGenerator(getIdGenerationService().createOrdered(ignite, nameOfSequence, currentMax));
     }
 
     public Observable<Map.Entry<Long, IotMessageKey>> saveWithIdCheck(PublishMessage publishMessage) {
 
-        return Observable.create(observer -> {
-            try {
+        return Observable.defer(() -> {
+
+            if (publishMessage.getId() < 1) {
+                publishMessage.setId(getIdGenerator().next());
+            }
+
+            Observable<PublishMessage> identifiedMessage;
+
+            if (PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE == publishMessage.getMessageId()) {
+
+                identifiedMessage = allocatePacketIds(packetIdAllocatorKey(publishMessage), 1)
+                        .flatMap(packetIds -> {
+
+                            if (packetIds[0] == PacketIdAllocator.NO_PACKET_ID) {
+                                return Observable.error(new RetriableException(" All message ids of session " + publishMessage.getSessionId() + " are in use"));
+                            }
+
+                            publishMessage.setMessageId(packetIds[0]);
+                            return Observable.just(publishMessage);
+                        });
+            } else {
+                identifiedMessage = Observable.just(publishMessage);
+            }
+
+            return identifiedMessage.flatMap(message -> {
+
+                IotMessageKey messageKey = PublishMessage.createMessageKey(message);
+
+                return this.<Void>async(cache -> cache.put(messageKey, message))
+                        .<Map.Entry<Long, IotMessageKey>>map(saved -> new AbstractMap.SimpleEntry<>(message.getId(), messageKey));
+            });
 
+        }).doOnError(throwable -> log.error(" save : issues while saving item ", throwable));
+
+    }
+
+
+
+    /**
+     * <code>saveAllWithIdCheck</code> persists a batch of messages with a single put.
+     * Ids for the batch are reserved from the sequence as one block and message ids
+     * are allocated as one block per client and direction.
+     * A message whose session has no free message id left is not stored, its key is
+     * returned with <code>PublishMessage.ID_WHEN_NONE_IS_FREE</code> as the message id
+     * for the caller to handle as an overflow.
+     *
+     * @param publishMessages
+     * @return the id and key of every message in the order supplied
+     */
+    public Observable<Map.Entry<Long, IotMessageKey>> saveAllWithIdCheck(List<PublishMessage> publishMessages) {
+
+        return Observable.defer(() -> {
+
+            long nextId = getIdGenerator().next(publishMessages.size());
+
+            Map<String, Integer> messageIdCounts = new HashMap<>();
+
+            for (PublishMessage publishMessage : publishMessages) {
 
                 if (publishMessage.getId() < 1) {
-                    publishMessage.setId(getIdSequence().incrementAndGet());
+                    publishMessage.setId(nextId++);
                 }
 
-
                 if (PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE == publishMessage.getMessageId()) {
+                    messageIdCounts.merge(packetIdAllocatorKey(publishMessage), 1, Integer::sum);
+                }
+            }
 
-                    int messageId = getPartitionClientMessageId(
-                            publishMessage.getSessionId(),
-                            publishMessage.getIsInbound(),
-                            publishMessage.getId()
-                    );
+            //Allocators of different clients are updated in parallel.
+            return Observable.from(messageIdCounts.entrySet())
+                    .flatMap(messageIdCount -> allocatePacketIds(messageIdCount.getKey(), messageIdCount.getValue())
+                            .map(packetIds -> new AbstractMap.SimpleEntry<>(messageIdCount.getKey(), packetIds)))
+                    .toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)
+                    .flatMap(allocatedMessageIds -> {
 
-                    //Implement max check.
-                    publishMessage.setMessageId(messageId);
-                }
+                        Map<String, Integer> usedMessageIds = new HashMap<>();
+                        Map<IotMessageKey, PublishMessage> messagesByKey = new LinkedHashMap<>();
+                        List<Map.Entry<Long, IotMessageKey>> messageIdentities = new ArrayList<>(publishMessages.size());
+
+                        for (PublishMessage publishMessage : publishMessages) {
+
+                            if (PublishMessage.ID_TO_FORCE_GENERATION_ON_SAVE == publishMessage.getMessageId()) {
+
+                                String allocatorKey = packetIdAllocatorKey(publishMessage);
+                                int index = usedMessageIds.merge(allocatorKey, 1, Integer::sum) - 1;
+
+                                publishMessage.setMessageId(allocatedMessageIds.get(allocatorKey)[index]);
+                            }
+
+                            IotMessageKey messageKey = PublishMessage.createMessageKey(publishMessage);
+                            messageIdentities.add(new AbstractMap.SimpleEntry<>(publishMessage.getId(), messageKey));
+
+                            if (PacketIdAllocator.NO_PACKET_ID == publishMessage.getMessageId()) {
+                                log.warn(" saveAll : all message ids of session {} are in use, message {} is not stored", publishMessage.getSessionId(), publishMessage);
+                            } else {
+                                messagesByKey.put(messageKey, publishMessage);
+                            }
+                        }
+
+                        //Only the copies actually stored share a payload.
+                        Map<Long, SharedPayload> sharedPayloads = sharePayloads(new ArrayList<>(messagesByKey.values()));
+
+                        for (Map.Entry<IotMessageKey, PublishMessage> messageByKey : messagesByKey.entrySet()) {
+                            messageByKey.setValue(toStoredMessage(messageByKey.getValue()));
+                        }
+
+                        //Payloads are in place before any message refers to them.
+                        Observable<Void> savedPayloads = sharedPayloads.isEmpty() ? Observable.just(null) :
+                                this.<Long, SharedPayload, Void>async(payloadCache, cache -> cache.putAll(sharedPayloads));
+
+                        Observable<Void> savedMessages = messagesByKey.isEmpty() ? Observable.just(null) :
+                                this.<Void>async(cache -> cache.putAll(messagesByKey));
+
+                        return savedPayloads
+                                .flatMap(saved -> savedMessages)
+                                .flatMapIterable(saved -> messageIdentities);
+                    });
 
-                IotMessageKey messageKey = PublishMessage.createMessageKey(publishMessage);
+        }).doOnError(throwable -> log.error(" saveAll : issues while saving items ", throwable));
 
-                getDatastoreCache().put(messageKey, publishMessage);
+    }
+
+    /**
+     * <code>sharePayloads</code> stores the payload of copies made for many subscribers once.
+     * Copies of one message share the very same payload instance, the first copy's id
+     * becomes the reference to the stored payload and every copy counts as a reference to it.
+     * When persistence is enabled payloads stay inline, the payload cache is not persisted
+     * and stored messages would otherwise lose their payloads on a restart.
+     *
+     * @param publishMessages the copies about to be saved
+     * @return the payloads to store by their ids
+     */
+    private Map<Long, SharedPayload> sharePayloads(List<PublishMessage> publishMessages) {
+
+        if (isPersistanceEnabled()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Object, List<PublishMessage>> copiesByPayload = new IdentityHashMap<>();
+
+        for (PublishMessage publishMessage : publishMessages) {
+
+            if (Objects.nonNull(publishMessage.getPayload()) && publishMessage.getPayloadId() < 1) {
+                copiesByPayload.computeIfAbsent(publishMessage.getPayload(), payload -> new ArrayList<>()).add(publishMessage);
+            }
+        }
+
+        Map<Long, SharedPayload> sharedPayloads = new HashMap<>();
 
-                observer.onNext(new AbstractMap.SimpleEntry<>(publishMessage.getId(), messageKey));
-                observer.onCompleted();
+        for (Map.Entry<Object, List<PublishMessage>> copies : copiesByPayload.entrySet()) {
 
-            } catch (UnRetriableException e) {
-                log.error(" save : issues while saving item ", e);
-                observer.onError(e);
+            if (copies.getValue().size() < 2) {
+                continue;
             }
 
-        });
+            long payloadId = copies.getValue().get(0).getId();
+            sharedPayloads.put(payloadId, new SharedPayload(copies.getKey(), copies.getValue().size()));
+
+            for (PublishMessage publishMessage : copies.getValue()) {
+                publishMessage.setPayloadId(payloadId);
+            }
+        }
 
+        return sharedPayloads;
     }
 
+    /**
+     * <code>toStoredMessage</code> obtains the record kept in the cache for a message.
+     * Messages referring to a shared payload are stored without their own copy of it.
+     *
+     * @param publishMessage
+     * @return the message itself or a copy of it without the payload
+     */
+    private PublishMessage toStoredMessage(PublishMessage publishMessage) {
+
+        if (publishMessage.getPayloadId() < 1 || Objects.isNull(publishMessage.getPayload())) {
+            return publishMessage;
+        }
 
+        PublishMessage storedMessage = new PublishMessage();
+        storedMessage.copyTransmissionData(publishMessage);
+        storedMessage.setAuthKey(publishMessage.getAuthKey());
+        storedMessage.setMessageType(publishMessage.getMessageType());
+        storedMessage.setProtocolData(publishMessage.getProtocolData());
+        storedMessage.setDateCreated(publishMessage.getDateCreated());
+        storedMessage.setDateModified(publishMessage.getDateModified());
+        storedMessage.setIsActive(publishMessage.getIsActive());
+        storedMessage.setId(publishMessage.getId());
+        storedMessage.setMessageId(publishMessage.getMessageId());
+        storedMessage.setTopic(publishMessage.getTopic());
+        storedMessage.setPayloadId(publishMessage.getPayloadId());
+        storedMessage.setExpiresAt(publishMessage.getExpiresAt());
+        storedMessage.setQos(publishMessage.getQos());
+        storedMessage.setIsInbound(publishMessage.getIsInbound());
+        storedMessage.setIsDuplicate(publishMessage.getIsDuplicate());
+        storedMessage.setIsRetain(publishMessage.getIsRetain());
+        storedMessage.setIsRelease(publishMessage.getIsRelease());
+        storedMessage.setIsWill(publishMessage.getIsWill());
+        storedMessage.setClientId(publishMessage.getClientId());
+        storedMessage.setPartitionId(publishMessage.getPartitionId());
+
+        return storedMessage;
+    }
 
-    private int getPartitionClientMessageId(String sessionId, boolean isInBound, long id) {
+    /**
+     * <code>withPayload</code> puts back the shared payload of a message read from the cache.
+     *
+     * @param publishMessage
+     * @return the message with its payload
+     */
+    private PublishMessage withPayload(PublishMessage publishMessage) {
 
-        String queryForCount = "SELECT " +
-                "(SELECT MAX(messageId) FROM PublishMessage WHERE clientId = ? AND isInbound = ? AND id < ? ) " +
-                "+ (SELECT COUNT(id) FROM PublishMessage WHERE clientId = ? AND isInbound = ? AND id <= ? ) " +
-                " AS newId";
-        Object[] params = {sessionId, isInBound, id, sessionId, isInBound, id };
+        if (publishMessage.getPayloadId() > 0 && Objects.isNull(publishMessage.getPayload())) {
 
-        Long currentMax = getByQueryAsValue(Long.class, queryForCount, params).toBlocking().single();
-        if (Objects.isNull(currentMax)) {
-            return 1;
-        }else{
+            SharedPayload sharedPayload = payloadCache.get(publishMessage.getPayloadId());
+            if (Objects.nonNull(sharedPayload)) {
+                publishMessage.setPayload(sharedPayload.getPayload());
+            }
+        }
+
+        return publishMessage;
+    }
+
+    /**
+     * <code>withPayloadAsync</code> puts back the shared payload of a message
+     * without waiting on the payload cache.
+     *
+     * @param publishMessage
+     * @return the message with its payload
+     */
+    private Observable<PublishMessage> withPayloadAsync(PublishMessage publishMessage) {
+
+        if (publishMessage.getPayloadId() < 1 || Objects.nonNull(publishMessage.getPayload())) {
+            return Observable.just(publishMessage);
+        }
+
+        return this.<Long, SharedPayload, SharedPayload>async(payloadCache, cache -> cache.get(publishMessage.getPayloadId()))
+                .map(sharedPayload -> {
+                    if (Objects.nonNull(sharedPayload)) {
+                        publishMessage.setPayload(sharedPayload.getPayload());
+                    }
+                    return publishMessage;
+                });
+    }
+
+    @Override
+    public Observable<PublishMessage> getByKey(IotMessageKey key) {
+        return super.getByKey(key).flatMap(this::withPayloadAsync);
+    }
+
+    @Override
+    public Observable<PublishMessage> getByQuery(Class<PublishMessage> t, String query, Object[] params) {
+        return super.getByQuery(t, query, params).map(this::withPayload);
+    }
+
+    @Override
+    public Map<IotMessageKey, PublishMessage> getAll(Set<IotMessageKey> keys) {
+
+        Map<IotMessageKey, PublishMessage> results = super.getAll(keys);
+
+        Set<Long> payloadIds = new HashSet<>();
+        for (PublishMessage publishMessage : results.values()) {
+
+            if (publishMessage.getPayloadId() > 0 && Objects.isNull(publishMessage.getPayload())) {
+                payloadIds.add(publishMessage.getPayloadId());
+            }
+        }
+
+        if (payloadIds.isEmpty()) {
+            return results;
+        }
+
+        Map<Long, SharedPayload> sharedPayloads = payloadCache.getAll(payloadIds);
+
+        for (PublishMessage publishMessage : results.values()) {
+
+            SharedPayload sharedPayload = sharedPayloads.get(publishMessage.getPayloadId());
+            if (Objects.nonNull(sharedPayload) && Objects.isNull(publishMessage.getPayload())) {
+                publishMessage.setPayload(sharedPayload.getPayload());
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    protected void save(IotMessageKey key, PublishMessage item) {
+        super.save(key, toStoredMessage(item));
+    }
+
+    @Override
+    public void remove(PublishMessage item) {
+
+        //References are only let go of by the caller that actually removed the message.
+        getAndRemove(keyFromModel(item));
+    }
+
+    @Override
+    public boolean removeIfPresent(PublishMessage item) {
+        return Objects.nonNull(getAndRemove(keyFromModel(item)));
+    }
+
+    /**
+     * <code>getAndRemove</code> removes a message by its key in a single round trip.
+     *
+     * @param key
+     * @return the removed message or null if there was none.
+     */
+    public PublishMessage getAndRemove(IotMessageKey key) {
+
+        try {
+
+            PublishMessage removedMessage = getDatastoreCache().getAndRemove(key);
+
+            if (Objects.nonNull(removedMessage)) {
+                releaseReferences(removedMessage);
+            }
+
+            return removedMessage;
+
+        } catch (Exception e) {
+            log.error(" getAndRemove : problem while removing message ", e);
+            return null;
+        }
+    }
+
+    /**
+     * <code>markReleased</code> flags a message as being released in place
+     * on the node owning it, without reading and writing it back.
+     *
+     * @param key
+     * @return the updated message or null if there was none.
+     */
+    public PublishMessage markReleased(IotMessageKey key) {
+
+        PublishMessage releasedMessage = getDatastoreCache().invoke(key, new ReleaseMarkProcessor());
+
+        return Objects.isNull(releasedMessage) ? null : withPayload(releasedMessage);
+    }
+
+    /**
+     * <code>releaseReferences</code> lets go of the shared payload and message id held by a removed message.
+     *
+     * @param item
+     */
+    private void releaseReferences(PublishMessage item) {
+
+        if (item.getPayloadId() > 0) {
+
+            try {
+
+                payloadCache.invoke(item.getPayloadId(), new PayloadReleaseProcessor());
+
+            } catch (Exception e) {
+                log.error(" releaseReferences : issues while releasing shared payload ", e);
+            }
+        }
+
+        if (item.getMessageId() < PacketIdAllocator.MINIMUM_PACKET_ID) {
+            return;
+        }
+
+        try {
+
+            packetIdCache.invoke(packetIdAllocatorKey(item), new PacketIdReleaseProcessor(item.getMessageId()));
 
-            return currentMax.intValue();
+        } catch (Exception e) {
+            log.error(" releaseReferences : issues while releasing message id ", e);
         }
     }
 
+    private String packetIdAllocatorKey(PublishMessage publishMessage) {
+        return publishMessage.getSessionId() + ":" + publishMessage.getIsInbound();
+    }
+
+    /**
+     * <code>allocatePacketIds</code> obtains free message ids from the allocator of a client
+     * and direction. The allocator is updated in place on the node that owns it,
+     * so concurrent publishers anywhere in the cluster never share an id.
+     *
+     * @param allocatorKey
+     * @param count
+     * @return the allocated ids in order
+     */
+    private Observable<int[]> allocatePacketIds(String allocatorKey, int count) {
+        return this.<String, PacketIdAllocator, int[]>async(packetIdCache, cache -> cache.invoke(allocatorKey, new PacketIdAllocationProcessor(count)));
+    }
+
     public void removeById(long oldMessageId) {
 
 
 
 
+    }
+
+    private static final class PacketIdAllocationProcessor
+            implements EntryProcessor<String, PacketIdAllocator, int[]>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int count;
+
+        private PacketIdAllocationProcessor(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int[] process(MutableEntry<String, PacketIdAllocator> entry, Object... arguments) {
+
+            PacketIdAllocator packetIdAllocator = entry.exists() ? entry.getValue() : new PacketIdAllocator();
+
+            int[] packetIds = new int[count];
+            for (int index = 0; index < count; index++) {
+                packetIds[index] = packetIdAllocator.allocate();
+            }
+
+            entry.setValue(packetIdAllocator);
+            return packetIds;
+        }
+    }
+
+    private static final class PacketIdReleaseProcessor
+            implements EntryProcessor<String, PacketIdAllocator, Void>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        private final int packetId;
+
+        private PacketIdReleaseProcessor(int packetId) {
+            this.packetId = packetId;
+        }
+
+        @Override
+        public Void process(MutableEntry<String, PacketIdAllocator> entry, Object... arguments) {
+
+            if (!entry.exists()) {
+                return null;
+            }
+
+            PacketIdAllocator packetIdAllocator = entry.getValue();
+            packetIdAllocator.release(packetId);
+
+            //Sessions with nothing in flight do not keep an allocator around.
+            if (packetIdAllocator.isEmpty()) {
+                entry.remove();
+            } else {
+                entry.setValue(packetIdAllocator);
+            }
+
+            return null;
+        }
+    }
+
+    private static final class PayloadReleaseProcessor
+            implements EntryProcessor<Long, SharedPayload, Void>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public Void process(MutableEntry<Long, SharedPayload> entry, Object... arguments) {
+
+            if (!entry.exists()) {
+                return null;
+            }
+
+            SharedPayload sharedPayload = entry.getValue();
+
+            //The payload goes with the last copy acknowledged.
+            if (sharedPayload.release()) {
+                entry.remove();
+            } else {
+                entry.setValue(sharedPayload);
+            }
+
+            return null;
+        }
+    }
+
+    private static final class ReleaseMarkProcessor
+            implements EntryProcessor<IotMessageKey, PublishMessage, PublishMessage>, Serializable {
+
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        public PublishMessage process(MutableEntry<IotMessageKey, PublishMessage> entry, Object... arguments) {
+
+            if (!entry.exists()) {
+                return null;
+            }
+
+            PublishMessage publishMessage = entry.getValue();
+            publishMessage.setIsRelease(true);
+            entry.setValue(publishMessage);
+
+            return publishMessage;
+        }
     }
 }
@@ -29,7 +29,6 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
-import rx.Observable;
 
 import javax.sql.DataSource;
 import java.util.Objects;
@@ -81,14 +80,10 @@ public class PartitionHandler extends AbstractHandler<IotPartitionKey, IotPartit
 
         IotPartitionKey partitionKey = keyFromModel(partition);
 
-        Observable<IotPartition> partitionObservable = getByKeyWithDefault(partitionKey, null);
-
-        partitionObservable.subscribe(iotPartition -> {
-
-            if (Objects.isNull(iotPartition)) {
-                save(partition);
-            }
-        });
+        //Startup waits for the default partition to be in place.
+        if (Objects.isNull(getNow(partitionKey))) {
+            save(partition);
+        }
 
     }
 
@@ -24,13 +24,20 @@ import com.caricah.iotracah.bootstrap.data.models.retained.CacheConfig;
 import com.caricah.iotracah.bootstrap.data.models.retained.IotMessageRetained;
 import com.caricah.iotracah.bootstrap.data.models.retained.IotMessageRetainedKey;
 import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilter;
+import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
 import com.caricah.iotracah.datastore.ignitecache.internal.AbstractHandler;
+import com.caricah.iotracah.datastore.ignitecache.internal.RetainedMessageIndex;
 import org.apache.commons.configuration.Configuration;
+import org.apache.ignite.Ignite;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
 import rx.Observable;
 
 import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -40,7 +47,12 @@ public class RetainedMessageHandler extends AbstractHandler<IotMessageRetainedKe
 
     public static final String CONFIG_IGNITECACHE_RETAINED_MESSAGE_CACHE_NAME = "config.ignitecache.retained.message.cache.name";
     public static final String CONFIG_IGNITECACHE_RETAINED_MESSAGE_CACHE_NAME_VALUE_DEFAULT = "iotracah_retained_message_cache";
+    public static final String CONFIG_IGNITECACHE_RETAINED_MESSAGE_BATCH_SIZE = "config.ignitecache.retained.message.batch.size";
+    public static final int CONFIG_IGNITECACHE_RETAINED_MESSAGE_BATCH_SIZE_VALUE_DEFAULT = 128;
 
+    private final transient RetainedMessageIndex retainedMessageIndex = new RetainedMessageIndex();
+
+    private int batchSize;
 
     @Override
     public void configure(Configuration configuration) {
@@ -48,6 +60,72 @@ public class RetainedMessageHandler extends AbstractHandler<IotMessageRetainedKe
         String cacheName = configuration.getString(CONFIG_IGNITECACHE_RETAINED_MESSAGE_CACHE_NAME, CONFIG_IGNITECACHE_RETAINED_MESSAGE_CACHE_NAME_VALUE_DEFAULT);
         setCacheName(cacheName);
 
+        int batchSize = configuration.getInt(CONFIG_IGNITECACHE_RETAINED_MESSAGE_BATCH_SIZE, CONFIG_IGNITECACHE_RETAINED_MESSAGE_BATCH_SIZE_VALUE_DEFAULT);
+        if (batchSize < 1) {
+            throw new UnRetriableException(" The retained message batch size has to be at least 1");
+        }
+        setBatchSize(batchSize);
+
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public RetainedMessageIndex getRetainedMessageIndex() {
+        return retainedMessageIndex;
+    }
+
+    @Override
+    public void initiate(Class<IotMessageRetained> t, Ignite ignite) {
+
+        super.initiate(t, ignite);
+
+        //Keep the local index in sync with every message retained or released within the cluster.
+        listenForUpdates(this::addToIndex, this::removeFromIndex);
+    }
+
+    @Override
+    public void save(IotMessageRetained item) {
+        super.save(item);
+        addToIndex(item);
+    }
+
+    @Override
+    public void remove(IotMessageRetained item) {
+        super.remove(item);
+        removeFromIndex(item);
+    }
+
+    @Override
+    public boolean removeIfPresent(IotMessageRetained item) {
+
+        boolean isRemoved = super.removeIfPresent(item);
+        if (isRemoved) {
+            removeFromIndex(item);
+        }
+        return isRemoved;
+    }
+
+    private void addToIndex(IotMessageRetained iotMessageRetained) {
+
+        if (Objects.isNull(iotMessageRetained.getTopic())) {
+            log.warn(" addToIndex : retained message {} has no topic and can not be indexed", iotMessageRetained);
+            return;
+        }
+
+        getRetainedMessageIndex().put(iotMessageRetained.getPartitionId(), iotMessageRetained.getTopic(), keyFromModel(iotMessageRetained));
+    }
+
+    private void removeFromIndex(IotMessageRetained iotMessageRetained) {
+
+        if (Objects.nonNull(iotMessageRetained.getTopic())) {
+            getRetainedMessageIndex().remove(iotMessageRetained.getPartitionId(), iotMessageRetained.getTopic());
+        }
     }
 
     @Override
@@ -72,12 +150,56 @@ public class RetainedMessageHandler extends AbstractHandler<IotMessageRetainedKe
         return retainedKey;
     }
 
-    public Observable<IotMessageRetained> getRetainedMessagesByFilter(IotSubscriptionFilter subscriptionFilter) {
+    public IotMessageRetainedKey keyFromFilter(IotSubscriptionFilter subscriptionFilter) {
 
         IotMessageRetainedKey retainedKey = new IotMessageRetainedKey();
         retainedKey.setPartitionId(subscriptionFilter.getPartitionId());
         retainedKey.setSubscriptionFilterId(subscriptionFilter.getId());
+        return retainedKey;
+    }
+
+    public Observable<IotMessageRetained> getRetainedMessagesByFilter(IotSubscriptionFilter subscriptionFilter) {
+
+        return getByKey(keyFromFilter(subscriptionFilter));
+    }
+
+    public boolean hasRetainedMessage(IotSubscriptionFilter subscriptionFilter) {
+
+        return getDatastoreCache().containsKey(keyFromFilter(subscriptionFilter));
+    }
+
+    /**
+     * <code>getRetainedMessages</code> streams all the retained messages whose topics match
+     * the supplied subscription filter. Matching topics are resolved from the local index
+     * in one traversal and the messages are then read from the cache in batches.
+     *
+     * @param partitionId
+     * @param topicFilterRoute the subscription filter broken down into its levels
+     * @return matching retained messages
+     */
+    public Observable<IotMessageRetained> getRetainedMessages(String partitionId, List<String> topicFilterRoute) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                List<IotMessageRetainedKey> retainedKeys = getRetainedMessageIndex().match(partitionId, topicFilterRoute);
+
+                for (int start = 0; start < retainedKeys.size() && !observer.isUnsubscribed(); start += getBatchSize()) {
+
+                    Set<IotMessageRetainedKey> batchKeys = new HashSet<>(
+                            retainedKeys.subList(start, Math.min(start + getBatchSize(), retainedKeys.size())));
+
+                    for (IotMessageRetained iotMessageRetained : getAll(batchKeys).values()) {
+                        observer.onNext(iotMessageRetained);
+                    }
+                }
+
+                observer.onCompleted();
 
-        return getByKey(retainedKey);
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
     }
 }
@@ -29,6 +29,7 @@ import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
 
 import javax.sql.DataSource;
+import java.util.function.Consumer;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -77,9 +78,19 @@ public class RoleHandler extends AbstractHandler<IotRoleKey, IOTRole> {
 
         if(item.getId() == 0){
 
-            item.setId(getIdSequence().incrementAndGet());
+            item.setId(getIdGenerator().next());
         }
 
         super.save(item);
     }
+
+    /**
+     * <code>listenForChanges</code> notifies this node of every role
+     * saved or removed anywhere in the cluster.
+     *
+     * @param onChanged callback for the changed role
+     */
+    public void listenForChanges(Consumer<IOTRole> onChanged) {
+        listenForUpdates(onChanged, onChanged, false);
+    }
 }
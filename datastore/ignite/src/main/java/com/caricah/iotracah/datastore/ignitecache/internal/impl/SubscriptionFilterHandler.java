@@ -25,14 +25,25 @@ import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscri
 import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilterKey;
 import com.caricah.iotracah.core.worker.state.Constant;
 import com.caricah.iotracah.datastore.ignitecache.internal.AbstractHandler;
+import com.caricah.iotracah.datastore.ignitecache.internal.SubscriptionFilterTrie;
+import com.caricah.iotracah.datastore.ignitecache.internal.Topic;
 import org.apache.commons.configuration.Configuration;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.cluster.ClusterNode;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
 import rx.Observable;
-import rx.Subscriber;
 
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
 import javax.sql.DataSource;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -42,6 +53,22 @@ public class SubscriptionFilterHandler extends AbstractHandler<IotSubscriptionFi
 
     public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_CACHE_NAME = "config.ignitecache.subscription.filter.cache.name";
     public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_CACHE_NAME_VALUE_DEFAULT = "iotracah_subscription_filter_cache";
+    public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_MATCH_CACHE_SIZE = "config.ignitecache.subscription.filter.match.cache.size";
+    public static final int CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_MATCH_CACHE_SIZE_VALUE_DEFAULT = 10000;
+
+    /**
+     * The character that sorts immediately after the path separator.
+     */
+    private static final String SUBTREE_UPPER_BOUND = String.valueOf((char) (Constant.PATH_SEPARATOR.charAt(0) + 1));
+
+    private final transient SubscriptionFilterTrie subscriptionFilterTrie = new SubscriptionFilterTrie();
+
+    /**
+     * Keys of the known subscription filters by their id, subscriptions only refer to the filter id.
+     */
+    private final transient ConcurrentMap<Long, IotSubscriptionFilterKey> subscriptionFilterKeys = new ConcurrentHashMap<>();
+
+    private transient ClusterNode localNode;
 
 
     @Override
@@ -51,6 +78,34 @@ public class SubscriptionFilterHandler extends AbstractHandler<IotSubscriptionFi
         String cacheName = configuration.getString(CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_CACHE_NAME, CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_CACHE_NAME_VALUE_DEFAULT);
         setCacheName(cacheName);
 
+        int matchCacheSize = configuration.getInt(CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_MATCH_CACHE_SIZE, CONFIG_IGNITECACHE_SUBSCRIPTION_FILTER_MATCH_CACHE_SIZE_VALUE_DEFAULT);
+        getSubscriptionFilterTrie().setMaximumCachedMatches(matchCacheSize);
+
+    }
+
+    public SubscriptionFilterTrie getSubscriptionFilterTrie() {
+        return subscriptionFilterTrie;
+    }
+
+    @Override
+    public void initiate(Class<IotSubscriptionFilter> t, Ignite ignite) {
+
+        super.initiate(t, ignite);
+
+        localNode = ignite.cluster().localNode();
+
+        //Keep the local trie in sync with every filter created or removed within the cluster.
+        listenForUpdates(this::onFilterSaved, this::onFilterRemoved);
+    }
+
+    private void onFilterSaved(IotSubscriptionFilter subscriptionFilter) {
+        subscriptionFilterKeys.put(subscriptionFilter.getId(), keyFromModel(subscriptionFilter));
+        getSubscriptionFilterTrie().put(subscriptionFilter);
+    }
+
+    private void onFilterRemoved(IotSubscriptionFilter subscriptionFilter) {
+        subscriptionFilterKeys.remove(subscriptionFilter.getId());
+        getSubscriptionFilterTrie().remove(subscriptionFilter);
     }
 
     @Override
@@ -89,282 +144,357 @@ public class SubscriptionFilterHandler extends AbstractHandler<IotSubscriptionFi
         return filterKey;
     }
 
-    public Observable<IotSubscriptionFilter> matchTopicFilterTree(String partitionId, List<String> topicNavigationRoute) {
+    public Observable<IotSubscriptionFilter> matchTopicFilterTree(String partitionId, Topic topic) {
 
         return Observable.create(observer -> {
 
-            Set<IotSubscriptionFilterKey> topicFilterKeys = new HashSet<>();
-
-            ListIterator<String> pathIterator = topicNavigationRoute.listIterator();
+            try {
 
-            List<String> growingTitles = new ArrayList<>();
+                for (IotSubscriptionFilter subscriptionFilter : getSubscriptionFilterTrie().match(partitionId, topic)) {
+                    observer.onNext(subscriptionFilter);
+                }
 
-            while (pathIterator.hasNext()) {
+                observer.onCompleted();
 
-                String name = pathIterator.next();
+            } catch (Exception e) {
+                observer.onError(e);
+            }
 
-                List<String> slWildCardList = new ArrayList<>(growingTitles);
+        });
 
-                if (pathIterator.hasNext()) {
-                    //We deal with wildcard.
-                    slWildCardList.add(Constant.MULTI_LEVEL_WILDCARD);
-                    topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+    }
 
-                } else {
 
+    /**
+     * <code>getTopicFilterTree</code> obtains all the stored filters that fall under the supplied
+     * topic filter. The name of every filter is its materialized path, so all the
+     * descendants of a node share the prefix <code>name/</code> and can be read
+     * with a single range query on the partition and name index.
+     *
+     * @param partition
+     * @param topicFilterTreeRoute
+     * @return matching subscription filters
+     */
+    public Observable<IotSubscriptionFilter> getTopicFilterTree(String partition, List<String> topicFilterTreeRoute) {
 
-                    slWildCardList.add(Constant.SINGLE_LEVEL_WILDCARD);
-                    topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+        return Observable.create(observer -> {
 
-                    slWildCardList.add(Constant.SINGLE_LEVEL_WILDCARD);
-                    topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+            try {
 
-                    slWildCardList.remove(slWildCardList.size() - 1);
-                    slWildCardList.remove(slWildCardList.size() - 1);
+                List<String> literalPrefix = new ArrayList<>();
+                for (String topicPart : topicFilterTreeRoute) {
 
-                    //we deal with full topic
-                    slWildCardList.add(name);
+                    if (Constant.SINGLE_LEVEL_WILDCARD.equals(topicPart) || Constant.MULTI_LEVEL_WILDCARD.equals(topicPart)) {
+                        break;
+                    }
+                    literalPrefix.add(topicPart);
                 }
 
-                List<String> reverseSlWildCardList = new ArrayList<>(slWildCardList);
-
-                growingTitles.add(name);
-
-                int sizeOfTopic = slWildCardList.size() - 1;
+                if (literalPrefix.size() == topicFilterTreeRoute.size()) {
 
+                    //No wildcards so we are only interested in one filter.
+                    IotSubscriptionFilter subscriptionFilter = getDatastoreCache().get(keyFromList(partition, topicFilterTreeRoute));
+                    if (Objects.nonNull(subscriptionFilter)) {
+                        observer.onNext(subscriptionFilter);
+                    }
 
-                for (int i = 0; i <= sizeOfTopic; i++) {
-
-                    if (i < sizeOfTopic) {
-                        int reverseIndex = sizeOfTopic - i;
+                    observer.onCompleted();
+                    return;
+                }
 
-                        slWildCardList.set(i, Constant.SINGLE_LEVEL_WILDCARD);
-                        reverseSlWildCardList.set(reverseIndex, Constant.SINGLE_LEVEL_WILDCARD);
+                Observable<IotSubscriptionFilter> subtreeObservable;
 
-                        topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
-                        topicFilterKeys.add(keyFromList(partitionId, reverseSlWildCardList));
+                if (literalPrefix.isEmpty()) {
 
-                    } else {
+                    String query = "partitionId = ? ";
+                    Object[] params = {partition};
+                    subtreeObservable = getByQuery(IotSubscriptionFilter.class, query, params);
 
-                        if (!pathIterator.hasNext()) {
+                } else {
 
-                            slWildCardList.set(i, Constant.SINGLE_LEVEL_WILDCARD);
-                            topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+                    String prefixName = String.join(Constant.PATH_SEPARATOR, literalPrefix);
 
-                            slWildCardList.add(Constant.SINGLE_LEVEL_WILDCARD);
-                            topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+                    //All names starting with "prefix/" sort between "prefix/" and "prefix0".
+                    String query = "partitionId = ? AND ( name = ? OR ( name >= ? AND name < ? ) ) ";
+                    Object[] params = {partition, prefixName, prefixName + Constant.PATH_SEPARATOR, prefixName + SUBTREE_UPPER_BOUND};
+                    subtreeObservable = getByQuery(IotSubscriptionFilter.class, query, params);
+                }
 
-                            slWildCardList.set(slWildCardList.size() - 1, Constant.MULTI_LEVEL_WILDCARD);
-                            topicFilterKeys.add(keyFromList(partitionId, slWildCardList));
+                subtreeObservable.subscribe(subscriptionFilter -> {
 
-                        }
+                    if (isMatching(topicFilterTreeRoute, subscriptionFilter.getName().split(Constant.PATH_SEPARATOR))) {
 
+                        log.debug(" getTopicFilterTree : Found matching filter : {}", subscriptionFilter);
+                        observer.onNext(subscriptionFilter);
                     }
-                }
 
-            }
+                }, observer::onError, observer::onCompleted);
 
-            topicFilterKeys.add(keyFromList(partitionId, growingTitles));
+            } catch (Exception e) {
+                observer.onError(e);
+            }
 
-            growingTitles.add(Constant.SINGLE_LEVEL_WILDCARD);
-            topicFilterKeys.add(keyFromList(partitionId, growingTitles));
+        });
 
-            growingTitles.set(growingTitles.size() - 1, Constant.MULTI_LEVEL_WILDCARD);
-            topicFilterKeys.add(keyFromList(partitionId, growingTitles));
+    }
 
-            growingTitles.remove(growingTitles.size() - 1);
+    private boolean isMatching(List<String> topicFilterTreeRoute, String[] nameLevels) {
 
-            growingTitles.set(growingTitles.size() - 1, Constant.SINGLE_LEVEL_WILDCARD);
-            topicFilterKeys.add(keyFromList(partitionId, growingTitles));
+        int index = 0;
 
-            growingTitles.set(growingTitles.size() - 1, Constant.MULTI_LEVEL_WILDCARD);
-            topicFilterKeys.add(keyFromList(partitionId, growingTitles));
+        for (String topicPart : topicFilterTreeRoute) {
 
+            if (Constant.MULTI_LEVEL_WILDCARD.equals(topicPart)) {
+                return true;
+            }
 
-            //Add lost wildcard
-            getBySet(topicFilterKeys).subscribe(observer::onNext, observer::onError, observer::onCompleted);
+            if (index >= nameLevels.length) {
+                return false;
+            }
 
-        });
+            if (!Constant.SINGLE_LEVEL_WILDCARD.equals(topicPart) && !topicPart.equals(nameLevels[index])) {
+                return false;
+            }
 
+            index++;
+        }
 
+        return index == nameLevels.length;
     }
 
 
-    public Observable<IotSubscriptionFilter> getTopicFilterTree(String partition, List<String> topicFilterTreeRoute) {
+    /**
+     * <code>createTree</code> obtains the filter for the supplied route creating any missing
+     * levels along the way. The whole route is resolved with one batched read after which
+     * only the missing suffix is created. Ids for the new nodes are reserved from the sequence
+     * as one block and each node is inserted with put if absent semantics so that
+     * concurrent subscribers to the same new topic all end up with the same nodes.
+     * An existing leaf without subscriptions has its modification time refreshed
+     * so the compactor does not prune it while the new subscription is being counted.
+     *
+     * @param partitionId
+     * @param topicFilterTreeRoute
+     * @return the leaf subscription filter
+     */
+    public Observable<IotSubscriptionFilter> createTree(String partitionId, List<String> topicFilterTreeRoute) {
 
         return Observable.create(observer -> {
 
-            List<Long> collectingParentIdList = new ArrayList<>();
-
-            collectingParentIdList.add(0l);
-
-            List<String> growingTitles = new ArrayList<>();
-
-            ListIterator<String> pathIterator = topicFilterTreeRoute.listIterator();
-
-            try {
-
-                while (pathIterator.hasNext()) {
-
+                    try {
 
-                    String topicPart = pathIterator.next();
+                        List<IotSubscriptionFilterKey> routeKeys = new ArrayList<>(topicFilterTreeRoute.size());
 
-                    log.debug(" getTopicFilterTree : current path in tree is : {}", topicPart);
+                        List<String> growingTitles = new ArrayList<>();
+                        for (String topicPart : topicFilterTreeRoute) {
+                            growingTitles.add(topicPart);
+                            routeKeys.add(keyFromList(partitionId, growingTitles));
+                        }
 
-                    growingTitles.add(topicPart);
+                        Map<IotSubscriptionFilterKey, IotSubscriptionFilter> existingFilters = getAll(new HashSet<>(routeKeys));
 
-                    List<Long> parentIdList = new ArrayList<>(collectingParentIdList);
-                    collectingParentIdList.clear();
+                        int missingLevels = routeKeys.size() - existingFilters.size();
 
-                    for (Long parentId : parentIdList) {
+                        //Reserve a block of ids for all the levels we may have to create.
+                        long nextId = missingLevels > 0 ? getIdGenerator().next(missingLevels) : 0;
 
-                        log.debug(" getTopicFilterTree : Dealing with parent id : {} and titles is {}", parentId, growingTitles);
+                        IotSubscriptionFilter parentFilter = null;
 
-                        if (Constant.MULTI_LEVEL_WILDCARD.equals(topicPart)) {
+                        for (int index = 0; index < routeKeys.size(); index++) {
 
-                            getMultiLevelWildCard(observer, partition, parentId);
-                        } else if (Constant.SINGLE_LEVEL_WILDCARD.equals(topicPart)) {
+                            IotSubscriptionFilterKey routeKey = routeKeys.get(index);
+                            IotSubscriptionFilter subscriptionFilter = existingFilters.get(routeKey);
 
-                            String query = "partitionId = ? AND parentId = ? ";
-                            Object[] params = {partition, parentId};
+                            boolean isLeaf = index == routeKeys.size() - 1;
 
-                            getByQuery(IotSubscriptionFilter.class, query, params)
-                                    .toBlocking().forEach(subscriptionFilter -> {
+                            //The leaf is touched even when it exists so the compactor leaves an unused one alone.
+                            if (Objects.isNull(subscriptionFilter) || isLeaf) {
 
-                                log.debug(" getTopicFilterTree : Found matching single level filter : {}", subscriptionFilter);
+                                IotSubscriptionFilter newSubscriptionFilter;
 
-                                if (pathIterator.hasNext()) {
-                                    collectingParentIdList.add(subscriptionFilter.getId());
+                                if (Objects.isNull(subscriptionFilter)) {
 
+                                    newSubscriptionFilter = new IotSubscriptionFilter();
+                                    newSubscriptionFilter.setPartitionId(partitionId);
+                                    newSubscriptionFilter.setName(routeKey.getName());
+                                    newSubscriptionFilter.setId(nextId++);
+                                    newSubscriptionFilter.setParentId(Objects.isNull(parentFilter) ? 0l : parentFilter.getId());
+                                    newSubscriptionFilter.setDateCreated(Timestamp.from(Instant.now()));
                                 } else {
-                                    observer.onNext(subscriptionFilter);
-                                }
-
-                            });
-
-                        } else {
-
-
-                            String query = "partitionId = ? AND parentId = ? AND name = ? ";
 
+                                    //Put back as read should the compactor remove it before the touch.
+                                    newSubscriptionFilter = subscriptionFilter;
+                                    newSubscriptionFilter.setSubscriptionCount(0);
+                                }
+                                newSubscriptionFilter.setDateModified(Timestamp.from(Instant.now()));
 
-                            String joinedTopicName = String.join(Constant.PATH_SEPARATOR, growingTitles);
+                                IotSubscriptionFilter storedFilter = getDatastoreCache().invoke(routeKey, new CreateOrTouchProcessor(newSubscriptionFilter));
 
-                            Object[] params = new Object[]{partition, parentId, joinedTopicName};
+                                if (storedFilter.getId() != newSubscriptionFilter.getId()) {
+                                    log.debug(" createTree : filter {} was created concurrently, using it instead.", storedFilter);
+                                }
 
-                            getByQuery(IotSubscriptionFilter.class, query, params)
-                                    .toBlocking().forEach(subscriptionFilter -> {
+                                subscriptionFilter = storedFilter;
 
-                                log.debug(" getTopicFilterTree : Found matching point filter : {}", subscriptionFilter);
+                                //Subscriptions to this filter may be counted before our update listener catches up.
+                                onFilterSaved(subscriptionFilter);
+                            }
 
+                            parentFilter = subscriptionFilter;
+                        }
 
-                                if (pathIterator.hasNext()) {
-                                    collectingParentIdList.add(subscriptionFilter.getId());
-                                } else {
-                                    observer.onNext(subscriptionFilter);
-                                }
+                        if (Objects.nonNull(parentFilter)) {
+                            observer.onNext(parentFilter);
+                        }
 
-                            });
+                        observer.onCompleted();
 
-                        }
+                    } catch (Exception e) {
+                        observer.onError(e);
                     }
 
                 }
+        );
+    }
 
-                observer.onCompleted();
-
+    /**
+     * <code>updateSubscriptionCount</code> atomically adjusts the number of subscriptions
+     * held on a filter. The update runs on the node owning the filter so concurrent
+     * subscribes and unsubscribes never lose a count.
+     *
+     * @param subscriptionFilterId
+     * @param delta
+     */
+    public void updateSubscriptionCount(long subscriptionFilterId, int delta) {
+
+        IotSubscriptionFilterKey subscriptionFilterKey = subscriptionFilterKeys.get(subscriptionFilterId);
+
+        if (Objects.isNull(subscriptionFilterKey)) {
+            log.warn(" updateSubscriptionCount : no subscription filter with id {} is known", subscriptionFilterId);
+            return;
+        }
 
-            } catch (Exception e) {
-                observer.onError(e);
-            }
+        try {
 
-        });
+            getDatastoreCache().invoke(subscriptionFilterKey, new SubscriptionCountProcessor(delta));
 
+        } catch (Exception e) {
+            log.error(" updateSubscriptionCount : issues while updating subscription count ", e);
+        }
     }
 
+    /**
+     * <code>compact</code> prunes the filters left without subscribers from the leaves upwards.
+     * Only filters whose primary copy lives on this node are considered so that every node
+     * compacts its own share of the tree. A filter is removed only if it is unchanged
+     * since it was inspected, was last modified before the grace period
+     * and is not still in use for example by a retained message.
+     *
+     * @param isInUse         check for other holders of the filter
+     * @param gracePeriodMillis how long an unused filter is kept around
+     * @return number of filters removed
+     */
+    public int compact(Predicate<IotSubscriptionFilter> isInUse, long gracePeriodMillis) {
 
-    private void getMultiLevelWildCard(Subscriber<? super IotSubscriptionFilter> observer, String partition, Long parentId) {
+        long cutOffTime = System.currentTimeMillis() - gracePeriodMillis;
 
-        String query = "partitionId = ? AND parentId = ? ";
-        Object[] params = {partition, parentId};
+        int removedFilters = 0;
+        int removedInPass;
 
-        getByQuery(IotSubscriptionFilter.class, query, params)
-                .toBlocking().forEach(subscriptionFilter -> {
+        do {
 
-            log.debug(" getMultiLevelWildCard : found a matching filter for multilevel : {}", subscriptionFilter);
-            observer.onNext(subscriptionFilter);
+            removedInPass = 0;
 
-            getMultiLevelWildCard(observer, partition, subscriptionFilter.getId());
+            for (IotSubscriptionFilter subscriptionFilter : getSubscriptionFilterTrie().getLeafFilters()) {
 
+                if (subscriptionFilter.getSubscriptionCount() > 0) {
+                    continue;
+                }
 
-        });
-
-
-    }
-
+                if (Objects.nonNull(subscriptionFilter.getDateModified())
+                        && subscriptionFilter.getDateModified().getTime() > cutOffTime) {
+                    continue;
+                }
 
-    public Observable<IotSubscriptionFilter> createTree(String partitionId, List<String> topicFilterTreeRoute) {
+                IotSubscriptionFilterKey subscriptionFilterKey = keyFromModel(subscriptionFilter);
 
-        return Observable.create(observer -> {
+                if (!getAffinity().isPrimary(localNode, subscriptionFilterKey) || isInUse.test(subscriptionFilter)) {
+                    continue;
+                }
 
-                    try {
+                //A filter that was subscribed to after we read it will not be equal and is retained.
+                if (getDatastoreCache().remove(subscriptionFilterKey, subscriptionFilter)) {
 
-                        List<String> growingTitles = new ArrayList<>();
-                        LinkedList<Long> growingParentIds = new LinkedList<>();
+                    onFilterRemoved(subscriptionFilter);
+                    removedInPass++;
+                }
+            }
 
-                        ListIterator<String> pathIterator = topicFilterTreeRoute.listIterator();
+            removedFilters += removedInPass;
 
+        } while (removedInPass > 0);
 
-                        while (pathIterator.hasNext()) {
+        return removedFilters;
+    }
 
+    /**
+     * Stores the supplied filter when none exists. An existing filter without
+     * subscriptions has its modification time refreshed, in the same atomic
+     * step, so it is not pruned before the subscription is counted on it.
+     */
+    private static final class CreateOrTouchProcessor
+            implements EntryProcessor<IotSubscriptionFilterKey, IotSubscriptionFilter, IotSubscriptionFilter>, Serializable {
 
-                            growingTitles.add(pathIterator.next());
+        private static final long serialVersionUID = 0L;
 
-                            IotSubscriptionFilterKey iotSubscriptionFilterKey = keyFromList(partitionId, growingTitles);
-                            Observable<IotSubscriptionFilter> filterObservable = getByKeyWithDefault(iotSubscriptionFilterKey, null);
+        private final IotSubscriptionFilter newSubscriptionFilter;
 
-                            filterObservable.subscribe(
-                                    internalSubscriptionFilter -> {
+        private CreateOrTouchProcessor(IotSubscriptionFilter newSubscriptionFilter) {
+            this.newSubscriptionFilter = newSubscriptionFilter;
+        }
 
-                                        if (null == internalSubscriptionFilter) {
-                                            internalSubscriptionFilter = new IotSubscriptionFilter();
-                                            internalSubscriptionFilter.setPartitionId(partitionId);
-                                            internalSubscriptionFilter.setName(iotSubscriptionFilterKey.getName());
-                                            internalSubscriptionFilter.setId(getIdSequence().incrementAndGet());
+        @Override
+        public IotSubscriptionFilter process(MutableEntry<IotSubscriptionFilterKey, IotSubscriptionFilter> entry, Object... arguments) {
 
-                                            if (growingParentIds.isEmpty()) {
-                                                internalSubscriptionFilter.setParentId(0l);
-                                            } else {
-                                                internalSubscriptionFilter.setParentId(growingParentIds.getLast());
-                                            }
-                                            save(iotSubscriptionFilterKey, internalSubscriptionFilter);
-                                        }
+            IotSubscriptionFilter subscriptionFilter = entry.getValue();
 
-                                        growingParentIds.add(internalSubscriptionFilter.getId());
+            if (Objects.isNull(subscriptionFilter)) {
+                entry.setValue(newSubscriptionFilter);
+                return newSubscriptionFilter;
+            }
 
-                                        if (growingTitles.size() == topicFilterTreeRoute.size())
-                                            observer.onNext(internalSubscriptionFilter);
+            if (subscriptionFilter.getSubscriptionCount() == 0) {
+                subscriptionFilter.setDateModified(Timestamp.from(Instant.now()));
+                entry.setValue(subscriptionFilter);
+            }
 
-                                    }, throwable -> {
-                                    }, () -> {
+            return subscriptionFilter;
+        }
+    }
 
+    private static final class SubscriptionCountProcessor
+            implements EntryProcessor<IotSubscriptionFilterKey, IotSubscriptionFilter, Void>, Serializable {
 
-                                        if (!pathIterator.hasNext()) {
+        private static final long serialVersionUID = 0L;
 
-                                            observer.onCompleted();
+        private final int delta;
 
-                                        }
+        private SubscriptionCountProcessor(int delta) {
+            this.delta = delta;
+        }
 
-                                    });
-                        }
+        @Override
+        public Void process(MutableEntry<IotSubscriptionFilterKey, IotSubscriptionFilter> entry, Object... arguments) {
 
+            IotSubscriptionFilter subscriptionFilter = entry.getValue();
 
-                    } catch (Exception e) {
-                        observer.onError(e);
-                    }
+            if (Objects.nonNull(subscriptionFilter)) {
+                subscriptionFilter.setSubscriptionCount(Math.max(0, subscriptionFilter.getSubscriptionCount() + delta));
+                subscriptionFilter.setDateModified(Timestamp.from(Instant.now()));
+                entry.setValue(subscriptionFilter);
+            }
 
-                }
-        );
+            return null;
+        }
     }
 
 }
@@ -23,12 +23,18 @@ package com.caricah.iotracah.datastore.ignitecache.internal.impl;
 import com.caricah.iotracah.bootstrap.data.models.subscriptions.CacheConfig;
 import com.caricah.iotracah.bootstrap.data.models.subscriptions.IotSubscription;
 import com.caricah.iotracah.bootstrap.data.models.subscriptions.IotSubscriptionKey;
+import com.caricah.iotracah.bootstrap.data.models.subscriptionfilters.IotSubscriptionFilter;
 import com.caricah.iotracah.datastore.ignitecache.internal.AbstractHandler;
+import com.caricah.iotracah.datastore.ignitecache.internal.SubscriberList;
 import org.apache.commons.configuration.Configuration;
+import org.apache.ignite.Ignite;
 import org.apache.ignite.cache.store.jdbc.CacheJdbcPojoStoreFactory;
 import org.apache.ignite.configuration.CacheConfiguration;
+import rx.Observable;
 
 import javax.sql.DataSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -39,6 +45,10 @@ public class SubscriptionHandler extends AbstractHandler<IotSubscriptionKey, Iot
     public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_CACHE_NAME = "config.ignitecache.subscription.cache.name";
     public static final String CONFIG_IGNITECACHE_SUBSCRIPTION_CACHE_NAME_VALUE_DEFAULT = "iotracah_client_subscription_cache";
 
+    /**
+     * Fan out lists for every subscription filter keyed by the filter id.
+     */
+    private final transient ConcurrentMap<Long, SubscriberList> subscriberLists = new ConcurrentHashMap<>();
 
     @Override
     public void configure(Configuration configuration) {
@@ -73,8 +83,127 @@ public class SubscriptionHandler extends AbstractHandler<IotSubscriptionKey, Iot
     }
 
 
+    @Override
+    public void initiate(Class<IotSubscription> t, Ignite ignite) {
+
+        super.initiate(t, ignite);
+
+        //Subscriptions made on other nodes also have to be part of our fan out lists.
+        listenForUpdates(this::addSubscriber, this::removeSubscriber);
+    }
+
     @Override
     public void save(IotSubscription item) {
         super.save(item);
+        addSubscriber(item);
+    }
+
+    @Override
+    public void remove(IotSubscription item) {
+        super.remove(item);
+        removeSubscriber(item);
+    }
+
+    /**
+     * Saves the subscription reporting whether the client was not already subscribed to the filter.
+     *
+     * @param item
+     * @return true if this is a new subscription
+     */
+    public boolean saveSubscription(IotSubscription item) {
+
+        boolean isNew = false;
+
+        try {
+
+            isNew = null == getDatastoreCache().getAndPut(keyFromModel(item), item);
+
+        } catch (Exception e) {
+            log.error(" saveSubscription : issues while saving subscription ", e);
+        }
+
+        addSubscriber(item);
+        return isNew;
+    }
+
+    /**
+     * Removes the subscription reporting whether it actually existed.
+     *
+     * @param item
+     * @return true if a subscription was removed
+     */
+    public boolean removeSubscription(IotSubscription item) {
+
+        boolean wasRemoved = false;
+
+        try {
+
+            wasRemoved = null != getDatastoreCache().getAndRemove(keyFromModel(item));
+
+        } catch (Exception e) {
+            log.error(" removeSubscription : problem while removing subscription ", e);
+        }
+
+        removeSubscriber(item);
+        return wasRemoved;
+    }
+
+    private void addSubscriber(IotSubscription subscription) {
+
+        subscriberLists.compute(subscription.getSubscriptionFilterId(), (filterId, subscriberList) ->
+                (null == subscriberList ? SubscriberList.EMPTY : subscriberList)
+                        .with(subscription.getClientId(), subscription.getQos(), subscription.getShareGroup()));
+    }
+
+    private void removeSubscriber(IotSubscription subscription) {
+
+        subscriberLists.computeIfPresent(subscription.getSubscriptionFilterId(), (filterId, subscriberList) -> {
+
+            SubscriberList updatedSubscriberList = subscriberList.without(subscription.getClientId());
+            return updatedSubscriberList.isEmpty() ? null : updatedSubscriberList;
+        });
+    }
+
+    /**
+     * Obtains the subscriber list for a filter from memory without querying the cache.
+     *
+     * @param subscriptionFilterId
+     * @return the current subscribers
+     */
+    public SubscriberList getSubscriberList(long subscriptionFilterId) {
+
+        SubscriberList subscriberList = subscriberLists.get(subscriptionFilterId);
+        return null == subscriberList ? SubscriberList.EMPTY : subscriberList;
+    }
+
+    public Observable<IotSubscription> getSubscriptions(IotSubscriptionFilter subscriptionFilter, int qos) {
+
+        return Observable.create(observer -> {
+
+            try {
+
+                SubscriberList subscriberList = getSubscriberList(subscriptionFilter.getId());
+
+                for (int index = 0; index < subscriberList.size(); index++) {
+
+                    if (subscriberList.getQos(index) >= qos) {
+
+                        IotSubscription subscription = new IotSubscription();
+                        subscription.setPartitionId(subscriptionFilter.getPartitionId());
+                        subscription.setSubscriptionFilterId(subscriptionFilter.getId());
+                        subscription.setClientId(subscriberList.getClientId(index));
+                        subscription.setQos(subscriberList.getQos(index));
+                        subscription.setShareGroup(subscriberList.getShareGroup(index));
+
+                        observer.onNext(subscription);
+                    }
+                }
+
+                observer.onCompleted();
+
+            } catch (Exception e) {
+                observer.onError(e);
+            }
+        });
     }
 }
@@ -149,6 +149,16 @@ public class HttpServer extends Server<FullHttpMessage> {
         return iotHttpTransformer.toServerMessage(internalMessage);
     }
 
+    @Override
+    public void pauseReading(String connectionId) {
+        serverImpl.setAutoRead(connectionId, false);
+    }
+
+    @Override
+    public void resumeReading(String connectionId) {
+        serverImpl.setAutoRead(connectionId, true);
+    }
+
     /**
      * Declaration by the server implementation if its connections are persistant
      * Or not.
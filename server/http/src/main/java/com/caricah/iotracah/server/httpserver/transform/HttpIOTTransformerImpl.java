@@ -36,6 +36,7 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -87,6 +88,11 @@ public class HttpIOTTransformerImpl implements MqttIOTTransformer<FullHttpMessag
 
                     publishMessage.setSessionId(json.getString("sessionId"));
                     publishMessage.setAuthKey(json.getString("authKey"));
+
+                    //An optional ttl in seconds overrides the one configured for the partition.
+                    if (json.has("ttl") && json.getInt("ttl") > 0) {
+                        publishMessage.setExpiresAt(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(json.getInt("ttl")));
+                    }
                     return publishMessage;
 
 
@@ -21,6 +21,7 @@
 package com.caricah.iotracah.server.mqttserver;
 
 import com.caricah.iotracah.core.modules.Server;
+import com.caricah.iotracah.bootstrap.data.messages.PublishMessage;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import com.caricah.iotracah.bootstrap.data.messages.base.Protocol;
 import com.caricah.iotracah.bootstrap.exceptions.UnRetriableException;
@@ -61,8 +62,10 @@ public class MqttServer extends Server<MqttMessage> {
         serverImpl = new MqttServerImpl(this);
         serverImpl.configure(configuration);
 
+        boolean zeroCopyEnabled = configuration.getBoolean(MqttServerImpl.CONFIGURATION_SERVER_MQTT_ZERO_COPY_IS_ENABLED, MqttServerImpl.CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_ZERO_COPY_IS_ENABLED);
+
         iotMqttTransformer = new IOTMqttTransformerImpl();
-        mqttIOTTransformer = new MqttIOTTransformerImpl();
+        mqttIOTTransformer = new MqttIOTTransformerImpl(zeroCopyEnabled);
     }
 
     /**
@@ -115,6 +118,10 @@ public class MqttServer extends Server<MqttMessage> {
 
         if(null == mqttMessage){
             log.debug(" MqttServer onNext : ignoring outbound message {}", ioTMessage);
+        }else if (PublishMessage.MESSAGE_TYPE.equals(ioTMessage.getMessageType())
+                && ((PublishMessage) ioTMessage).getIsRetain()) {
+            //Retained messages released on subscription can wait for the client to catch up.
+            serverImpl.pushToClientWhenWritable(ioTMessage.getConnectionId(), mqttMessage);
         }else {
             serverImpl.pushToClient(ioTMessage.getConnectionId(), mqttMessage);
         }
@@ -153,6 +160,16 @@ public class MqttServer extends Server<MqttMessage> {
         return iotMqttTransformer.toServerMessage(internalMessage);
     }
 
+    @Override
+    public void pauseReading(String connectionId) {
+        serverImpl.setAutoRead(connectionId, false);
+    }
+
+    @Override
+    public void resumeReading(String connectionId) {
+        serverImpl.setAutoRead(connectionId, true);
+    }
+
     /**
      * Declaration by the server implementation if its connections are persistant
      * Or not.
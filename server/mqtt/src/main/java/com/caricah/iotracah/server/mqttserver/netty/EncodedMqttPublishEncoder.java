@@ -0,0 +1,46 @@
+/*
+ *
+ * Copyright (c) 2016 Caricah <info@caricah.com>.
+ *
+ * Caricah licenses this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License. You may obtain a copy
+ *  of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software distributed under
+ *  the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ *  OF ANY  KIND, either express or implied.  See the License for the specific language
+ *  governing permissions and limitations under the License.
+ *
+ *
+ *
+ *
+ */
+
+package com.caricah.iotracah.server.mqttserver.netty;
+
+import com.caricah.iotracah.server.mqttserver.transform.EncodedMqttPublishMessage;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * <code>EncodedMqttPublishEncoder</code> writes out publish messages that were encoded
+ * ahead of time as they are, so they never reach the {@link io.netty.handler.codec.mqtt.MqttEncoder}.
+ *
+ * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
+ * @version 1.0 10/17/26
+ */
+@ChannelHandler.Sharable
+public class EncodedMqttPublishEncoder extends MessageToMessageEncoder<EncodedMqttPublishMessage> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, EncodedMqttPublishMessage msg, List<Object> out) throws Exception {
+
+        //The message is released once encoded, the frame keeps its own reference.
+        out.add(msg.content().retain());
+    }
+}
@@ -31,6 +31,8 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelId;
 import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 import org.apache.commons.configuration.Configuration;
 
 import java.util.Objects;
@@ -54,6 +56,12 @@ public class MqttServerImpl extends ServerImpl<MqttMessage> {
     public static final String CONFIGURATION_SERVER_MQTT_CONNECTION_TIMEOUT = "system.internal.server.mqtt.connection.timeout";
     public static final int CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_CONNECTION_TIMEOUT = 10;
 
+    public static final String CONFIGURATION_SERVER_MQTT_ZERO_COPY_IS_ENABLED = "system.internal.server.mqtt.zero.copy.is.enabled";
+    public static final boolean CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_ZERO_COPY_IS_ENABLED = false;
+
+    public static final String CONFIGURATION_SERVER_MQTT_DEFERRED_MESSAGES_LIMIT = "system.internal.server.mqtt.deferred.messages.limit";
+    public static final int CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_DEFERRED_MESSAGES_LIMIT = 1000;
+
 
     public MqttServerImpl(Server<MqttMessage> internalServer) {
         super(internalServer);
@@ -87,6 +95,21 @@ public class MqttServerImpl extends ServerImpl<MqttMessage> {
         int connectionTimeout = configuration.getInt(CONFIGURATION_SERVER_MQTT_CONNECTION_TIMEOUT, CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_CONNECTION_TIMEOUT);
         setConnectionTimeout(connectionTimeout);
 
+        int deferredMessagesLimit = configuration.getInt(CONFIGURATION_SERVER_MQTT_DEFERRED_MESSAGES_LIMIT, CONFIGURATION_VALUE_DEFAULT_SERVER_MQTT_DEFERRED_MESSAGES_LIMIT);
+        if (deferredMessagesLimit < 1) {
+            throw new UnRetriableException(" The deferred messages limit has to be at least 1");
+        }
+        setDeferredMessagesLimit(deferredMessagesLimit);
+
+    }
+
+    /**
+     * Only qos 0 publishes may be lost, anything else is awaited by the delivery window.
+     */
+    @Override
+    protected boolean isDiscardable(MqttMessage message) {
+        return message instanceof MqttPublishMessage
+                && MqttQoS.AT_MOST_ONCE.equals(message.fixedHeader().qosLevel());
     }
 
 
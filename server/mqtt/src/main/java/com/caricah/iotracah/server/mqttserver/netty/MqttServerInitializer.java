@@ -49,6 +49,7 @@ public class MqttServerInitializer extends ServerInitializer<MqttMessage> {
     protected void customizePipeline(EventExecutorGroup eventExecutorGroup, ChannelPipeline pipeline) {
         pipeline.addLast("decoder", new MqttDecoder());
         pipeline.addLast("encoder", new MqttEncoder());
+        pipeline.addLast("encoded-publish-encoder", new EncodedMqttPublishEncoder());
 
         // we finally have the chance to add some business logic.
         pipeline.addLast(eventExecutorGroup, "iotracah-mqtt", new MqttServerHandler((MqttServerImpl) getServerImpl()));
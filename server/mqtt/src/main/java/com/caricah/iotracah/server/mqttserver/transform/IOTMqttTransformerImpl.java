@@ -24,8 +24,13 @@ import com.caricah.iotracah.bootstrap.data.messages.*;
 import com.caricah.iotracah.bootstrap.data.messages.base.IOTMessage;
 import com.caricah.iotracah.server.transform.IOTMqttTransformer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.*;
+import io.netty.util.CharsetUtil;
+
+import java.util.Objects;
 
 /**
  * @author <a href="mailto:bwire@caricah.com"> Peter Bwire </a>
@@ -46,7 +51,18 @@ public class IOTMqttTransformerImpl implements IOTMqttTransformer<MqttMessage> {
                 MqttPublishVariableHeader respVariableHeader = new MqttPublishVariableHeader(pubMsg.getTopic(), pubMsg.getMessageId());
 
                 MqttFixedHeader respFixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, pubMsg.getIsDuplicate(), MqttQoS.valueOf(pubMsg.getQos()), pubMsg.getIsRetain(), 0);
-                ByteBuf content = Unpooled.wrappedBuffer((byte[]) pubMsg.getPayload());
+
+                if (Objects.nonNull(pubMsg.getSharedFrame())) {
+
+                    MqttMessage encodedMessage = toEncodedPublishMessage(pubMsg, respFixedHeader, respVariableHeader);
+                    if (Objects.nonNull(encodedMessage)) {
+                        return encodedMessage;
+                    }
+                }
+
+                //A payload buffer still held by the message is written out as is and released by the encoder.
+                ByteBuf content = Objects.nonNull(pubMsg.getPayloadBuffer())
+                        ? pubMsg.takePayloadBuffer() : Unpooled.wrappedBuffer((byte[]) pubMsg.getPayload());
 
                 return MqttMessageFactory.newMessage(respFixedHeader, respVariableHeader, content);
 
@@ -147,4 +163,97 @@ public class IOTMqttTransformerImpl implements IOTMqttTransformer<MqttMessage> {
 
 
     }
+
+    /**
+     * <code>toEncodedPublishMessage</code> builds the frame of a message out of the part it shares
+     * with the other copies of the message, the topic and the payload, and the few bytes
+     * of its own, the fixed header and the packet identifier.
+     *
+     * @param pubMsg
+     * @param fixedHeader
+     * @param variableHeader
+     * @return the encoded message or null if the shared frame can no longer be used.
+     */
+    private MqttMessage toEncodedPublishMessage(PublishMessage pubMsg, MqttFixedHeader fixedHeader, MqttPublishVariableHeader variableHeader) {
+
+        ByteBuf body = pubMsg.getSharedFrame().retainBody(() -> encodePublishBody(pubMsg));
+
+        if (Objects.isNull(body)) {
+            return null;
+        }
+
+        //The payload is now part of the shared frame.
+        pubMsg.releasePayloadBuffer();
+
+        boolean hasPacketId = fixedHeader.qosLevel().value() > 0;
+        int topicLength = 2 + body.getUnsignedShort(body.readerIndex());
+        int remainingLength = body.readableBytes() + (hasPacketId ? 2 : 0);
+
+        CompositeByteBuf frame = PooledByteBufAllocator.DEFAULT.compositeBuffer(4);
+
+        ByteBuf header = PooledByteBufAllocator.DEFAULT.buffer(5);
+        header.writeByte(getFixedHeaderByte1(fixedHeader));
+        writeVariableLengthInt(header, remainingLength);
+        frame.addComponent(header);
+
+        if (hasPacketId) {
+
+            //The packet identifier sits between the topic and the payload.
+            frame.addComponent(body.slice(body.readerIndex(), topicLength));
+            frame.addComponent(PooledByteBufAllocator.DEFAULT.buffer(2).writeShort(variableHeader.messageId()));
+            frame.addComponent(body.retain().slice(body.readerIndex() + topicLength, body.readableBytes() - topicLength));
+        } else {
+            frame.addComponent(body.duplicate());
+        }
+
+        frame.writerIndex(frame.capacity());
+
+        return new EncodedMqttPublishMessage(fixedHeader, variableHeader, frame);
+    }
+
+    private ByteBuf encodePublishBody(PublishMessage pubMsg) {
+
+        byte[] topicBytes = pubMsg.getTopic().getBytes(CharsetUtil.UTF_8);
+
+        ByteBuf payloadBuffer = pubMsg.getPayloadBuffer();
+        byte[] payload = Objects.isNull(payloadBuffer) ? (byte[]) pubMsg.getPayload() : null;
+        int payloadLength = Objects.isNull(payloadBuffer) ? payload.length : payloadBuffer.readableBytes();
+
+        ByteBuf body = PooledByteBufAllocator.DEFAULT.buffer(2 + topicBytes.length + payloadLength);
+        body.writeShort(topicBytes.length);
+        body.writeBytes(topicBytes);
+
+        if (Objects.isNull(payloadBuffer)) {
+            body.writeBytes(payload);
+        } else {
+            body.writeBytes(payloadBuffer, payloadBuffer.readerIndex(), payloadLength);
+        }
+
+        return body;
+    }
+
+    private static int getFixedHeaderByte1(MqttFixedHeader header) {
+
+        int ret = header.messageType().value() << 4;
+        if (header.isDup()) {
+            ret |= 0x08;
+        }
+        ret |= header.qosLevel().value() << 1;
+        if (header.isRetain()) {
+            ret |= 0x01;
+        }
+        return ret;
+    }
+
+    private static void writeVariableLengthInt(ByteBuf buf, int num) {
+
+        do {
+            int digit = num % 128;
+            num /= 128;
+            if (num > 0) {
+                digit |= 0x80;
+            }
+            buf.writeByte(digit);
+        } while (num > 0);
+    }
 }
@@ -34,6 +34,20 @@ import java.util.AbstractMap;
  */
 public class MqttIOTTransformerImpl implements MqttIOTTransformer<MqttMessage> {
 
+    private final boolean zeroCopyEnabled;
+
+    public MqttIOTTransformerImpl() {
+        this(false);
+    }
+
+    public MqttIOTTransformerImpl(boolean zeroCopyEnabled) {
+        this.zeroCopyEnabled = zeroCopyEnabled;
+    }
+
+    public boolean isZeroCopyEnabled() {
+        return zeroCopyEnabled;
+    }
+
     @Override
     public IOTMessage toIOTMessage(MqttMessage serverMessage) {
 
@@ -55,6 +69,14 @@ public class MqttIOTTransformerImpl implements MqttIOTTransformer<MqttMessage> {
 
                 MqttPublishVariableHeader pubVH = publishMessage.variableHeader();
 
+                if (isZeroCopyEnabled() && MqttQoS.AT_MOST_ONCE.equals(fxH.qosLevel()) && !fxH.isRetain()) {
+
+                    //Qos 0 payloads are never stored so the decoded buffer is carried as is,
+                    // the reference retained here is released once the message is delivered.
+                    return PublishMessage.from(pubVH.messageId(), fxH.isDup(), fxH.qosLevel().value(),
+                            fxH.isRetain(), pubVH.topicName(), publishMessage.payload().retain(), true);
+                }
+
                 ByteBuffer byteBuffer = publishMessage.payload().nioBuffer();
 
                 return PublishMessage.from(pubVH.messageId(), fxH.isDup(), fxH.qosLevel().value(),
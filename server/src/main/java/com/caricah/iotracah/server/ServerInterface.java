@@ -40,5 +40,9 @@ public interface ServerInterface<T> {
 
     void pushToClient(String connectionId, T message);
 
+    void pushToClientWhenWritable(String connectionId, T message);
+
+    void setAutoRead(String connectionId, boolean autoRead);
+
     void postProcess(IOTMessage ioTMessage);
 }
@@ -69,6 +69,10 @@ public abstract class ServerHandler<T> extends SimpleChannelInboundHandler<T> {
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         super.channelInactive(ctx);
 
+        getServerImpl().discardDeferredMessages(ctx.channel());
+
+        getInternalServer().onConnectionClosed(ctx.channel().attr(ServerImpl.REQUEST_CONNECTION_ID).get());
+
         String sessionId = ctx.channel().attr(ServerImpl.REQUEST_SESSION_ID).get();
 
         if (null != sessionId) {
@@ -81,6 +85,16 @@ public abstract class ServerHandler<T> extends SimpleChannelInboundHandler<T> {
     }
 
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+
+        if (ctx.channel().isWritable()) {
+            getServerImpl().releaseDeferredMessages(ctx.channel());
+        }
+
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
         ctx.flush();
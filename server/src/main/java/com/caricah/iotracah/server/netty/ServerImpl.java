@@ -39,11 +39,16 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -58,18 +63,22 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
 
     public static final AttributeKey<String> REQUEST_SESSION_ID = AttributeKey.valueOf("requestSessionIdKey");
     public static final AttributeKey<String> REQUEST_CONNECTION_ID = AttributeKey.valueOf("requestConnectionIdKey");
+    public static final AttributeKey<Queue<Object>> DEFERRED_MESSAGES = AttributeKey.valueOf("deferredMessagesKey");
 
 
     private int tcpPort;
     private int sslPort;
     private boolean sslEnabled;
     private int connectionTimeout;
+    private int deferredMessagesLimit = Integer.MAX_VALUE;
 
     private SSLHandler sslHandler = null;
 
     private EventLoopGroup bossEventLoopGroup = null;
     private EventLoopGroup workerEventLoopGroup = null;
 
+    private EventExecutorGroup protocolEventExecutorGroup = null;
+
     private Channel tcpChannel = null;
     private Channel sslChannel = null;
 
@@ -104,6 +113,14 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
         this.sslEnabled = sslEnabled;
     }
 
+    public int getDeferredMessagesLimit() {
+        return deferredMessagesLimit;
+    }
+
+    public void setDeferredMessagesLimit(int deferredMessagesLimit) {
+        this.deferredMessagesLimit = deferredMessagesLimit;
+    }
+
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -124,6 +141,14 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
        return getInternalServer().getExecutorService();
     }
 
+    public ExecutorService getIoExecutorService(){
+       return getInternalServer().getIoExecutorService();
+    }
+
+    public EventExecutorGroup getProtocolEventExecutorGroup() {
+        return protocolEventExecutorGroup;
+    }
+
     public ServerImpl(Server<T> internalServer) {
 
         this.internalServer = internalServer;
@@ -148,17 +173,20 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
         try {
 
 
-            int countOfAvailableProcessors = Runtime.getRuntime().availableProcessors()+1;
+            int ioThreads = getInternalServer().getIoThreads();
 
             if (Epoll.isAvailable()) {
-                bossEventLoopGroup = new EpollEventLoopGroup(2, getExecutorService());
-                workerEventLoopGroup = new EpollEventLoopGroup(countOfAvailableProcessors, getExecutorService());
+                bossEventLoopGroup = new EpollEventLoopGroup(2, getIoExecutorService());
+                workerEventLoopGroup = new EpollEventLoopGroup(ioThreads, getIoExecutorService());
 
             } else {
-                bossEventLoopGroup = new NioEventLoopGroup(2, getExecutorService());
-                workerEventLoopGroup = new NioEventLoopGroup(countOfAvailableProcessors, getExecutorService());
+                bossEventLoopGroup = new NioEventLoopGroup(2, getIoExecutorService());
+                workerEventLoopGroup = new NioEventLoopGroup(ioThreads, getIoExecutorService());
             }
 
+            //Protocol handlers are shared by the tcp and ssl listeners.
+            protocolEventExecutorGroup = new DefaultEventExecutorGroup(getInternalServer().getProtocolThreads(), getExecutorService());
+
 
             //Initialize listener for TCP
             ServerBootstrap tcpBootstrap = new ServerBootstrap();
@@ -244,6 +272,10 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
             workerEventLoopGroup.shutdownGracefully();
         }
 
+        if (null != protocolEventExecutorGroup) {
+            protocolEventExecutorGroup.shutdownGracefully();
+        }
+
 
     }
 
@@ -261,9 +293,120 @@ public abstract class ServerImpl<T> implements ServerInterface<T> {
 
         } else {
             log.info(" pushToClient : channel to push message {} is not available ", message);
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+
+    /**
+     * Pushes a message that can wait for the client to drain its socket.
+     * While the channel is not writable such messages are held back so that they
+     * do not compete with live traffic, they are released once the channel drains.
+     * Once the deferred messages reach the configured limit, messages that may be
+     * lost are dropped instead of held. The rest are already bounded upstream by the
+     * delivery window, as the client can not acknowledge what it never received.
+     *
+     * @param connectionId
+     * @param message
+     */
+    public void pushToClientWhenWritable(String connectionId, T message) {
+
+        Channel channel = getChannel(connectionId);
+
+        if (null != channel) {
+
+            channel.eventLoop().execute(() -> {
+
+                Queue<Object> deferredMessages = channel.attr(DEFERRED_MESSAGES).get();
+
+                if (channel.isWritable() && (null == deferredMessages || deferredMessages.isEmpty())) {
+
+                    channel.writeAndFlush(message, channel.voidPromise());
+
+                } else {
+
+                    if (null == deferredMessages) {
+                        deferredMessages = new ArrayDeque<>();
+                        channel.attr(DEFERRED_MESSAGES).set(deferredMessages);
+                    }
+
+                    if (deferredMessages.size() >= getDeferredMessagesLimit() && isDiscardable(message)) {
+                        log.debug(" pushToClientWhenWritable : client on {} is not keeping up, dropping message {}", connectionId, message);
+                        ReferenceCountUtil.release(message);
+                        return;
+                    }
+
+                    deferredMessages.add(message);
+                }
+            });
+
+        } else {
+            log.info(" pushToClientWhenWritable : channel to push message {} is not available ", message);
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    /**
+     * Tells whether a message held back for a slow client may be dropped
+     * rather than kept once the deferred messages are at their limit.
+     *
+     * @param message
+     * @return true if the protocol allows the message to be lost
+     */
+    protected boolean isDiscardable(T message) {
+        return false;
+    }
+
+    /**
+     * Writes out the deferred messages for as long as the channel stays writable.
+     * Expected to be called from the channel's event loop.
+     *
+     * @param channel
+     */
+    public void releaseDeferredMessages(Channel channel) {
+
+        Queue<Object> deferredMessages = channel.attr(DEFERRED_MESSAGES).get();
+
+        if (null == deferredMessages || deferredMessages.isEmpty()) {
+            return;
+        }
+
+        while (channel.isWritable() && !deferredMessages.isEmpty()) {
+            channel.write(deferredMessages.poll(), channel.voidPromise());
+        }
+
+        channel.flush();
+    }
+
+    /**
+     * Drops the deferred messages of a channel that is going away.
+     *
+     * @param channel
+     */
+    public void discardDeferredMessages(Channel channel) {
+
+        Queue<Object> deferredMessages = channel.attr(DEFERRED_MESSAGES).getAndSet(null);
+
+        if (null != deferredMessages) {
+            deferredMessages.forEach(ReferenceCountUtil::release);
         }
     }
 
+    /**
+     * Starts or stops reading from the channel, while stopped the client is held
+     * back by its own tcp window instead of filling our queues.
+     *
+     * @param connectionId
+     * @param autoRead
+     */
+    public void setAutoRead(String connectionId, boolean autoRead) {
+
+        Channel channel = getChannel(connectionId);
+
+        if (null != channel) {
+            channel.config().setAutoRead(autoRead);
+        }
+    }
 
     public void closeClient(String channelId) {
 
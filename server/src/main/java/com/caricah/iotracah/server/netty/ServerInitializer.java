@@ -26,7 +26,6 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutorGroup;
 
 /**
@@ -39,16 +38,13 @@ public abstract class ServerInitializer<T> extends ChannelInitializer<SocketChan
     private final int connectionTimeout;
     private final SslContext sslContext;
     private final ServerImpl serverImpl;
-    private EventExecutorGroup iotEventExecutorGroup;
+    private final EventExecutorGroup iotEventExecutorGroup;
 
     public ServerInitializer(ServerImpl serverImpl,  int connectionTimeout, SSLHandler sslHandler) {
         this.serverImpl = serverImpl;
         this.sslContext = sslHandler.getSslContext();
         this.connectionTimeout = connectionTimeout;
-
-        int countOfAvailableProcessors = Runtime.getRuntime().availableProcessors()+1;
-
-        this.iotEventExecutorGroup = new DefaultEventExecutorGroup( countOfAvailableProcessors , getServerImpl().getExecutorService());
+        this.iotEventExecutorGroup = serverImpl.getProtocolEventExecutorGroup();
 
     }
 
@@ -56,6 +52,7 @@ public abstract class ServerInitializer<T> extends ChannelInitializer<SocketChan
         this.serverImpl = serverImpl;
         this.sslContext = null;
         this.connectionTimeout = connectionTimeout;
+        this.iotEventExecutorGroup = serverImpl.getProtocolEventExecutorGroup();
     }
 
     public ServerImpl<T> getServerImpl() {